@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.drill.exec.store.easy.regex.ByteCharSequence;
+import org.apache.drill.exec.store.easy.regex.LineMatcher;
+import org.apache.drill.exec.store.easy.regex.LineScanner;
+import org.apache.drill.exec.store.easy.regex.LiteralPrefilter;
+import org.apache.drill.exec.store.easy.regex.MappedInputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the regex reader's per-line work, without a drillbit:
+ * scanning lines, the literal prefilter, matching and copying the
+ * captured groups, as <tt>RegexRecordReader.nextLine()</tt> and
+ * <tt>loadVectors()</tt> do. The group bytes are copied into a scratch
+ * buffer in place of the vectors, so the copy cost stays in the
+ * measurement while vector allocation does not.
+ * <p>
+ * The loop is a copy of the reader's, not the reader itself, so a
+ * regression in <tt>nextLine()</tt> or <tt>loadVectors()</tt> shows up
+ * only in {@link RegexScanBenchmark}. Keep the two loops in step.
+ * <p>
+ * The query shapes match the reader's: all groups capture for a
+ * wildcard query, two for a projected subset and none for a count.
+ * Plain files are read memory-mapped, as the reader reads local files
+ * when the format sets mapFiles; gzip files through
+ * <tt>GZIPInputStream</tt>.
+ * <p>
+ * Besides the time per scan, the <tt>rows</tt> and <tt>megabytes</tt>
+ * counters give rows and megabytes of (uncompressed) input per second.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class LineMatchBenchmark {
+
+  public enum Query { WILDCARD, PROJECT, COUNT }
+
+  @State(Scope.Benchmark)
+  public static class Input {
+
+    @Param({"64"})
+    public int sizeMb;
+
+    @Param({"120"})
+    public int lineWidth;
+
+    @Param({"0.8"})
+    public double matchRatio;
+
+    @Param({"6"})
+    public int groupCount;
+
+    @Param({"WILDCARD", "PROJECT", "COUNT"})
+    public Query query;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    @Param({LineMatcher.JAVA_ENGINE, LineMatcher.RE2J_ENGINE})
+    public String engine;
+
+    private File dir;
+    private File file;
+    private String regex;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      dir = Files.createTempDirectory("regex-bench").toFile();
+      file = new File(dir, gzip ? "bench.log.gz" : "bench.log");
+      final LogGenerator generator = new LogGenerator(sizeMb * 1024L * 1024L,
+          lineWidth, matchRatio, groupCount);
+      generator.write(file, gzip);
+      regex = generator.regex();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      file.delete();
+      dir.delete();
+    }
+
+    private InputStream open() throws IOException {
+      if (gzip) {
+        return new GZIPInputStream(new BufferedInputStream(new FileInputStream(file),
+            LineScanner.DEFAULT_BUFFER_SIZE), LineScanner.DEFAULT_BUFFER_SIZE);
+      }
+      return new MappedInputStream(file.toPath());
+    }
+  }
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public long rows;
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      rows = 0;
+      megabytes = 0;
+    }
+  }
+
+  // Matchers are not thread-safe: each thread has its own.
+
+  private LineMatcher matcher;
+  private LiteralPrefilter prefilter;
+  private final ByteCharSequence line = new ByteCharSequence();
+  private byte[] scratch = new byte[1024];
+
+  @Setup(Level.Trial)
+  public void setup(Input input) {
+    prefilter = LiteralPrefilter.build(input.regex);
+
+    // Rewrite the regex as the reader does for each query shape.
+
+    final boolean keep[] = new boolean[input.groupCount];
+    if (input.query == Query.WILDCARD) {
+      Arrays.fill(keep, true);
+    } else if (input.query == Query.PROJECT) {
+      keep[0] = keep[input.groupCount - 1] = true;
+    }
+    final String regex = LineMatcher.withCaptures(input.regex, keep);
+    final LineMatcher m = input.engine.equals(LineMatcher.RE2J_ENGINE)
+        ? new LineMatcher.Re2jMatcher(com.google.re2j.Pattern.compile(regex))
+        : new LineMatcher.JavaMatcher(Pattern.compile(regex));
+    matcher = new LineMatcher.RemappedMatcher(m, keep);
+  }
+
+  @Benchmark
+  public long scan(Input input, Counters counters) throws IOException {
+    final int groupCount = input.groupCount;
+    long rows = 0;
+    long bytesCopied = 0;
+    final LineScanner reader = new LineScanner(input.open());
+    try {
+      while (reader.next() != 0) {
+        final byte[] buf = reader.buffer();
+        if (prefilter != null && ! prefilter.mayMatch(buf, reader.lineStart(), reader.lineEnd())) {
+          continue;
+        }
+        matcher.reset(line.reset(buf, reader.lineStart(), reader.lineLength()));
+        if (! matcher.matches()) {
+          continue;
+        }
+        rows++;
+        int offset = 0;
+        for (int group = 1; group <= groupCount; group++) {
+          final int start = matcher.start(group);
+          if (start == -1) {
+            continue;
+          }
+          final int len = matcher.end(group) - start;
+          if (offset + len > scratch.length) {
+            scratch = new byte[Math.max(scratch.length * 2, offset + len)];
+          }
+          System.arraycopy(buf, reader.lineStart() + start, scratch, offset, len);
+          offset += len;
+        }
+        bytesCopied += offset;
+      }
+      counters.megabytes += reader.bytesRead() / (1024.0 * 1024.0);
+    } finally {
+      reader.close();
+    }
+    counters.rows += rows;
+    return rows + bytesCopied;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a synthetic log for the benchmarks. Lines that match have
+ * the form<pre><code>
+ * LEVEL | v1_123 | v2_456 | ... | xxxx...
+ * </code></pre>
+ * with one field per group, separated by <tt>" | "</tt>, the last padded
+ * to the line width. The first field is low-cardinality, like a log
+ * level. Half of the other lines lack the separator, so the literal
+ * prefilter rejects them; the other half have it but do not match, so
+ * they reach the regex engine.
+ * <p>
+ * The output is the same for the same parameters, so runs compare.
+ */
+
+public class LogGenerator {
+
+  private static final String[] LEVELS = {"INFO", "WARN", "DEBUG", "ERROR"};
+  private static final String SEPARATOR = " | ";
+
+  private final long size;
+  private final int lineWidth;
+  private final double matchRatio;
+  private final int groupCount;
+
+  /**
+   * @param size approximate file size in bytes, before compression
+   * @param lineWidth approximate line length, not counting the newline
+   * @param matchRatio fraction of lines that match the regex
+   * @param groupCount number of groups, at least 2
+   */
+
+  public LogGenerator(long size, int lineWidth, double matchRatio, int groupCount) {
+    if (groupCount < 2) {
+      throw new IllegalArgumentException("Need at least 2 groups: " + groupCount);
+    }
+    this.size = size;
+    this.lineWidth = lineWidth;
+    this.matchRatio = matchRatio;
+    this.groupCount = groupCount;
+  }
+
+  /**
+   * @return the regex matching the generated lines
+   */
+
+  public String regex() {
+    final StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < groupCount - 1; i++) {
+      buf.append("(\\S+) \\| ");
+    }
+    return buf.append("(.*)").toString();
+  }
+
+  /**
+   * @return the field list, <tt>f0, f1, ...</tt>, as for the
+   * format config
+   */
+
+  public String fields() {
+    final StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < groupCount; i++) {
+      buf.append(i == 0 ? "" : ", ").append("f").append(i);
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Write the log.
+   *
+   * @param gzip true to gzip the output
+   * @return the number of matching lines written
+   */
+
+  public long write(File file, boolean gzip) throws IOException {
+    final Random random = new Random(42);
+    final StringBuilder line = new StringBuilder(lineWidth + 16);
+    long written = 0;
+    long matched = 0;
+    try (OutputStream out = open(file, gzip)) {
+      while (written < size) {
+        line.setLength(0);
+        final double kind = random.nextDouble();
+        if (kind < matchRatio) {
+          matchingLine(line, random);
+          matched++;
+        } else if (kind < matchRatio + (1 - matchRatio) / 2) {
+          prefilteredLine(line, random);
+        } else {
+          unmatchedLine(line, random);
+        }
+        line.append('\n');
+        final byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        written += bytes.length;
+      }
+    }
+    return matched;
+  }
+
+  private static OutputStream open(File file, boolean gzip) throws IOException {
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+    return gzip ? new GZIPOutputStream(out, 1 << 16) : out;
+  }
+
+  private void matchingLine(StringBuilder line, Random random) {
+    line.append(LEVELS[random.nextInt(LEVELS.length)]);
+    for (int i = 1; i < groupCount - 1; i++) {
+      line.append(SEPARATOR).append('v').append(i).append('_').append(random.nextInt(100000));
+    }
+    line.append(SEPARATOR);
+    pad(line);
+  }
+
+  private void prefilteredLine(StringBuilder line, Random random) {
+    line.append(LEVELS[random.nextInt(LEVELS.length)]).append(" no separator here ");
+    pad(line);
+  }
+
+  private void unmatchedLine(StringBuilder line, Random random) {
+
+    // A space inside the first field breaks the match.
+
+    line.append(LEVELS[random.nextInt(LEVELS.length)]).append(" x");
+    for (int i = 1; i < groupCount; i++) {
+      line.append(SEPARATOR).append('w').append(random.nextInt(100000));
+    }
+    line.append(' ');
+    pad(line);
+  }
+
+  private void pad(StringBuilder line) {
+    while (line.length() < lineWidth) {
+      line.append('x');
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.drill.exec.ExecConstants;
+import org.apache.drill.test.BaseDirTestWatcher;
+import org.apache.drill.test.ClientFixture;
+import org.apache.drill.test.ClusterFixture;
+import org.apache.drill.test.QueryBuilder.QuerySummary;
+import org.junit.runner.Description;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of regex scans run as queries on an embedded drillbit,
+ * so the measurement covers the whole reader: line scanning, matching
+ * and writing vectors, plus batch handling and a little planning. The
+ * query returns its rows to the client, so for wildcard and projected
+ * queries the transfer of results is also included; compare with the
+ * count query, which returns one row, to see that part.
+ * <p>
+ * The slice width defaults to 1 so that one reader does the whole scan
+ * and the numbers track the reader rather than the core count.
+ * <p>
+ * Besides the time per query, the <tt>rows</tt> and <tt>megabytes</tt>
+ * counters give matched rows and megabytes of (uncompressed) input per
+ * second.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegexScanBenchmark {
+
+  public enum Query { WILDCARD, PROJECT, COUNT }
+
+  @Param({"64"})
+  public int sizeMb;
+
+  @Param({"120"})
+  public int lineWidth;
+
+  @Param({"0.8"})
+  public double matchRatio;
+
+  @Param({"6"})
+  public int groupCount;
+
+  @Param({"WILDCARD", "PROJECT", "COUNT"})
+  public Query query;
+
+  @Param({"false", "true"})
+  public boolean gzip;
+
+  @Param({"1"})
+  public int width;
+
+  /**
+   * Exposes the test directory set-up, normally run as a JUnit rule.
+   */
+
+  private static class DirWatcher extends BaseDirTestWatcher {
+    public void start() {
+      starting(Description.createTestDescription(RegexScanBenchmark.class, "scan"));
+    }
+
+    public void stop() {
+      finished(Description.createTestDescription(RegexScanBenchmark.class, "scan"));
+    }
+  }
+
+  private final DirWatcher dirWatcher = new DirWatcher();
+  private ClusterFixture cluster;
+  private ClientFixture client;
+  private String sql;
+  private long matched;
+  private double megabytes;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    dirWatcher.start();
+    final String name = gzip ? "bench.blog.gz" : "bench.blog";
+    final LogGenerator generator = new LogGenerator(sizeMb * 1024L * 1024L,
+        lineWidth, matchRatio, groupCount);
+    final File file = new File(dirWatcher.getRootDir(), name);
+    matched = generator.write(file, gzip);
+    megabytes = sizeMb;
+
+    cluster = ClusterFixture.builder(dirWatcher)
+        .sessionOption(ExecConstants.MAX_WIDTH_PER_NODE_KEY, width)
+        .build();
+    client = cluster.clientFixture();
+
+    // Backslashes are doubled in the SQL string, as in the tests.
+
+    final String table = String.format("table(dfs.`%s`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'blog',\n" +
+        " regex => '%s',\n" +
+        " fields => '%s'))", name, generator.regex().replace("\\", "\\\\"), generator.fields());
+    switch (query) {
+    case WILDCARD:
+      sql = "SELECT * FROM " + table;
+      break;
+    case PROJECT:
+      sql = String.format("SELECT f0, f%d FROM %s", groupCount - 1, table);
+      break;
+    default:
+      sql = "SELECT COUNT(*) FROM " + table;
+      break;
+    }
+
+    // Check the setup once, rather than trusting the numbers.
+
+    final long rows = query == Query.COUNT
+        ? client.queryBuilder().sql(sql).singletonLong()
+        : client.queryBuilder().sql(sql).run().recordCount();
+    if (rows != matched) {
+      throw new IllegalStateException(String.format(
+          "Expected %d rows, query returned %d: %s", matched, rows, sql));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    if (client != null) {
+      client.close();
+    }
+    if (cluster != null) {
+      cluster.close();
+    }
+    dirWatcher.stop();
+  }
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public long rows;
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      rows = 0;
+      megabytes = 0;
+    }
+  }
+
+  @Benchmark
+  public long scan(Counters counters) throws Exception {
+    final QuerySummary summary = client.queryBuilder().sql(sql).run();
+    counters.rows += matched;
+    counters.megabytes += megabytes;
+    return summary.recordCount();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import org.apache.drill.common.types.TypeProtos.MinorType;
+
+/**
+ * Sizes reader batches to a memory budget rather than a fixed row count.
+ * <p>
+ * The sizer keeps a running average of the variable-width data per row
+ * for each column. Before each batch, it picks the number of rows that
+ * should fit the budget and the size to pre-allocate for each column's
+ * data, so that VarChar buffers are not doubled part way through the
+ * batch. While the batch fills, {@link #isFull(int)} checks the bytes
+ * actually written, so a run of lines wider than the average still
+ * cannot push the batch much past the budget.
+ */
+
+public class BatchSizer {
+
+  /**
+   * Most rows in one batch: selection vectors use 16-bit indexes.
+   */
+
+  public static final int MAX_ROWS = Character.MAX_VALUE;
+
+  /**
+   * Width assumed for a VarChar column before any values are seen.
+   */
+
+  public static final int DEFAULT_WIDTH = 50;
+
+  // Allocate a bit more than the average so that a batch of
+  // average rows does not trigger a reallocation.
+
+  private static final double SLACK = 1.1;
+
+  private final long budget;
+  private final ColumnWriter[] writers;
+  private final long[] totalBytes;
+  private final int fixedRowWidth;
+  private long totalRows;
+
+  public BatchSizer(long budget, ColumnWriter[] writers) {
+    this.budget = budget;
+    this.writers = writers;
+    totalBytes = new long[writers.length];
+    int width = 0;
+    for (final ColumnWriter writer : writers) {
+      width += writer.fixedWidth();
+    }
+    fixedRowWidth = width;
+  }
+
+  /**
+   * @return the expected data bytes per row for the given column
+   */
+
+  public double averageWidth(int col) {
+    if (totalRows == 0) {
+      return writers[col].type() == MinorType.VARCHAR ? DEFAULT_WIDTH : 0;
+    }
+    return (double) totalBytes[col] / totalRows;
+  }
+
+  /**
+   * @return the number of rows that should fit the budget, given
+   * the widths seen so far, but at least one row
+   */
+
+  public int rowLimit() {
+    double rowWidth = fixedRowWidth;
+    for (int i = 0; i < writers.length; i++) {
+      rowWidth += averageWidth(i);
+    }
+    final long rows = (long) (budget / Math.max(rowWidth, 1));
+    return (int) Math.max(1, Math.min(rows, MAX_ROWS));
+  }
+
+  /**
+   * Allocate each column's vector for a batch of the given size.
+   */
+
+  public void allocate(int rowCount) {
+    for (int i = 0; i < writers.length; i++) {
+      final long bytes = (long) Math.ceil(averageWidth(i) * SLACK * rowCount);
+      writers[i].allocate(rowCount, (int) Math.max(1, Math.min(bytes, budget)));
+    }
+  }
+
+  /**
+   * @return true if the rows written so far use up the budget
+   */
+
+  public boolean isFull(int rowCount) {
+    long bytes = (long) fixedRowWidth * rowCount;
+    for (int i = 0; i < writers.length; i++) {
+      bytes += writers[i].dataBytes();
+    }
+    return bytes >= budget;
+  }
+
+  /**
+   * Add the widths of a completed batch to the running averages.
+   */
+
+  public void endBatch(int rowCount) {
+    if (rowCount == 0) {
+      return;
+    }
+    for (int i = 0; i < writers.length; i++) {
+      totalBytes[i] += writers[i].dataBytes();
+    }
+    totalRows += rowCount;
+  }
+}
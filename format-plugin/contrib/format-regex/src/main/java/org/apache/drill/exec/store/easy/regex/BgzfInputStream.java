@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a BGZF file, inflating several blocks at once on an
+ * executor.
+ * <p>
+ * BGZF (the "blocked gzip" of bgzip and samtools) is a series of gzip
+ * members of at most 64 KB each, whose header carries the compressed
+ * size of the member in a "BC" extra field. Each block can thus be
+ * found without inflating the ones before it, and inflated on its own.
+ * A BGZF file is also a valid multi-member gzip file, so it keeps the
+ * <tt>.gz</tt> extension and any gzip tool can read it.
+ * <p>
+ * This stream reads the compressed blocks on the caller's thread (which
+ * is cheap: it just copies bytes), keeps up to <tt>2 * parallelism</tt>
+ * blocks inflating on the executor, and returns their data in order.
+ * See {@link GzipToBgzf} to convert plain gzip files.
+ */
+
+public class BgzfInputStream extends InputStream {
+
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  // Fixed gzip header, then XLEN.
+
+  private static final int HEADER_LENGTH = 12;
+  private static final int TRAILER_LENGTH = 8;
+  private static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+  private final InputStream in;
+  private final ExecutorService executor;
+  private final int depth;
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+  private final byte[] header = new byte[HEADER_LENGTH];
+  private final byte[] one = new byte[1];
+  private boolean eof;
+  private byte[] block = new byte[0];
+  private int blockPos;
+
+  public BgzfInputStream(InputStream in, ExecutorService executor, int parallelism) {
+    this.in = in;
+    this.executor = executor;
+    depth = 2 * Math.max(1, parallelism);
+  }
+
+  /**
+   * Check whether a stream starts with a BGZF block, leaving the
+   * stream positioned at its start.
+   */
+
+  public static boolean isBgzf(BufferedInputStream in) throws IOException {
+    final byte[] buf = new byte[18];
+    in.mark(buf.length);
+    int n = 0;
+    while (n < buf.length) {
+      final int count = in.read(buf, n, buf.length - n);
+      if (count == -1) {
+        break;
+      }
+      n += count;
+    }
+    in.reset();
+    return n == buf.length && isBgzfHeader(buf) &&
+        (buf[12] & 0xFF) == 'B' && (buf[13] & 0xFF) == 'C' && uint16(buf, 14) == 2;
+  }
+
+  private static boolean isBgzfHeader(byte[] buf) {
+
+    // Magic, deflate, FEXTRA flag.
+
+    return (buf[0] & 0xFF) == 0x1F && (buf[1] & 0xFF) == 0x8B &&
+        buf[2] == 8 && (buf[3] & 0x04) != 0;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (blockPos == block.length) {
+      if (! nextBlock()) {
+        return -1;
+      }
+    }
+    final int n = Math.min(len, block.length - blockPos);
+    System.arraycopy(block, blockPos, buf, off, n);
+    blockPos += n;
+    return n;
+  }
+
+  /**
+   * Move to the next inflated block, first topping up the blocks
+   * being inflated.
+   *
+   * @return false at the end of the file
+   */
+
+  private boolean nextBlock() throws IOException {
+    while (! eof && pending.size() < depth) {
+      final byte[] compressed = readBlock();
+      if (compressed == null) {
+        eof = true;
+        break;
+      }
+      pending.add(executor.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws IOException {
+          return inflate(compressed);
+        }
+      }));
+    }
+    final Future<byte[]> next = pending.poll();
+    if (next == null) {
+      return false;
+    }
+    try {
+      block = next.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while inflating BGZF block", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to inflate BGZF block", e.getCause());
+    }
+    blockPos = 0;
+    return true;
+  }
+
+  /**
+   * Read one whole compressed block.
+   *
+   * @return the block, or null at the end of the file
+   */
+
+  private byte[] readBlock() throws IOException {
+    final int first = readFully(header, 0, HEADER_LENGTH);
+    if (first == 0) {
+      return null;
+    }
+    if (first < HEADER_LENGTH || ! isBgzfHeader(header)) {
+      throw new IOException("Not a BGZF block");
+    }
+    final int xlen = uint16(header, 10);
+    final byte[] extra = new byte[xlen];
+    if (readFully(extra, 0, xlen) < xlen) {
+      throw new EOFException("Truncated BGZF block header");
+    }
+    int blockSize = -1;
+    for (int i = 0; i + 4 <= xlen; i += 4 + uint16(extra, i + 2)) {
+      if (extra[i] == 'B' && extra[i + 1] == 'C' && uint16(extra, i + 2) == 2 && i + 6 <= xlen) {
+        blockSize = uint16(extra, i + 4) + 1;
+        break;
+      }
+    }
+    if (blockSize == -1) {
+      throw new IOException("Gzip member without BGZF block size");
+    }
+    final int rest = blockSize - HEADER_LENGTH - xlen;
+    if (rest < TRAILER_LENGTH) {
+      throw new IOException("Bad BGZF block size: " + blockSize);
+    }
+    final byte[] compressed = new byte[rest];
+    if (readFully(compressed, 0, rest) < rest) {
+      throw new EOFException("Truncated BGZF block");
+    }
+    return compressed;
+  }
+
+  /**
+   * Inflate a block: deflate data followed by the CRC and size
+   * of the uncompressed data.
+   */
+
+  private static byte[] inflate(byte[] compressed) throws IOException {
+    final int dataLength = compressed.length - TRAILER_LENGTH;
+    final int size = (int) uint32(compressed, dataLength + 4);
+    if (size > MAX_BLOCK_SIZE) {
+      throw new IOException("Bad BGZF uncompressed size: " + size);
+    }
+    final byte[] out = new byte[size];
+    final Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed, 0, dataLength);
+      int n = 0;
+      while (n < size) {
+        final int count = inflater.inflate(out, n, size - n);
+        if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+          break;
+        }
+        n += count;
+      }
+      if (n != size) {
+        throw new IOException("Truncated BGZF block data");
+      }
+    } catch (final DataFormatException e) {
+      throw new IOException("Corrupt BGZF block", e);
+    } finally {
+      inflater.end();
+    }
+    final CRC32 crc = new CRC32();
+    crc.update(out, 0, size);
+    if (crc.getValue() != uint32(compressed, dataLength)) {
+      throw new IOException("BGZF block CRC mismatch");
+    }
+    return out;
+  }
+
+  private int readFully(byte[] buf, int off, int len) throws IOException {
+    int n = 0;
+    while (n < len) {
+      final int count = in.read(buf, off + n, len - n);
+      if (count == -1) {
+        break;
+      }
+      n += count;
+    }
+    return n;
+  }
+
+  private static int uint16(byte[] buf, int pos) {
+    return (buf[pos] & 0xFF) | (buf[pos + 1] & 0xFF) << 8;
+  }
+
+  private static long uint32(byte[] buf, int pos) {
+    return (uint16(buf, pos) | (long) uint16(buf, pos + 2) << 16);
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (final Future<byte[]> future : pending) {
+      future.cancel(false);
+    }
+    pending.clear();
+    block = new byte[0];
+    blockPos = 0;
+    in.close();
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes BGZF: data is cut into blocks of at most {@link #BLOCK_DATA_SIZE}
+ * bytes, each written as a gzip member with a "BC" extra field holding
+ * the member's size, and the file ends with the standard empty block.
+ * The output reads as ordinary gzip with any tool, and in parallel with
+ * {@link BgzfInputStream}.
+ */
+
+public class BgzfOutputStream extends OutputStream {
+
+  /**
+   * Uncompressed bytes per block, as used by bgzip, so that even
+   * incompressible data fits in a 64 KB block.
+   */
+
+  public static final int BLOCK_DATA_SIZE = 0xFF00;
+
+  private static final int MAX_BLOCK_SIZE = 64 * 1024;
+  private static final int HEADER_LENGTH = 18;
+  private static final int TRAILER_LENGTH = 8;
+
+  private static final byte[] EOF_BLOCK = {
+      0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF, 6, 0, 'B', 'C', 2, 0,
+      0x1B, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+  };
+
+  private final OutputStream out;
+  private final int level;
+  private final Deflater deflater;
+  private final byte[] data = new byte[BLOCK_DATA_SIZE];
+  private final byte[] block = new byte[MAX_BLOCK_SIZE];
+  private final CRC32 crc = new CRC32();
+  private int dataLength;
+  private boolean closed;
+
+  public BgzfOutputStream(OutputStream out) {
+    this(out, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  public BgzfOutputStream(OutputStream out, int level) {
+    this.out = out;
+    this.level = level;
+    deflater = new Deflater(level, true);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (dataLength == data.length) {
+      writeBlock();
+    }
+    data[dataLength++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] buf, int off, int len) throws IOException {
+    while (len > 0) {
+      if (dataLength == data.length) {
+        writeBlock();
+      }
+      final int n = Math.min(len, data.length - dataLength);
+      System.arraycopy(buf, off, data, dataLength, n);
+      dataLength += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    deflater.reset();
+    deflater.setInput(data, 0, dataLength);
+    deflater.finish();
+    final int limit = MAX_BLOCK_SIZE - HEADER_LENGTH - TRAILER_LENGTH;
+    int compressed = 0;
+    while (! deflater.finished() && compressed < limit) {
+      compressed += deflater.deflate(block, HEADER_LENGTH + compressed, limit - compressed);
+    }
+    if (! deflater.finished()) {
+
+      // Did not fit; store the data uncompressed instead.
+
+      deflater.reset();
+      deflater.setLevel(Deflater.NO_COMPRESSION);
+      deflater.setInput(data, 0, dataLength);
+      deflater.finish();
+      compressed = 0;
+      while (! deflater.finished()) {
+        compressed += deflater.deflate(block, HEADER_LENGTH + compressed, limit - compressed);
+      }
+      deflater.setLevel(level);
+    }
+    final int blockSize = HEADER_LENGTH + compressed + TRAILER_LENGTH;
+    writeHeader(blockSize);
+    crc.reset();
+    crc.update(data, 0, dataLength);
+    int pos = HEADER_LENGTH + compressed;
+    pos = putInt(block, pos, crc.getValue());
+    putInt(block, pos, dataLength);
+    out.write(block, 0, blockSize);
+    dataLength = 0;
+  }
+
+  private void writeHeader(int blockSize) {
+    block[0] = 0x1F;
+    block[1] = (byte) 0x8B;
+    block[2] = 8;             // Deflate
+    block[3] = 4;             // FEXTRA
+    block[4] = block[5] = block[6] = block[7] = 0; // No mtime
+    block[8] = 0;
+    block[9] = (byte) 0xFF;   // Unknown OS
+    block[10] = 6;            // XLEN
+    block[11] = 0;
+    block[12] = 'B';
+    block[13] = 'C';
+    block[14] = 2;            // SLEN
+    block[15] = 0;
+    block[16] = (byte) (blockSize - 1);
+    block[17] = (byte) ((blockSize - 1) >> 8);
+  }
+
+  private static int putInt(byte[] buf, int pos, long value) {
+    buf[pos] = (byte) value;
+    buf[pos + 1] = (byte) (value >> 8);
+    buf[pos + 2] = (byte) (value >> 16);
+    buf[pos + 3] = (byte) (value >> 24);
+    return pos + 4;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (dataLength > 0) {
+      writeBlock();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (dataLength > 0) {
+        writeBlock();
+      }
+      out.write(EOF_BLOCK);
+    } finally {
+      deflater.end();
+      out.close();
+    }
+  }
+}
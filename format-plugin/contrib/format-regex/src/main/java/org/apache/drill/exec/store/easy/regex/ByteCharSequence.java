@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Presents a range of a byte array as a character sequence, one
+ * character per byte (ISO-8859-1), so a regex can run directly on
+ * undecoded input. Group offsets reported by the matcher are then
+ * byte offsets into the underlying array.
+ * <p>
+ * This is the same as decoding only when both the pattern and the
+ * bytes are pure ASCII. On the bytes of a multi-byte UTF-8 character,
+ * <tt>.</tt>, <tt>\w</tt>, negated classes and counted repeats would
+ * count bytes rather than characters, and <tt>.</tt> would not match a
+ * continuation byte of 0x85, which reads as the line terminator U+0085.
+ * So callers use it only for lines that {@link LineScanner#isAscii()}
+ * reports as pure ASCII, and decode the others.
+ * <p>
+ * The instance is mutable and meant to be reused for each line.
+ */
+
+public class ByteCharSequence implements CharSequence {
+
+  private byte[] buf;
+  private int offset;
+  private int length;
+
+  public ByteCharSequence() { }
+
+  public ByteCharSequence(byte[] buf, int offset, int length) {
+    reset(buf, offset, length);
+  }
+
+  public ByteCharSequence reset(byte[] buf, int offset, int length) {
+    this.buf = buf;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  public byte[] buffer() { return buf; }
+  public int offset() { return offset; }
+
+  @Override
+  public int length() { return length; }
+
+  @Override
+  public char charAt(int index) {
+    return (char) (buf[offset + index] & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return new ByteCharSequence(buf, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    return new String(buf, offset, length, StandardCharsets.ISO_8859_1);
+  }
+}
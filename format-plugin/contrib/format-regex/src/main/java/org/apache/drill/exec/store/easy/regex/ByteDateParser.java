@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses dates and timestamps directly from bytes into Drill's
+ * representation: milliseconds since the epoch, in UTC.
+ * <p>
+ * Formats built only from the numeric fields <tt>yyyy</tt>, <tt>yy</tt>,
+ * <tt>M</tt>, <tt>d</tt>, <tt>H</tt>, <tt>m</tt>, <tt>s</tt> and
+ * <tt>S</tt> (fraction of second), plus literal text, are compiled into
+ * a list of steps that walk the bytes with no allocation. Any other
+ * format falls back to <tt>DateTimeFormatter</tt>, which is slower but
+ * handles month names, AM/PM, offsets and the like. A timestamp with an
+ * offset or zone is converted to UTC; one without is taken as UTC.
+ */
+
+public class ByteDateParser {
+
+  /**
+   * Returned when the value does not fit the format.
+   */
+
+  public static final long INVALID = Long.MIN_VALUE;
+
+  private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  private enum Field { YEAR, YEAR2, MONTH, DAY, HOUR, MINUTE, SECOND, FRACTION, LITERAL }
+
+  private static class Step {
+    private final Field field;
+
+    // Digits for fixed width fields; 0 means 1 or 2 digits.
+
+    private final int width;
+    private final byte[] literal;
+
+    public Step(Field field, int width, byte[] literal) {
+      this.field = field;
+      this.width = width;
+      this.literal = literal;
+    }
+  }
+
+  private final String format;
+  private final Step[] steps;
+  private final DateTimeFormatter formatter;
+  private final ByteCharSequence chars;
+  private int pos;
+
+  public ByteDateParser(String format) {
+    this.format = format;
+    steps = compile(format);
+    if (steps == null) {
+      formatter = DateTimeFormatter.ofPattern(format);
+      chars = new ByteCharSequence();
+    } else {
+      formatter = null;
+      chars = null;
+    }
+  }
+
+  public String format() { return format; }
+
+  /**
+   * @return true if the format is parsed without going through
+   * <tt>DateTimeFormatter</tt>
+   */
+
+  public boolean isDirect() { return steps != null; }
+
+  private static Step[] compile(String format) {
+    final List<Step> steps = new ArrayList<>();
+    int i = 0;
+    while (i < format.length()) {
+      final char c = format.charAt(i);
+      int run = 1;
+      while (i + run < format.length() && format.charAt(i + run) == c) {
+        run++;
+      }
+      if (c == '\'') {
+
+        // Quoted literal text; '' is a quote.
+
+        final StringBuilder text = new StringBuilder();
+        i++;
+        for (;;) {
+          if (i >= format.length()) {
+            return null;
+          }
+          if (format.charAt(i) == '\'') {
+            if (i + 1 < format.length() && format.charAt(i + 1) == '\'') {
+              text.append('\'');
+              i += 2;
+              continue;
+            }
+            i++;
+            break;
+          }
+          text.append(format.charAt(i++));
+        }
+        if (text.length() > 0) {
+          steps.add(literal(text.toString()));
+        }
+        continue;
+      }
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+        Step step;
+        switch (c) {
+        case 'y':
+        case 'u':
+          if (run == 2) {
+            step = new Step(Field.YEAR2, 2, null);
+          } else if (run == 4) {
+            step = new Step(Field.YEAR, 4, null);
+          } else {
+            return null;
+          }
+          break;
+        case 'M':
+          if (run > 2) {
+
+            // Month names
+
+            return null;
+          }
+          step = numeric(Field.MONTH, run);
+          break;
+        case 'd':
+          step = run > 2 ? null : numeric(Field.DAY, run);
+          break;
+        case 'H':
+          step = run > 2 ? null : numeric(Field.HOUR, run);
+          break;
+        case 'm':
+          step = run > 2 ? null : numeric(Field.MINUTE, run);
+          break;
+        case 's':
+          step = run > 2 ? null : numeric(Field.SECOND, run);
+          break;
+        case 'S':
+          step = run > 9 ? null : new Step(Field.FRACTION, run, null);
+          break;
+        default:
+          step = null;
+        }
+        if (step == null) {
+          return null;
+        }
+        steps.add(step);
+      } else {
+        steps.add(literal(format.substring(i, i + run)));
+      }
+      i += run;
+    }
+    return steps.toArray(new Step[steps.size()]);
+  }
+
+  private static Step numeric(Field field, int run) {
+    return new Step(field, run == 1 ? 0 : run, null);
+  }
+
+  private static Step literal(String text) {
+    return new Step(Field.LITERAL, 0, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Parse a timestamp.
+   *
+   * @return milliseconds since the epoch (UTC), or {@link #INVALID}
+   */
+
+  public long parseTimestamp(byte[] buf, int start, int end) {
+    if (steps == null) {
+      return parseWithFormatter(buf, start, end, false);
+    }
+    return parseDirect(buf, start, end);
+  }
+
+  /**
+   * Parse a date. Any time fields in the format are ignored.
+   *
+   * @return milliseconds since the epoch (UTC) of midnight on
+   * the date, or {@link #INVALID}
+   */
+
+  public long parseDate(byte[] buf, int start, int end) {
+    if (steps == null) {
+      return parseWithFormatter(buf, start, end, true);
+    }
+    final long millis = parseDirect(buf, start, end);
+    return millis == INVALID ? INVALID : Math.floorDiv(millis, MILLIS_PER_DAY) * MILLIS_PER_DAY;
+  }
+
+  private long parseDirect(byte[] buf, int start, int end) {
+    int year = 1970;
+    int month = 1;
+    int day = 1;
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int millis = 0;
+    pos = start;
+    for (int i = 0; i < steps.length; i++) {
+      final Step step = steps[i];
+      if (step.field == Field.LITERAL) {
+        final byte[] text = step.literal;
+        if (end - pos < text.length) {
+          return INVALID;
+        }
+        for (int j = 0; j < text.length; j++) {
+          if (buf[pos++] != text[j]) {
+            return INVALID;
+          }
+        }
+        continue;
+      }
+      final int value = digits(buf, end, step.width);
+      if (value < 0) {
+        return INVALID;
+      }
+      switch (step.field) {
+      case YEAR:
+        year = value;
+        break;
+      case YEAR2:
+        year = 2000 + value;
+        break;
+      case MONTH:
+        month = value;
+        break;
+      case DAY:
+        day = value;
+        break;
+      case HOUR:
+        hour = value;
+        break;
+      case MINUTE:
+        minute = value;
+        break;
+      case SECOND:
+        second = value;
+        break;
+      case FRACTION:
+
+        // Scale the fraction to milliseconds.
+
+        int scaled = value;
+        for (int w = step.width; w < 3; w++) {
+          scaled *= 10;
+        }
+        for (int w = step.width; w > 3; w--) {
+          scaled /= 10;
+        }
+        millis = scaled;
+        break;
+      default:
+      }
+    }
+    if (pos != end || month < 1 || month > 12 || day < 1 ||
+        day > daysInMonth(year, month) || hour > 23 || minute > 59 || second > 59) {
+      return INVALID;
+    }
+    return ((((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60) + second) * 1000 + millis;
+  }
+
+  /**
+   * Read a number of the given width, or of 1 or 2 digits
+   * if the width is 0.
+   *
+   * @return the value, or -1 if the digits are not present
+   */
+
+  private int digits(byte[] buf, int end, int width) {
+    final int max = width == 0 ? 2 : width;
+    int value = 0;
+    int n = 0;
+    while (n < max && pos < end) {
+      final int digit = buf[pos] - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      value = value * 10 + digit;
+      pos++;
+      n++;
+    }
+    if (n == 0 || (width != 0 && n != width)) {
+      return -1;
+    }
+    return value;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+    case 2:
+      return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+    case 4:
+    case 6:
+    case 9:
+    case 11:
+      return 30;
+    default:
+      return 31;
+    }
+  }
+
+  /**
+   * Days from 1970-01-01 to the given date in the proleptic
+   * Gregorian calendar. (Howard Hinnant's algorithm.)
+   */
+
+  private static long daysFromCivil(int year, int month, int day) {
+    final int y = month <= 2 ? year - 1 : year;
+    final int era = (y >= 0 ? y : y - 399) / 400;
+    final int yoe = y - era * 400;
+    final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097L + doe - 719468;
+  }
+
+  private long parseWithFormatter(byte[] buf, int start, int end, boolean dateOnly) {
+    try {
+      final TemporalAccessor parsed = formatter.parse(chars.reset(buf, start, end - start));
+      if (dateOnly || ! parsed.isSupported(ChronoField.HOUR_OF_DAY)) {
+        return LocalDate.from(parsed).toEpochDay() * MILLIS_PER_DAY;
+      }
+
+      // A format with an offset or zone, such as the access log's
+      // "dd/MMM/yyyy:HH:mm:ss Z", gives a point in time; without one,
+      // the time is taken as UTC.
+
+      if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+        return Instant.from(parsed).toEpochMilli();
+      }
+      return LocalDateTime.from(parsed).toInstant(ZoneOffset.UTC).toEpochMilli();
+    } catch (final DateTimeException e) {
+      return INVALID;
+    }
+  }
+}
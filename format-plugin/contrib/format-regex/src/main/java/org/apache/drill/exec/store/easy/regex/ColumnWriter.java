@@ -0,0 +1,493 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.drill.common.types.TypeProtos.MinorType;
+import org.apache.drill.common.types.Types;
+import org.apache.drill.exec.exception.SchemaChangeException;
+import org.apache.drill.exec.physical.impl.OutputMutator;
+import org.apache.drill.exec.record.MaterializedField;
+import org.apache.drill.exec.vector.NullableBigIntVector;
+import org.apache.drill.exec.vector.NullableDateVector;
+import org.apache.drill.exec.vector.NullableFloat8Vector;
+import org.apache.drill.exec.vector.NullableIntVector;
+import org.apache.drill.exec.vector.NullableTimeStampVector;
+import org.apache.drill.exec.vector.NullableVarCharVector;
+
+/**
+ * Writes captured group bytes into a nullable vector of the column's
+ * type. Numbers and dates are parsed directly from the bytes; a value
+ * that does not parse (such as the "-" that access logs use for a
+ * missing byte count) is written as null.
+ * <p>
+ * Writers also report the memory their values take, so that the reader
+ * can size batches to a byte budget (see {@link BatchSizer}).
+ * <p>
+ * VarChar columns marked as low-cardinality share the reader's
+ * {@link ValueDictionary} for their group (see {@link DictVarCharWriter}).
+ */
+
+public abstract class ColumnWriter {
+
+  protected final String name;
+
+  public ColumnWriter(String name) {
+    this.name = name;
+  }
+
+  public static ColumnWriter build(String name, FieldSpec spec) {
+    if (spec == null) {
+      return new VarCharWriter(name);
+    }
+    switch (spec.type()) {
+    case INT:
+      return new IntWriter(name);
+    case BIGINT:
+      return new BigIntWriter(name);
+    case FLOAT8:
+      return new Float8Writer(name);
+    case TIMESTAMP:
+      return new TimeStampWriter(name, new ByteDateParser(spec.format()));
+    case DATE:
+      return new DateWriter(name, new ByteDateParser(spec.format()));
+    default:
+      return new VarCharWriter(name);
+    }
+  }
+
+  public String name() { return name; }
+
+  public abstract MinorType type();
+
+  public abstract void define(OutputMutator output) throws SchemaChangeException;
+
+  /**
+   * Allocate the vector for a new batch.
+   *
+   * @param rowCount number of rows in the batch
+   * @param dataBytes expected total size of variable-width data;
+   * ignored by fixed-width columns
+   */
+
+  public abstract void allocate(int rowCount, int dataBytes);
+
+  /**
+   * @return bytes per row for the fixed-width parts of the vector:
+   * the value (or offset) and the null bit, rounded up to a byte
+   */
+
+  public abstract int fixedWidth();
+
+  /**
+   * @return bytes of variable-width data written since the last
+   * {@link #allocate(int, int)}
+   */
+
+  public int dataBytes() { return 0; }
+
+  public abstract void setNull(int row);
+
+  /**
+   * Write the value in <tt>buf[start, end)</tt> to the given row.
+   */
+
+  public abstract void write(int row, byte[] buf, int start, int end);
+
+  /**
+   * Write the value in <tt>chars[start, end)</tt>, from a line
+   * decoded from UTF-8, to the given row.
+   */
+
+  public void write(int row, CharSequence chars, int start, int end) {
+    final byte[] value = chars.subSequence(start, end).toString().getBytes(StandardCharsets.UTF_8);
+    write(row, value, 0, value.length);
+  }
+
+  protected MaterializedField field() {
+    return MaterializedField.create(name, Types.optional(type()));
+  }
+
+  public static class VarCharWriter extends ColumnWriter {
+    private NullableVarCharVector vector;
+    private NullableVarCharVector.Mutator mutator;
+    private int dataBytes;
+
+    public VarCharWriter(String name) {
+      super(name);
+    }
+
+    @Override
+    public MinorType type() { return MinorType.VARCHAR; }
+
+    @Override
+    public void define(OutputMutator output) throws SchemaChangeException {
+      vector = output.addField(field(), NullableVarCharVector.class);
+      mutator = vector.getMutator();
+    }
+
+    @Override
+    public void allocate(int rowCount, int dataBytes) {
+      vector.allocateNew(dataBytes, rowCount);
+      this.dataBytes = 0;
+    }
+
+    @Override
+    public int fixedWidth() { return 4 + 1; }
+
+    @Override
+    public int dataBytes() { return dataBytes; }
+
+    @Override
+    public void setNull(int row) { mutator.setNull(row); }
+
+    @Override
+    public void write(int row, byte[] buf, int start, int end) {
+      mutator.setSafe(row, buf, start, end - start);
+      dataBytes += end - start;
+    }
+  }
+
+  /**
+   * VarChar writer for a low-cardinality column. Drill vectors have no
+   * dictionary encoding, so each row still holds its bytes. A value of
+   * a decoded line is looked up in the dictionary by its characters and
+   * written from the interned bytes, rather than encoded into a new
+   * string and byte array per row. A value matched as bytes is already
+   * written straight from the line buffer.
+   */
+
+  public static class DictVarCharWriter extends VarCharWriter {
+    private final ValueDictionary dictionary;
+
+    public DictVarCharWriter(String name, ValueDictionary dictionary) {
+      super(name);
+      this.dictionary = dictionary;
+    }
+
+    @Override
+    public void write(int row, CharSequence chars, int start, int end) {
+      final int entry = dictionary.lookup(chars, start, end);
+      if (entry == -1) {
+        super.write(row, chars, start, end);
+      } else {
+        final byte[] value = dictionary.value(entry);
+        write(row, value, 0, value.length);
+      }
+    }
+  }
+
+  public static class IntWriter extends ColumnWriter {
+    private NullableIntVector vector;
+    private NullableIntVector.Mutator mutator;
+
+    public IntWriter(String name) {
+      super(name);
+    }
+
+    @Override
+    public MinorType type() { return MinorType.INT; }
+
+    @Override
+    public void define(OutputMutator output) throws SchemaChangeException {
+      vector = output.addField(field(), NullableIntVector.class);
+      mutator = vector.getMutator();
+    }
+
+    @Override
+    public void allocate(int rowCount, int dataBytes) {
+      vector.allocateNew(rowCount);
+    }
+
+    @Override
+    public int fixedWidth() { return 4 + 1; }
+
+    @Override
+    public void setNull(int row) { mutator.setNull(row); }
+
+    @Override
+    public void write(int row, byte[] buf, int start, int end) {
+      final long value = parseLong(buf, start, end);
+      if (value == INVALID_LONG || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+        mutator.setNull(row);
+      } else {
+        mutator.setSafe(row, (int) value);
+      }
+    }
+  }
+
+  public static class BigIntWriter extends ColumnWriter {
+    private NullableBigIntVector vector;
+    private NullableBigIntVector.Mutator mutator;
+
+    public BigIntWriter(String name) {
+      super(name);
+    }
+
+    @Override
+    public MinorType type() { return MinorType.BIGINT; }
+
+    @Override
+    public void define(OutputMutator output) throws SchemaChangeException {
+      vector = output.addField(field(), NullableBigIntVector.class);
+      mutator = vector.getMutator();
+    }
+
+    @Override
+    public void allocate(int rowCount, int dataBytes) {
+      vector.allocateNew(rowCount);
+    }
+
+    @Override
+    public int fixedWidth() { return 8 + 1; }
+
+    @Override
+    public void setNull(int row) { mutator.setNull(row); }
+
+    @Override
+    public void write(int row, byte[] buf, int start, int end) {
+      final long value = parseLong(buf, start, end);
+      if (value == INVALID_LONG) {
+        mutator.setNull(row);
+      } else {
+        mutator.setSafe(row, value);
+      }
+    }
+  }
+
+  public static class Float8Writer extends ColumnWriter {
+    private NullableFloat8Vector vector;
+    private NullableFloat8Vector.Mutator mutator;
+
+    public Float8Writer(String name) {
+      super(name);
+    }
+
+    @Override
+    public MinorType type() { return MinorType.FLOAT8; }
+
+    @Override
+    public void define(OutputMutator output) throws SchemaChangeException {
+      vector = output.addField(field(), NullableFloat8Vector.class);
+      mutator = vector.getMutator();
+    }
+
+    @Override
+    public void allocate(int rowCount, int dataBytes) {
+      vector.allocateNew(rowCount);
+    }
+
+    @Override
+    public int fixedWidth() { return 8 + 1; }
+
+    @Override
+    public void setNull(int row) { mutator.setNull(row); }
+
+    @Override
+    public void write(int row, byte[] buf, int start, int end) {
+      final double value = parseDouble(buf, start, end);
+      if (Double.isNaN(value)) {
+        mutator.setNull(row);
+      } else {
+        mutator.setSafe(row, value);
+      }
+    }
+  }
+
+  public static class TimeStampWriter extends ColumnWriter {
+    private final ByteDateParser parser;
+    private NullableTimeStampVector vector;
+    private NullableTimeStampVector.Mutator mutator;
+
+    public TimeStampWriter(String name, ByteDateParser parser) {
+      super(name);
+      this.parser = parser;
+    }
+
+    @Override
+    public MinorType type() { return MinorType.TIMESTAMP; }
+
+    @Override
+    public void define(OutputMutator output) throws SchemaChangeException {
+      vector = output.addField(field(), NullableTimeStampVector.class);
+      mutator = vector.getMutator();
+    }
+
+    @Override
+    public void allocate(int rowCount, int dataBytes) {
+      vector.allocateNew(rowCount);
+    }
+
+    @Override
+    public int fixedWidth() { return 8 + 1; }
+
+    @Override
+    public void setNull(int row) { mutator.setNull(row); }
+
+    @Override
+    public void write(int row, byte[] buf, int start, int end) {
+      final long value = parser.parseTimestamp(buf, start, end);
+      if (value == ByteDateParser.INVALID) {
+        mutator.setNull(row);
+      } else {
+        mutator.setSafe(row, value);
+      }
+    }
+  }
+
+  public static class DateWriter extends ColumnWriter {
+    private final ByteDateParser parser;
+    private NullableDateVector vector;
+    private NullableDateVector.Mutator mutator;
+
+    public DateWriter(String name, ByteDateParser parser) {
+      super(name);
+      this.parser = parser;
+    }
+
+    @Override
+    public MinorType type() { return MinorType.DATE; }
+
+    @Override
+    public void define(OutputMutator output) throws SchemaChangeException {
+      vector = output.addField(field(), NullableDateVector.class);
+      mutator = vector.getMutator();
+    }
+
+    @Override
+    public void allocate(int rowCount, int dataBytes) {
+      vector.allocateNew(rowCount);
+    }
+
+    @Override
+    public int fixedWidth() { return 8 + 1; }
+
+    @Override
+    public void setNull(int row) { mutator.setNull(row); }
+
+    @Override
+    public void write(int row, byte[] buf, int start, int end) {
+      final long value = parser.parseDate(buf, start, end);
+      if (value == ByteDateParser.INVALID) {
+        mutator.setNull(row);
+      } else {
+        mutator.setSafe(row, value);
+      }
+    }
+  }
+
+  public static final long INVALID_LONG = Long.MIN_VALUE;
+
+  /**
+   * Parse a decimal integer with an optional sign.
+   *
+   * @return the value, or {@link #INVALID_LONG} if the bytes are not a
+   * valid integer or the value overflows
+   */
+
+  public static long parseLong(byte[] buf, int start, int end) {
+    if (start >= end) {
+      return INVALID_LONG;
+    }
+    boolean negative = false;
+    int pos = start;
+    if (buf[pos] == '-' || buf[pos] == '+') {
+      negative = buf[pos] == '-';
+      if (++pos == end) {
+        return INVALID_LONG;
+      }
+    }
+
+    // Accumulate as a negative number to cover Long.MIN_VALUE + 1.
+
+    long value = 0;
+    for (; pos < end; pos++) {
+      final int digit = buf[pos] - '0';
+      if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+        return INVALID_LONG;
+      }
+      value = value * 10 - digit;
+    }
+    if (! negative && value == Long.MIN_VALUE) {
+      return INVALID_LONG;
+    }
+    return negative ? value : -value;
+  }
+
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  /**
+   * Parse a floating point number. Plain decimals with up to 15
+   * significant digits (the common case in logs) are converted exactly
+   * without allocation; anything else goes through
+   * <tt>Double.parseDouble()</tt>.
+   *
+   * @return the value, or NaN if the bytes are not a number
+   */
+
+  public static double parseDouble(byte[] buf, int start, int end) {
+    if (start >= end) {
+      return Double.NaN;
+    }
+    int pos = start;
+    boolean negative = false;
+    if (buf[pos] == '-' || buf[pos] == '+') {
+      negative = buf[pos] == '-';
+      pos++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int significant = 0;
+    int fraction = -1;
+    for (; pos < end; pos++) {
+      final byte b = buf[pos];
+      if (b >= '0' && b <= '9') {
+        mantissa = mantissa * 10 + (b - '0');
+        digits++;
+        if (mantissa != 0) {
+          significant++;
+        }
+        if (fraction >= 0) {
+          fraction++;
+        }
+      } else if (b == '.' && fraction < 0) {
+        fraction = 0;
+      } else {
+        break;
+      }
+    }
+    if (pos == end && digits > 0 && significant <= 15 && fraction != 0 &&
+        fraction < POWERS_OF_TEN.length) {
+
+      // Both the mantissa and the power of ten are exact doubles, so
+      // the quotient is correctly rounded.
+
+      final double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(new String(buf, start, end - start, StandardCharsets.ISO_8859_1));
+    } catch (final NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+}
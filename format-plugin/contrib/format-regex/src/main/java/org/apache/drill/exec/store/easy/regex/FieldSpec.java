@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.drill.common.types.TypeProtos.MinorType;
+
+/**
+ * One entry of the regex format's field list: a name, with an optional
+ * type and an optional format:<pre><code>
+ * name[:type[:format]]
+ * </code></pre>
+ * For example:<pre><code>
+ * ts:TIMESTAMP:yyyy-MM-dd HH:mm:ss,SSS, bytes:BIGINT, level
+ * </code></pre>
+ * Supported types are VARCHAR (the default), INT, BIGINT, DOUBLE,
+ * TIMESTAMP and DATE. The format applies to TIMESTAMP and DATE and uses
+ * <tt>DateTimeFormatter</tt> pattern letters.
+ * <p>
+ * Since a date format may itself contain a comma, within a format a
+ * comma followed by a non-space character is part of the format; a comma
+ * followed by a space (or the end of the list) ends the field.
+ */
+
+public class FieldSpec {
+
+  public static final String DEFAULT_TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss";
+  public static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
+
+  private final String name;
+  private final MinorType type;
+  private final String format;
+
+  public FieldSpec(String name, MinorType type, String format) {
+    this.name = name;
+    this.type = type;
+    this.format = format;
+  }
+
+  public String name() { return name; }
+  public MinorType type() { return type; }
+
+  /**
+   * @return the date format, with the default filled in for date
+   * and timestamp fields, or null for other types
+   */
+
+  public String format() {
+    if (format != null) {
+      return format;
+    }
+    switch (type) {
+    case TIMESTAMP:
+      return DEFAULT_TIMESTAMP_FORMAT;
+    case DATE:
+      return DEFAULT_DATE_FORMAT;
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Parse the field list.
+   *
+   * @throws IllegalArgumentException for an unknown type or a format
+   * on a type that does not take one
+   */
+
+  public static List<FieldSpec> parse(String fields) {
+    final List<FieldSpec> specs = new ArrayList<>();
+    if (fields == null) {
+      fields = "";
+    }
+    int start = 0;
+    int colons = 0;
+    for (int i = 0; i < fields.length(); i++) {
+      final char c = fields.charAt(i);
+      if (c == ':') {
+        colons++;
+      } else if (c == ',') {
+        final boolean inFormat = colons >= 2 && i + 1 < fields.length() &&
+            ! Character.isWhitespace(fields.charAt(i + 1));
+        if (! inFormat) {
+          specs.add(parseOne(fields.substring(start, i)));
+          start = i + 1;
+          colons = 0;
+        }
+      }
+    }
+    specs.add(parseOne(fields.substring(start)));
+    return specs;
+  }
+
+  private static FieldSpec parseOne(String entry) {
+    final int typeSep = entry.indexOf(':');
+    if (typeSep == -1) {
+      return new FieldSpec(entry.trim(), MinorType.VARCHAR, null);
+    }
+    final String name = entry.substring(0, typeSep).trim();
+    final int formatSep = entry.indexOf(':', typeSep + 1);
+    final String typeName = (formatSep == -1
+        ? entry.substring(typeSep + 1) : entry.substring(typeSep + 1, formatSep)).trim();
+    final MinorType type = parseType(typeName, name);
+    String format = null;
+    if (formatSep != -1) {
+      format = entry.substring(formatSep + 1).trim();
+      if (type != MinorType.TIMESTAMP && type != MinorType.DATE) {
+        throw new IllegalArgumentException(String.format(
+            "Field %s: a format is allowed only for TIMESTAMP and DATE", name));
+      }
+      if (format.isEmpty()) {
+        format = null;
+      }
+    }
+    return new FieldSpec(name, type, format);
+  }
+
+  private static MinorType parseType(String typeName, String fieldName) {
+    switch (typeName.toUpperCase()) {
+    case "":
+    case "VARCHAR":
+      return MinorType.VARCHAR;
+    case "INT":
+    case "INTEGER":
+      return MinorType.INT;
+    case "BIGINT":
+      return MinorType.BIGINT;
+    case "DOUBLE":
+    case "FLOAT8":
+      return MinorType.FLOAT8;
+    case "TIMESTAMP":
+      return MinorType.TIMESTAMP;
+    case "DATE":
+      return MinorType.DATE;
+    default:
+      throw new IllegalArgumentException(String.format(
+          "Field %s: unsupported type %s. Use VARCHAR, INT, BIGINT, DOUBLE, TIMESTAMP or DATE",
+          fieldName, typeName));
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder buf = new StringBuilder(name).append(':').append(type.name());
+    if (format != null) {
+      buf.append(':').append(format);
+    }
+    return buf.toString();
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Rewrites gzip files as BGZF, so that the regex reader can inflate them
+ * on several threads (see {@link BgzfInputStream}). The output is still
+ * valid gzip, so it can replace the original file under the same name.
+ * Paths may be on any Hadoop file system.
+ * <pre><code>
+ * java -cp ... org.apache.drill.exec.store.easy.regex.GzipToBgzf in.log.gz out.log.gz
+ * </code></pre>
+ */
+
+public class GzipToBgzf {
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * Copy a gzip stream (of one or more members) to a BGZF stream.
+   * Closes both streams.
+   *
+   * @return the number of uncompressed bytes copied
+   */
+
+  public static long convert(InputStream gzipIn, OutputStream out) throws IOException {
+    long total = 0;
+    try (InputStream in = new GZIPInputStream(gzipIn, BUFFER_SIZE);
+         OutputStream bgzfOut = new BgzfOutputStream(out)) {
+      final byte[] buf = new byte[BUFFER_SIZE];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        bgzfOut.write(buf, 0, n);
+        total += n;
+      }
+    }
+    return total;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: GzipToBgzf <input.gz> <output.gz>");
+      System.exit(1);
+    }
+    final Configuration conf = new Configuration();
+    final Path inPath = new Path(args[0]);
+    final Path outPath = new Path(args[1]);
+    final FileSystem inFs = inPath.getFileSystem(conf);
+    final FileSystem outFs = outPath.getFileSystem(conf);
+    final long bytes = convert(inFs.open(inPath), outFs.create(outPath, false));
+    System.out.println(String.format("Wrote %s: %d bytes uncompressed", outPath, bytes));
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reusable matcher over one of the supported regex engines. The
+ * reader resets the same matcher for every line.
+ * <ul>
+ * <li><tt>java</tt> (the default): <tt>java.util.regex</tt>, a
+ * backtracking engine that supports the full Java syntax.</li>
+ * <li><tt>re2j</tt>: RE2/J, an automaton-based engine that runs in
+ * time linear in the line length, so a bad pattern cannot pin a core.
+ * It does not support back-references, lookaround, atomic groups or
+ * possessive quantifiers; patterns that use them fall back to
+ * <tt>java.util.regex</tt>.</li>
+ * </ul>
+ */
+
+public abstract class LineMatcher {
+
+  public static final String JAVA_ENGINE = "java";
+  public static final String RE2J_ENGINE = "re2j";
+
+  public abstract LineMatcher reset(CharSequence input);
+  public abstract boolean matches();
+  public abstract int groupCount();
+  public abstract int start(int group);
+  public abstract int end(int group);
+  public abstract String group(int group);
+
+  /**
+   * @return the name of the engine actually in use
+   */
+
+  public abstract String engine();
+
+  /**
+   * Rewrite a regex so that its groups do not capture, for use when
+   * only the fact of a match is needed. Both engines then skip the
+   * bookkeeping for group positions.
+   *
+   * @return the rewritten regex, or null if it cannot be rewritten
+   * safely: it uses back-references or comment mode
+   */
+
+  public static String withoutCaptures(String regex) {
+    return withCaptures(regex, new boolean[0]);
+  }
+
+  /**
+   * Rewrite a regex so that only some of its groups capture, for use
+   * when the query reads only those. The kept groups are renumbered in
+   * order; see {@link RemappedMatcher}.
+   *
+   * @param keep for each group of the regex (group 1 first), whether
+   * it still captures; groups past the end of the array do not
+   * @return the rewritten regex, or null if it cannot be rewritten
+   * safely: it uses back-references or comment mode
+   */
+
+  public static String withCaptures(String regex, boolean[] keep) {
+    final StringBuilder buf = new StringBuilder(regex.length() + 16);
+    int group = 0;
+    int classDepth = 0;
+    int i = 0;
+    while (i < regex.length()) {
+      final char c = regex.charAt(i);
+      if (c == '\\') {
+        if (i + 1 >= regex.length()) {
+          return null;
+        }
+        final char next = regex.charAt(i + 1);
+        if ((next >= '1' && next <= '9') || next == 'k') {
+
+          // Back-reference: needs the group to capture.
+
+          return null;
+        }
+        if (next == 'Q') {
+
+          // Quoted text runs to \E, or to the end.
+
+          final int end = regex.indexOf("\\E", i + 2);
+          final int stop = end == -1 ? regex.length() : end + 2;
+          buf.append(regex, i, stop);
+          i = stop;
+          continue;
+        }
+        buf.append(c).append(next);
+        i += 2;
+        continue;
+      }
+      if (classDepth > 0) {
+        if (c == '[') {
+          classDepth++;
+        } else if (c == ']') {
+          classDepth--;
+        }
+        buf.append(c);
+        i++;
+        continue;
+      }
+      if (c == '[') {
+
+        // A ']' first in a class (after an optional '^') is literal.
+
+        classDepth = 1;
+        buf.append(c);
+        i++;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+          buf.append('^');
+          i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+          buf.append(']');
+          i++;
+        }
+        continue;
+      }
+      if (c == '(') {
+        if (i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+          final int nameStart = namedGroupStart(regex, i + 2);
+          if (nameStart != -1) {
+            final int close = regex.indexOf('>', nameStart);
+            if (close == -1) {
+              return null;
+            }
+            if (isKept(keep, group++)) {
+              buf.append(regex, i, close + 1);
+            } else {
+              buf.append("(?:");
+            }
+            i = close + 1;
+            continue;
+          }
+          if (isCommentFlag(regex, i + 2)) {
+            return null;
+          }
+          buf.append(c);
+          i++;
+          continue;
+        }
+        buf.append(isKept(keep, group++) ? "(" : "(?:");
+        i++;
+        continue;
+      }
+      buf.append(c);
+      i++;
+    }
+    return buf.toString();
+  }
+
+  private static boolean isKept(boolean[] keep, int group) {
+    return group < keep.length && keep[group];
+  }
+
+  /**
+   * @return the start of the name for a named group: "(?&lt;name&gt;"
+   * or RE2's "(?P&lt;name&gt;", but not lookbehind "(?&lt;=" or "(?&lt;!";
+   * else -1
+   */
+
+  private static int namedGroupStart(String regex, int i) {
+    if (i < regex.length() && regex.charAt(i) == 'P') {
+      i++;
+    }
+    if (i + 1 < regex.length() && regex.charAt(i) == '<' &&
+        regex.charAt(i + 1) != '=' && regex.charAt(i + 1) != '!') {
+      return i + 1;
+    }
+    return -1;
+  }
+
+  /**
+   * @return true if the flags at the given position turn on comment
+   * mode, in which a '#' starts a comment that may hold any text
+   */
+
+  private static boolean isCommentFlag(String regex, int i) {
+    for (; i < regex.length(); i++) {
+      final char c = regex.charAt(i);
+      if (c == 'x') {
+        return true;
+      }
+      if (! Character.isLetter(c) && c != '-') {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Matcher for a regex rewritten by {@link #withCaptures(String, boolean[])},
+   * presented with the group numbers of the original regex. Groups that
+   * no longer capture report -1 and null, as for a group that did not
+   * take part in the match.
+   */
+
+  public static class RemappedMatcher extends LineMatcher {
+    private final LineMatcher matcher;
+    private final int[] groupMap;
+
+    /**
+     * @param keep the groups kept by the rewrite
+     */
+
+    public RemappedMatcher(LineMatcher matcher, boolean[] keep) {
+      this.matcher = matcher;
+      groupMap = new int[keep.length + 1];
+      int next = 1;
+      for (int i = 0; i < keep.length; i++) {
+        groupMap[i + 1] = keep[i] ? next++ : -1;
+      }
+    }
+
+    @Override
+    public LineMatcher reset(CharSequence input) {
+      matcher.reset(input);
+      return this;
+    }
+
+    @Override
+    public boolean matches() { return matcher.matches(); }
+
+    @Override
+    public int groupCount() { return groupMap.length - 1; }
+
+    @Override
+    public int start(int group) {
+      final int mapped = groupMap[group];
+      return mapped == -1 ? -1 : matcher.start(mapped);
+    }
+
+    @Override
+    public int end(int group) {
+      final int mapped = groupMap[group];
+      return mapped == -1 ? -1 : matcher.end(mapped);
+    }
+
+    @Override
+    public String group(int group) {
+      final int mapped = groupMap[group];
+      return mapped == -1 ? null : matcher.group(mapped);
+    }
+
+    @Override
+    public String engine() { return matcher.engine(); }
+  }
+
+  public static class JavaMatcher extends LineMatcher {
+    private final Matcher matcher;
+
+    public JavaMatcher(Pattern pattern) {
+      matcher = pattern.matcher("");
+    }
+
+    @Override
+    public LineMatcher reset(CharSequence input) {
+      matcher.reset(input);
+      return this;
+    }
+
+    @Override
+    public boolean matches() { return matcher.matches(); }
+
+    @Override
+    public int groupCount() { return matcher.groupCount(); }
+
+    @Override
+    public int start(int group) { return matcher.start(group); }
+
+    @Override
+    public int end(int group) { return matcher.end(group); }
+
+    @Override
+    public String group(int group) { return matcher.group(group); }
+
+    @Override
+    public String engine() { return JAVA_ENGINE; }
+  }
+
+  public static class Re2jMatcher extends LineMatcher {
+    private final com.google.re2j.Matcher matcher;
+
+    public Re2jMatcher(com.google.re2j.Pattern pattern) {
+      matcher = pattern.matcher("");
+    }
+
+    @Override
+    public LineMatcher reset(CharSequence input) {
+      matcher.reset(input);
+      return this;
+    }
+
+    @Override
+    public boolean matches() { return matcher.matches(); }
+
+    @Override
+    public int groupCount() { return matcher.groupCount(); }
+
+    @Override
+    public int start(int group) { return matcher.start(group); }
+
+    @Override
+    public int end(int group) { return matcher.end(group); }
+
+    @Override
+    public String group(int group) { return matcher.group(group); }
+
+    @Override
+    public String engine() { return RE2J_ENGINE; }
+  }
+}
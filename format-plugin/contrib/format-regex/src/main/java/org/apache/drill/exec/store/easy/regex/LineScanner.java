@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits an input stream into lines without decoding the bytes.
+ * Reads chunks into a single reusable buffer and finds line ends
+ * by scanning for the terminator bytes. After each call to
+ * {@link #next()}, the current line is the byte range
+ * <tt>[lineStart(), lineEnd())</tt> of {@link #buffer()}, not
+ * including the terminator.
+ * <p>
+ * Like <tt>BufferedReader</tt>, a line ends with "\n", "\r\n" or
+ * a lone "\r". The buffer grows to hold the longest line seen, but
+ * is otherwise never reallocated.
+ * <p>
+ * The scanner also notes whether the line is pure ASCII, that is, has
+ * no byte of 0x80 or above, so callers can treat such lines as text
+ * without decoding them.
+ * <p>
+ * The scanner counts the bytes it reads from the stream and the time
+ * spent waiting for them, which includes any decompression done by
+ * the stream.
+ */
+
+public class LineScanner {
+
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream in;
+  private byte[] buf;
+
+  // Valid data in the buffer is [bufStart, bufEnd).
+
+  private int bufStart;
+  private int bufEnd;
+  private boolean eof;
+  private int lineStart;
+  private int lineEnd;
+  private int consumed;
+  private boolean ascii = true;
+  private long bytesRead;
+  private long readNanos;
+
+  public LineScanner(InputStream in) {
+    this(in, DEFAULT_BUFFER_SIZE);
+  }
+
+  public LineScanner(InputStream in, int bufferSize) {
+    this.in = in;
+    this.buf = new byte[Math.max(bufferSize, 16)];
+  }
+
+  /**
+   * Advance to the next line.
+   *
+   * @return the number of bytes consumed, including the line
+   * terminator, or 0 at the end of the input
+   */
+
+  public int next() throws IOException {
+    int scan = bufStart;
+
+    // OR of the line's bytes: negative if any has the high bit set.
+
+    int high = 0;
+    for (;;) {
+      for (; scan < bufEnd; scan++) {
+        final byte b = buf[scan];
+        if (b == '\n') {
+          return endLine(scan, scan + 1, high);
+        }
+        if (b == '\r') {
+
+          // Need one byte of look-ahead to tell "\r\n" from "\r".
+
+          if (scan + 1 == bufEnd && ! eof) {
+            scan = fill(scan);
+          }
+          if (scan + 1 == bufEnd) {
+            return endLine(scan, scan + 1, high);
+          }
+          return endLine(scan, buf[scan + 1] == '\n' ? scan + 2 : scan + 1, high);
+        }
+        high |= b;
+      }
+      if (eof) {
+        if (bufStart == bufEnd) {
+          lineStart = lineEnd = bufStart;
+          consumed = 0;
+          ascii = true;
+          return 0;
+        }
+
+        // Last line has no terminator.
+
+        return endLine(bufEnd, bufEnd, high);
+      }
+      scan = fill(scan);
+    }
+  }
+
+  private int endLine(int end, int next, int high) {
+    lineStart = bufStart;
+    ascii = high >= 0;
+    lineEnd = end;
+    consumed = next - bufStart;
+    bufStart = next;
+    return consumed;
+  }
+
+  /**
+   * Read more data, first moving the partial line to the start of
+   * the buffer, growing the buffer if the partial line fills it.
+   *
+   * @param scan the scan position within the current buffer
+   * @return the same scan position adjusted for the moved data
+   */
+
+  private int fill(int scan) throws IOException {
+    final int partial = bufEnd - bufStart;
+    if (bufStart > 0) {
+      System.arraycopy(buf, bufStart, buf, 0, partial);
+    } else if (partial == buf.length) {
+      final byte[] newBuf = new byte[buf.length * 2];
+      System.arraycopy(buf, 0, newBuf, 0, partial);
+      buf = newBuf;
+    }
+    scan -= bufStart;
+    bufStart = 0;
+    bufEnd = partial;
+    final long startNanos = System.nanoTime();
+    while (bufEnd < buf.length) {
+      final int n = in.read(buf, bufEnd, buf.length - bufEnd);
+      if (n == -1) {
+        eof = true;
+        break;
+      }
+      if (n > 0) {
+        bufEnd += n;
+        bytesRead += n;
+        break;
+      }
+    }
+    readNanos += System.nanoTime() - startNanos;
+    return scan;
+  }
+
+  /**
+   * Discard any buffered data, after the caller has moved the
+   * underlying stream to a new position.
+   */
+
+  public void reset() {
+    bufStart = bufEnd = 0;
+    lineStart = lineEnd = 0;
+    consumed = 0;
+    ascii = true;
+    eof = false;
+  }
+
+  public byte[] buffer() { return buf; }
+  public int lineStart() { return lineStart; }
+  public int lineEnd() { return lineEnd; }
+  public int lineLength() { return lineEnd - lineStart; }
+  public int consumed() { return consumed; }
+
+  /**
+   * @return true if the current line has no byte of 0x80 or above
+   */
+
+  public boolean isAscii() { return ascii; }
+
+  public long bytesRead() { return bytesRead; }
+  public long readNanos() { return readNanos; }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,504 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cheap test that rejects lines which cannot match a regex because
+ * they lack a literal substring that every match must contain. For
+ * example, every match of <tt>(\d+) \[main\] (\w+) - (.*)</tt> contains
+ * <tt>" [main] "</tt> and <tt>" - "</tt>.
+ * <p>
+ * The literals are found by a conservative scan of the pattern: only
+ * literal runs in the top-level concatenation, or inside groups that
+ * are themselves required, are used. Alternation, embedded flags and
+ * quoting stop the analysis for the enclosing level (or for the whole
+ * pattern), which just means a weaker (or no) prefilter, never a wrong
+ * one.
+ * <p>
+ * For a {@link PatternSet}, whose combined regex is an alternation, each
+ * pattern has its own literals, and a line may match if it has those of
+ * any one pattern.
+ * <p>
+ * Each literal is searched for in the raw line bytes using the
+ * Boyer-Moore-Horspool algorithm. Since a literal is a substring of the
+ * decoded line exactly when its UTF-8 bytes are a substring of the line
+ * bytes, the test works both for byte-level and decoded matching.
+ */
+
+public class LiteralPrefilter {
+
+  /**
+   * Literals shorter than this are too common to be worth checking.
+   */
+
+  private static final int MIN_LITERAL_LENGTH = 2;
+
+  /**
+   * Check at most this many literals, longest (most selective) first.
+   */
+
+  private static final int MAX_LITERALS = 4;
+
+  private static class Needle {
+    private final byte[] bytes;
+    private final int[] skip = new int[256];
+
+    public Needle(byte[] bytes) {
+      this.bytes = bytes;
+      final int last = bytes.length - 1;
+      for (int i = 0; i < skip.length; i++) {
+        skip[i] = bytes.length;
+      }
+      for (int i = 0; i < last; i++) {
+        skip[bytes[i] & 0xFF] = last - i;
+      }
+    }
+
+    public boolean foundIn(byte[] buf, int start, int end) {
+      final int last = bytes.length - 1;
+      final byte lastByte = bytes[last];
+      int pos = start;
+      while (pos + last < end) {
+        final byte b = buf[pos + last];
+        if (b == lastByte) {
+          int i = last - 1;
+          while (i >= 0 && buf[pos + i] == bytes[i]) {
+            i--;
+          }
+          if (i < 0) {
+            return true;
+          }
+        }
+        pos += skip[b & 0xFF];
+      }
+      return false;
+    }
+  }
+
+  private final List<String> literals;
+  private final Needle[] needles;
+
+  // If not null, a line must also pass one of these.
+
+  private final LiteralPrefilter[] alternatives;
+
+  private LiteralPrefilter(List<String> literals, LiteralPrefilter[] alternatives) {
+    this.literals = literals;
+    this.alternatives = alternatives;
+    needles = new Needle[literals.size()];
+    for (int i = 0; i < needles.length; i++) {
+      needles[i] = new Needle(literals.get(i).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Build a prefilter for the given regex.
+   *
+   * @return the prefilter, or null if the pattern has no usable
+   * required literals
+   */
+
+  public static LiteralPrefilter build(String regex) {
+    return build(regex, Collections.<String>emptyList());
+  }
+
+  /**
+   * Build a prefilter for the given regex, adding literals known by
+   * other means (such as from a pushed-down filter) to be required in
+   * every accepted line.
+   *
+   * @return the prefilter, or null if there are no usable literals
+   */
+
+  public static LiteralPrefilter build(String regex, List<String> extraLiterals) {
+    final List<String> literals = new ArrayList<>(extraLiterals);
+    final List<String> regexLiterals = requiredLiterals(regex);
+    if (regexLiterals != null) {
+      literals.addAll(regexLiterals);
+    }
+    final List<String> usable = usable(literals);
+    return usable.isEmpty() ? null : new LiteralPrefilter(usable, null);
+  }
+
+  /**
+   * Build a prefilter for an alternation of regexes: a line passes if
+   * it has the literals of any one of them, and the extra literals.
+   * If any regex has no usable literals, only the extra literals are
+   * checked.
+   *
+   * @return the prefilter, or null if there are no usable literals
+   */
+
+  public static LiteralPrefilter buildAny(List<String> regexes, List<String> extraLiterals) {
+    LiteralPrefilter[] alternatives = new LiteralPrefilter[regexes.size()];
+    for (int i = 0; i < alternatives.length; i++) {
+      alternatives[i] = build(regexes.get(i));
+      if (alternatives[i] == null) {
+        alternatives = null;
+        break;
+      }
+    }
+    final List<String> usable = usable(extraLiterals);
+    if (usable.isEmpty() && alternatives == null) {
+      return null;
+    }
+    return new LiteralPrefilter(usable, alternatives);
+  }
+
+  /**
+   * @return the distinct literals long enough to check, longest (most
+   * selective) first, at most {@link #MAX_LITERALS}
+   */
+
+  private static List<String> usable(List<String> literals) {
+    final List<String> usable = new ArrayList<>();
+    for (final String literal : literals) {
+      if (literal.length() >= MIN_LITERAL_LENGTH && ! usable.contains(literal)) {
+        usable.add(literal);
+      }
+    }
+    Collections.sort(usable, new Comparator<String>() {
+      @Override
+      public int compare(String a, String b) {
+        return b.length() - a.length();
+      }
+    });
+    return usable.size() > MAX_LITERALS
+        ? new ArrayList<>(usable.subList(0, MAX_LITERALS)) : usable;
+  }
+
+  public List<String> literals() { return literals; }
+
+  /**
+   * @return false if the line in <tt>[start, end)</tt> certainly does
+   * not match the pattern, true if it may match
+   */
+
+  public boolean mayMatch(byte[] buf, int start, int end) {
+    for (int i = 0; i < needles.length; i++) {
+      if (! needles[i].foundIn(buf, start, end)) {
+        return false;
+      }
+    }
+    if (alternatives == null) {
+      return true;
+    }
+    for (int i = 0; i < alternatives.length; i++) {
+      if (alternatives[i].mayMatch(buf, start, end)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    if (alternatives == null) {
+      return literals.toString();
+    }
+    final StringBuilder buf = new StringBuilder();
+    if (! literals.isEmpty()) {
+      buf.append(literals).append(" and ");
+    }
+    buf.append("one of ");
+    for (int i = 0; i < alternatives.length; i++) {
+      buf.append(i == 0 ? "" : " or ").append(alternatives[i]);
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Find the literal strings that every match of the regex must contain.
+   *
+   * @return the (possibly empty) list of literals, or null if the
+   * pattern uses a construct (such as flags) that makes literal
+   * matching unsafe
+   */
+
+  public static List<String> requiredLiterals(String regex) {
+    final Parser parser = new Parser(regex);
+    try {
+      final List<String> literals = parser.parseSequence();
+      return parser.pos < regex.length() ? null : literals;
+    } catch (final UnsupportedConstruct e) {
+      return null;
+    }
+  }
+
+  /**
+   * Thrown by the {@link Parser} for a construct it does not handle.
+   */
+
+  @SuppressWarnings("serial")
+  private static class UnsupportedConstruct extends Exception {
+    public UnsupportedConstruct() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Minimal recursive-descent walk over Java regex syntax. Throws
+   * {@link UnsupportedConstruct} for constructs that would change how
+   * literals match (flags, quoting) or that it cannot parse.
+   */
+
+  private static class Parser {
+    private final String regex;
+    private int pos;
+    private boolean lastWasRepeat;
+
+    public Parser(String regex) {
+      this.regex = regex;
+    }
+
+    /**
+     * Parse a sequence up to the end of the pattern or the closing
+     * parenthesis of the current group (not consumed).
+     */
+
+    public List<String> parseSequence() throws UnsupportedConstruct {
+      final List<String> literals = new ArrayList<>();
+      final StringBuilder run = new StringBuilder();
+      boolean alternation = false;
+      while (pos < regex.length()) {
+        final char c = regex.charAt(pos);
+        if (c == ')') {
+          break;
+        }
+        if (c == '|') {
+          pos++;
+          alternation = true;
+          flush(run, literals);
+          continue;
+        }
+        int literal = -1;
+        List<String> groupLiterals = null;
+        if (c == '\\') {
+          literal = parseEscape();
+        } else if (c == '[') {
+          skipClass();
+        } else if (c == '(') {
+          groupLiterals = parseGroup();
+        } else if (c == '.' || c == '^' || c == '$') {
+          pos++;
+        } else {
+          literal = c;
+          pos++;
+        }
+
+        // Apply any quantifier to the atom just parsed.
+
+        final int minRepeat = parseQuantifier();
+        if (literal != -1 && minRepeat > 0) {
+          run.append((char) literal);
+          if (minRepeat == 1 && ! lastWasRepeat) {
+            continue;
+          }
+        }
+        flush(run, literals);
+        if (groupLiterals != null && minRepeat > 0) {
+          literals.addAll(groupLiterals);
+        }
+      }
+      flush(run, literals);
+
+      // With alternation, no literal is required by every branch.
+
+      return alternation ? new ArrayList<String>() : literals;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+      if (run.length() > 0) {
+        literals.add(run.toString());
+        run.setLength(0);
+      }
+    }
+
+    /**
+     * Parse an optional quantifier.
+     *
+     * @return the minimum repeat count of the preceding atom (1 if
+     * no quantifier.) Sets {@link #lastWasRepeat} if the atom may
+     * repeat, which ends the current literal run.
+     */
+
+    private int parseQuantifier() throws UnsupportedConstruct {
+      lastWasRepeat = false;
+      if (pos >= regex.length()) {
+        return 1;
+      }
+      int min;
+      final char c = regex.charAt(pos);
+      if (c == '?' || c == '*') {
+        min = 0;
+        pos++;
+      } else if (c == '+') {
+        min = 1;
+        lastWasRepeat = true;
+        pos++;
+      } else if (c == '{') {
+        final int close = regex.indexOf('}', pos);
+        if (close == -1) {
+          throw new UnsupportedConstruct();
+        }
+        final String body = regex.substring(pos + 1, close);
+        final int comma = body.indexOf(',');
+        try {
+          min = Integer.parseInt((comma == -1 ? body : body.substring(0, comma)).trim());
+        } catch (final NumberFormatException e) {
+          throw new UnsupportedConstruct();
+        }
+        lastWasRepeat = comma != -1 || min != 1;
+        min = Math.min(min, 1);
+        pos = close + 1;
+      } else {
+        return 1;
+      }
+
+      // Lazy or possessive modifier
+
+      if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+        pos++;
+      }
+      return min;
+    }
+
+    /**
+     * Parse an escape sequence.
+     *
+     * @return the literal character, or -1 if the escape is a class,
+     * assertion or back-reference
+     */
+
+    private int parseEscape() throws UnsupportedConstruct {
+      pos++;
+      if (pos >= regex.length()) {
+        throw new UnsupportedConstruct();
+      }
+      final char c = regex.charAt(pos++);
+      if (! Character.isLetterOrDigit(c)) {
+        return c;
+      }
+      switch (c) {
+      case 't': return '\t';
+      case 'n': return '\n';
+      case 'r': return '\r';
+      case 'f': return '\f';
+      case 'Q':
+        throw new UnsupportedConstruct();
+      case 'p':
+      case 'P':
+      case 'x':
+      case 'k':
+        if (pos < regex.length() && (regex.charAt(pos) == '{' || regex.charAt(pos) == '<')) {
+          final int close = regex.indexOf(regex.charAt(pos) == '{' ? '}' : '>', pos);
+          if (close == -1) {
+            throw new UnsupportedConstruct();
+          }
+          pos = close + 1;
+        } else {
+          pos = Math.min(pos + (c == 'x' ? 2 : 1), regex.length());
+        }
+        return -1;
+      case 'u':
+        pos = Math.min(pos + 4, regex.length());
+        return -1;
+      case 'c':
+        pos = Math.min(pos + 1, regex.length());
+        return -1;
+      default:
+
+        // Classes (\d, \w, ...), assertions (\b, \A, ...),
+        // back-references and octal escapes.
+
+        while (Character.isDigit(c) && pos < regex.length() && Character.isDigit(regex.charAt(pos))) {
+          pos++;
+        }
+        return -1;
+      }
+    }
+
+    private void skipClass() throws UnsupportedConstruct {
+      pos++;
+      if (pos < regex.length() && regex.charAt(pos) == '^') {
+        pos++;
+      }
+      if (pos < regex.length() && regex.charAt(pos) == ']') {
+        pos++;
+      }
+      int depth = 1;
+      while (pos < regex.length()) {
+        final char c = regex.charAt(pos++);
+        if (c == '\\') {
+          pos++;
+        } else if (c == '[') {
+          depth++;
+        } else if (c == ']' && --depth == 0) {
+          return;
+        }
+      }
+      throw new UnsupportedConstruct();
+    }
+
+    /**
+     * Parse a group.
+     *
+     * @return the literals required by the group, or null if the group
+     * is an assertion that consumes no input
+     */
+
+    private List<String> parseGroup() throws UnsupportedConstruct {
+      pos++;
+      boolean assertion = false;
+      if (regex.startsWith("?", pos)) {
+        if (regex.startsWith("?:", pos) || regex.startsWith("?>", pos)) {
+          pos += 2;
+        } else if (regex.startsWith("?=", pos) || regex.startsWith("?!", pos)) {
+          pos += 2;
+          assertion = true;
+        } else if (regex.startsWith("?<=", pos) || regex.startsWith("?<!", pos)) {
+          pos += 3;
+          assertion = true;
+        } else if (regex.startsWith("?<", pos)) {
+          final int close = regex.indexOf('>', pos);
+          if (close == -1) {
+            throw new UnsupportedConstruct();
+          }
+          pos = close + 1;
+        } else {
+
+          // Embedded flags such as (?i) or (?x) change literal matching.
+
+          throw new UnsupportedConstruct();
+        }
+      }
+      final List<String> literals = parseSequence();
+      if (pos >= regex.length() || regex.charAt(pos) != ')') {
+        throw new UnsupportedConstruct();
+      }
+      pos++;
+      return assertion ? null : literals;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.hadoop.fs.Seekable;
+
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Reads a local file through memory-mapped windows.
+ * <p>
+ * The Hadoop local file system reads through a buffered stream and a
+ * checksum layer, each with its own copy of the data, and makes a system
+ * call per buffer. Mapping the file instead lets each read be a single
+ * bulk copy from the page cache into the caller's buffer.
+ * <p>
+ * The file is mapped a window at a time, so that a large file does not
+ * need one huge mapping and a split maps only the part it reads. Only
+ * one window is mapped at a time: each is unmapped when the stream moves
+ * past it and on close, rather than when the garbage collector gets to
+ * it, so a scan over many files does not hold their mappings. (Where the
+ * JVM does not allow explicit unmapping, the collector still does it.)
+ * <p>
+ * The size is fixed when the stream opens: data appended later is not
+ * seen. A file truncated while mapped can fault on access, so this
+ * stream is only for files that do not change under the reader, and the
+ * regex format uses it only when the format config asks for it.
+ */
+
+public class MappedInputStream extends InputStream implements Seekable {
+
+  public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final FileChannel channel;
+  private final long size;
+  private final int windowSize;
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long pos;
+  private final byte[] one = new byte[1];
+
+  public MappedInputStream(Path file) throws IOException {
+    this(file, DEFAULT_WINDOW_SIZE);
+  }
+
+  public MappedInputStream(Path file, int windowSize) throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      size = channel.size();
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+    this.windowSize = windowSize;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (! channel.isOpen()) {
+      throw new IOException("Stream closed");
+    }
+    if (pos >= size) {
+      return -1;
+    }
+    if (window == null || pos < windowStart || pos >= windowStart + window.limit()) {
+      unmap();
+      windowStart = pos;
+      window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+          Math.min(windowSize, size - windowStart));
+    }
+    final int offset = (int) (pos - windowStart);
+    final int n = Math.min(len, window.limit() - offset);
+    window.position(offset);
+    window.get(buf, off, n);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) {
+    final long skipped = Math.max(0, Math.min(n, size - pos));
+    pos += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return (int) Math.min(Integer.MAX_VALUE, size - pos);
+  }
+
+  @Override
+  public void seek(long newPos) throws IOException {
+    if (newPos < 0 || newPos > size) {
+      throw new EOFException("Seek to " + newPos + " outside file of size " + size);
+    }
+    pos = newPos;
+  }
+
+  @Override
+  public long getPos() { return pos; }
+
+  @Override
+  public boolean seekToNewSource(long targetPos) { return false; }
+
+  @Override
+  public void close() throws IOException {
+    unmap();
+    channel.close();
+  }
+
+  /**
+   * Release the current window. Nothing may read it afterwards, as the
+   * memory is no longer mapped.
+   */
+
+  private void unmap() {
+    if (window != null) {
+      final MappedByteBuffer old = window;
+      window = null;
+      PlatformDependent.freeDirectBuffer(old);
+    }
+  }
+}
@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Runs line reading and matching for one reader on other threads, in
+ * three stages:
+ * <ol>
+ * <li>A read-ahead task splits the input into lines and packs them into
+ * {@link Chunk}s of about {@link #CHUNK_BYTES}.</li>
+ * <li>Each chunk is matched by a task on the worker pool. At most
+ * <tt>threads</tt> chunks are matched at once, each with its own
+ * {@link LineMatcher}. A task records the group offsets of the rows
+ * that match and pass the filter. As in the reader, pure ASCII lines are
+ * matched as bytes and others are decoded; the groups of a decoded line
+ * are encoded again and appended to the chunk's data.</li>
+ * <li>The reader takes the chunks in file order from {@link #take()} and
+ * writes their rows to the vectors on the fragment thread.</li>
+ * </ol>
+ * The chunk queue holds at most <tt>queueDepth</tt> chunks, which bounds
+ * both the read-ahead and the memory in use.
+ * <p>
+ * The read-ahead task follows the same split convention as the reader:
+ * it stops after the line that crosses the split end.
+ */
+
+public class MatchPipeline {
+
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(MatchPipeline.class);
+
+  public static final int CHUNK_BYTES = 1024 * 1024;
+
+  private static final int INITIAL_LINES = 8 * 1024;
+
+  /**
+   * A run of consecutive lines, and after matching, the rows found
+   * in them. Row r's group g (0-based) is at
+   * <tt>data[groupStarts[r * groupCount + g], groupEnds[...])</tt>,
+   * with a start of -1 for a group that did not participate. The data
+   * holds the lines, then the groups of any decoded lines.
+   */
+
+  public static class Chunk {
+    private byte[] data = new byte[CHUNK_BYTES];
+    private int dataLength;
+    private int[] lineStarts = new int[INITIAL_LINES];
+    private int[] lineEnds = new int[INITIAL_LINES];
+    private boolean[] lineAscii = new boolean[INITIAL_LINES];
+    private int lineCount;
+
+    private int rowCount;
+    private int[] groupStarts;
+    private int[] groupEnds;
+    private int linesPrefiltered;
+    private int linesMatched;
+    private int rowsFiltered;
+    private long matchNanos;
+
+    private boolean isFull() {
+      return dataLength >= CHUNK_BYTES;
+    }
+
+    private void addLine(byte[] buf, int start, int end, boolean ascii) {
+      if (lineCount == lineStarts.length) {
+        lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+        lineAscii = Arrays.copyOf(lineAscii, lineCount * 2);
+      }
+      lineAscii[lineCount] = ascii;
+      lineStarts[lineCount] = append(buf, start, end);
+      lineEnds[lineCount++] = dataLength;
+    }
+
+    /**
+     * @return the offset in the data of the appended bytes
+     */
+
+    private int append(byte[] buf, int start, int end) {
+      final int len = end - start;
+      if (dataLength + len > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + len));
+      }
+      System.arraycopy(buf, start, data, dataLength, len);
+      final int offset = dataLength;
+      dataLength += len;
+      return offset;
+    }
+
+    public byte[] data() { return data; }
+    public int lineCount() { return lineCount; }
+    public int rowCount() { return rowCount; }
+    public int groupStart(int index) { return groupStarts[index]; }
+    public int groupEnd(int index) { return groupEnds[index]; }
+    public int linesPrefiltered() { return linesPrefiltered; }
+    public int linesMatched() { return linesMatched; }
+    public int rowsFiltered() { return rowsFiltered; }
+    public long matchNanos() { return matchNanos; }
+  }
+
+  private final LineScanner scanner;
+  private final long splitEnd;
+  private final BlockingQueue<LineMatcher> matchers;
+  private final LiteralPrefilter prefilter;
+  private final RegexFilter.Evaluator filter;
+  private final int groupCount;
+  private final boolean captureGroups;
+  private final ExecutorService readExecutor;
+  private final ExecutorService matchExecutor;
+  private final BlockingQueue<Future<Chunk>> chunks;
+  private final AtomicBoolean started = new AtomicBoolean();
+  private final CountDownLatch readDone = new CountDownLatch(1);
+  private Future<?> readFuture;
+  private volatile boolean closed;
+  private long pos;
+
+  /**
+   * @param scanner line scanner, positioned at the first line of the split
+   * @param pos file offset of the scanner's position
+   * @param splitEnd offset of the end of the split
+   * @param matchers one matcher per worker
+   * @param groupCount number of groups in the original regex
+   * @param captureGroups false if only row counts are needed, so the
+   * matchers may be capture-free
+   */
+
+  public MatchPipeline(LineScanner scanner, long pos, long splitEnd,
+      LineMatcher[] matchers, LiteralPrefilter prefilter,
+      RegexFilter.Evaluator filter, int groupCount, boolean captureGroups,
+      ExecutorService readExecutor, ExecutorService matchExecutor,
+      int queueDepth) {
+    this.scanner = scanner;
+    this.pos = pos;
+    this.splitEnd = splitEnd;
+    this.matchers = new ArrayBlockingQueue<>(matchers.length, false, Arrays.asList(matchers));
+    this.prefilter = prefilter;
+    this.filter = filter;
+    this.groupCount = groupCount;
+    this.captureGroups = captureGroups;
+    this.readExecutor = readExecutor;
+    this.matchExecutor = matchExecutor;
+    chunks = new ArrayBlockingQueue<>(queueDepth);
+  }
+
+  public void start() {
+    readFuture = readExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        if (started.compareAndSet(false, true)) {
+          try {
+            readAhead();
+          } finally {
+            readDone.countDown();
+          }
+        }
+      }
+    });
+  }
+
+  private void readAhead() {
+    try {
+      Chunk chunk = new Chunk();
+      while (! closed) {
+
+        // A line that starts exactly at the split end belongs to this
+        // split, as in the reader.
+
+        final int consumed = pos > splitEnd ? 0 : scanner.next();
+        if (consumed == 0) {
+          break;
+        }
+        pos += consumed;
+        chunk.addLine(scanner.buffer(), scanner.lineStart(), scanner.lineEnd(), scanner.isAscii());
+        if (chunk.isFull()) {
+          submit(chunk);
+          chunk = new Chunk();
+        }
+      }
+      if (chunk.lineCount > 0) {
+        submit(chunk);
+      }
+      chunks.put(Futures.<Chunk>immediateFuture(null));
+    } catch (final InterruptedException e) {
+
+      // Closed by the reader.
+
+    } catch (final IOException | RuntimeException e) {
+      try {
+        chunks.put(Futures.<Chunk>immediateFailedFuture(e));
+      } catch (final InterruptedException e2) {
+        // Closed by the reader.
+      }
+    }
+  }
+
+  /**
+   * Hand a chunk to a worker once one is free. The future goes on the
+   * queue in file order, whatever order the workers finish in.
+   */
+
+  private void submit(final Chunk chunk) throws InterruptedException {
+    final LineMatcher matcher = matchers.take();
+    final Future<Chunk> future;
+    try {
+      future = matchExecutor.submit(new Callable<Chunk>() {
+        @Override
+        public Chunk call() {
+          try {
+            match(chunk, matcher);
+            return chunk;
+          } finally {
+            matchers.add(matcher);
+          }
+        }
+      });
+    } catch (final RuntimeException e) {
+      matchers.add(matcher);
+      throw e;
+    }
+    chunks.put(future);
+  }
+
+  private void match(Chunk chunk, LineMatcher matcher) {
+    final long startNanos = System.nanoTime();
+    final ByteCharSequence line = new ByteCharSequence();
+    final int width = captureGroups ? groupCount : 0;
+    chunk.groupStarts = new int[Math.max(1, chunk.lineCount * width)];
+    chunk.groupEnds = new int[chunk.groupStarts.length];
+    int rows = 0;
+    for (int i = 0; i < chunk.lineCount; i++) {
+
+      // Appending decoded groups may move the data.
+
+      final byte[] data = chunk.data;
+      final int start = chunk.lineStarts[i];
+      final int end = chunk.lineEnds[i];
+      final boolean ascii = chunk.lineAscii[i];
+      if (prefilter != null && ! prefilter.mayMatch(data, start, end)) {
+        chunk.linesPrefiltered++;
+        continue;
+      }
+      if (ascii) {
+        matcher.reset(line.reset(data, start, end - start));
+      } else {
+        matcher.reset(new String(data, start, end - start, StandardCharsets.UTF_8));
+      }
+      if (! matcher.matches()) {
+        continue;
+      }
+      chunk.linesMatched++;
+      if (filter != null && ! passesFilter(matcher, data, start, ascii)) {
+        chunk.rowsFiltered++;
+        continue;
+      }
+      final int base = rows * width;
+      for (int g = 0; g < width; g++) {
+        final int groupStart = matcher.start(g + 1);
+        if (groupStart == -1) {
+          chunk.groupStarts[base + g] = -1;
+          chunk.groupEnds[base + g] = -1;
+        } else if (ascii) {
+          chunk.groupStarts[base + g] = start + groupStart;
+          chunk.groupEnds[base + g] = start + matcher.end(g + 1);
+        } else {
+          final byte[] value = matcher.group(g + 1).getBytes(StandardCharsets.UTF_8);
+          chunk.groupStarts[base + g] = chunk.append(value, 0, value.length);
+          chunk.groupEnds[base + g] = chunk.dataLength;
+        }
+      }
+      rows++;
+    }
+    chunk.rowCount = rows;
+
+    // The line offsets are no longer needed.
+
+    chunk.lineStarts = null;
+    chunk.lineEnds = null;
+    chunk.lineAscii = null;
+    chunk.matchNanos = System.nanoTime() - startNanos;
+  }
+
+  private boolean passesFilter(LineMatcher m, byte[] data, int lineStart, boolean ascii) {
+    for (int i = 0; i < filter.size(); i++) {
+      final int group = filter.group(i);
+      final int start = group == 0 ? -1 : m.start(group);
+      boolean pass;
+      if (start == -1) {
+        pass = filter.test(i, null, 0, 0);
+      } else if (ascii) {
+        pass = filter.test(i, data, lineStart + start, lineStart + m.end(group));
+      } else {
+        final byte[] value = m.group(group).getBytes(StandardCharsets.UTF_8);
+        pass = filter.test(i, value, 0, value.length);
+      }
+      if (! pass) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Return the next matched chunk in file order, waiting for it
+   * if necessary.
+   *
+   * @return the chunk, or null at the end of the split
+   * @throws IOException if reading failed
+   * @throws InterruptedException if the fragment thread is interrupted
+   */
+
+  public Chunk take() throws IOException, InterruptedException {
+    final Future<Chunk> future = chunks.take();
+    try {
+      final Chunk chunk = future.get();
+      if (chunk == null) {
+
+        // Leave the end marker for any later call.
+
+        chunks.put(future);
+      }
+      return chunk;
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Stop the read-ahead task and wait for it to finish, so that the
+   * caller can then close the scanner. Matching tasks still running
+   * touch only their chunks, so are left to finish.
+   */
+
+  public void close() {
+    closed = true;
+    if (readFuture == null || started.compareAndSet(false, true)) {
+
+      // The read-ahead task never ran.
+
+      return;
+    }
+    readFuture.cancel(true);
+    chunks.clear();
+    try {
+      readDone.await();
+    } catch (final InterruptedException e) {
+      logger.warn("Interrupted while waiting for regex read-ahead to stop");
+      Thread.currentThread().interrupt();
+    }
+  }
+}
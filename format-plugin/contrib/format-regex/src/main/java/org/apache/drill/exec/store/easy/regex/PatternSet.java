@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import org.apache.drill.common.types.TypeProtos.MinorType;
+
+/**
+ * An ordered list of named patterns, for files that mix several line
+ * formats. The list is given as text, one pattern per line:<pre><code>
+ * name | fields | regex
+ * </code></pre>
+ * For example:<pre><code>
+ * access | ip, ts, status:INT | (\S+) - - \[([^\]]+)\] "[^"]*" (\d+) .*
+ * gc | ts, pause:DOUBLE | \[(\S+)\] GC pause ([\d.]+)ms
+ * </code></pre>
+ * The fields use the {@link FieldSpec} syntax. The regex comes last and
+ * runs to the end of the line, so may itself contain "|". Blank lines
+ * are ignored.
+ * <p>
+ * All the patterns are combined into one regex, an alternation of the
+ * patterns in order, so each line is matched once, and belongs to the
+ * first pattern that matches it. Each alternative starts with an empty
+ * marker group, which captures only in the alternative that matched.
+ * <p>
+ * The columns are the union of the fields of all the patterns, in
+ * order of first appearance; a field of the same name in several
+ * patterns is one column, and must have the same type in each. A column
+ * is null in rows of patterns that do not have it. The
+ * {@link #matcher(LineMatcher) matcher} presents the combined regex with
+ * one group per column, then one per marker, so the reader treats it as
+ * a single pattern.
+ * <p>
+ * Since groups are renumbered in the combined regex, patterns may not
+ * use back-references (or comment mode, which hides them).
+ */
+
+public class PatternSet {
+
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PatternSet.class);
+
+  /**
+   * The column holding the name of the pattern that matched each row.
+   */
+
+  public static final String PATTERN_COLUMN = "pattern_name";
+
+  private final List<String> names;
+  private final List<String> regexes;
+  private final List<byte[]> nameBytes;
+  private final List<FieldSpec> fields;
+  private final String regex;
+
+  // For each pattern, the combined group of each column (1-based),
+  // or 0 if the pattern does not have the column.
+
+  private final int[][] groupMap;
+
+  // For each pattern, the combined group of its marker.
+
+  private final int[] markers;
+  private final int combinedGroupCount;
+
+  private PatternSet(List<String> names, List<String> regexes, List<FieldSpec> fields,
+      int[][] groupMap, int[] markers, int combinedGroupCount, String regex) {
+    this.names = names;
+    this.regexes = regexes;
+    this.fields = fields;
+    this.groupMap = groupMap;
+    this.markers = markers;
+    this.combinedGroupCount = combinedGroupCount;
+    this.regex = regex;
+    nameBytes = new ArrayList<>();
+    for (final String name : names) {
+      nameBytes.add(name.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Parse the pattern list.
+   *
+   * @throws IllegalArgumentException if an entry is malformed, a name
+   * repeats, a regex does not compile or uses back-references, or a
+   * field has different types in different patterns
+   */
+
+  public static PatternSet parse(String text) {
+    final List<String> names = new ArrayList<>();
+    final List<String> regexes = new ArrayList<>();
+    final List<List<FieldSpec>> patternFields = new ArrayList<>();
+    final List<Integer> groupCounts = new ArrayList<>();
+    for (final String entry : text.split("\r?\n|\r")) {
+      if (entry.trim().isEmpty()) {
+        continue;
+      }
+      final int nameSep = entry.indexOf('|');
+      final int fieldSep = nameSep == -1 ? -1 : entry.indexOf('|', nameSep + 1);
+      if (fieldSep == -1) {
+        throw new IllegalArgumentException(
+            "Expected \"name | fields | regex\", found: " + entry.trim());
+      }
+      final String name = entry.substring(0, nameSep).trim();
+      final String regex = entry.substring(fieldSep + 1).trim();
+      if (name.isEmpty() || regex.isEmpty()) {
+        throw new IllegalArgumentException(
+            "Pattern needs a name and a regex: " + entry.trim());
+      }
+      for (final String other : names) {
+        if (other.equalsIgnoreCase(name)) {
+          throw new IllegalArgumentException("Duplicate pattern name: " + name);
+        }
+      }
+      final int groupCount = Pattern.compile(regex).matcher("").groupCount();
+      final boolean[] keepAll = new boolean[groupCount];
+      Arrays.fill(keepAll, true);
+      if (LineMatcher.withCaptures(regex, keepAll) == null) {
+        throw new IllegalArgumentException(String.format(
+            "Pattern %s: patterns cannot use back-references or comment mode", name));
+      }
+      names.add(name);
+      regexes.add(regex);
+      patternFields.add(FieldSpec.parse(entry.substring(nameSep + 1, fieldSep)));
+      groupCounts.add(groupCount);
+    }
+    if (names.isEmpty()) {
+      throw new IllegalArgumentException("No patterns given");
+    }
+
+    // Union of the fields, and where each pattern's groups land in
+    // the combined regex: its marker, then its own groups.
+
+    final List<FieldSpec> fields = new ArrayList<>();
+    final int[][] groupMap = new int[names.size()][];
+    final int[] markers = new int[names.size()];
+    final StringBuilder combined = new StringBuilder("(?:");
+    int nextGroup = 1;
+    for (int p = 0; p < names.size(); p++) {
+      final List<FieldSpec> specs = patternFields.get(p);
+      final int groupCount = groupCounts.get(p);
+      if (specs.size() > Math.max(groupCount, 1)) {
+        logger.warn("Pattern {} has more field names than groups, extras ignored. " +
+            "Field count {}, group count {}", names.get(p), specs.size(), groupCount);
+      }
+      if (p > 0) {
+        combined.append('|');
+      }
+      combined.append("()(?:").append(regexes.get(p)).append(')');
+      markers[p] = nextGroup++;
+      final int[] columnGroups = new int[groupCount];
+      for (int g = 0; g < groupCount; g++) {
+        FieldSpec spec = g < specs.size() ? specs.get(g) : null;
+        if (spec == null) {
+          spec = new FieldSpec(String.format("Column$%d", g), MinorType.VARCHAR, null);
+        } else if (spec.name().isEmpty()) {
+          spec = new FieldSpec(String.format("Column$%d", g), spec.type(), spec.format());
+        }
+        columnGroups[g] = addField(fields, spec, names.get(p));
+      }
+      groupMap[p] = new int[fields.size() + 1];
+      for (int g = 0; g < groupCount; g++) {
+        groupMap[p][columnGroups[g] + 1] = nextGroup++;
+      }
+    }
+    combined.append(')');
+
+    // Patterns seen early have maps sized to the fields known then.
+
+    for (int p = 0; p < groupMap.length; p++) {
+      groupMap[p] = Arrays.copyOf(groupMap[p], fields.size() + 1);
+    }
+    return new PatternSet(names, regexes, fields, groupMap, markers,
+        nextGroup - 1, combined.toString());
+  }
+
+  /**
+   * Add a field to the union, or find the column it shares.
+   *
+   * @return the index of the column
+   */
+
+  private static int addField(List<FieldSpec> fields, FieldSpec spec, String pattern) {
+    if (spec.name().equalsIgnoreCase(PATTERN_COLUMN)) {
+      throw new IllegalArgumentException(String.format(
+          "Pattern %s: field name %s is reserved", pattern, PATTERN_COLUMN));
+    }
+    for (int i = 0; i < fields.size(); i++) {
+      final FieldSpec existing = fields.get(i);
+      if (existing.name().equalsIgnoreCase(spec.name())) {
+        if (existing.type() != spec.type() ||
+            ! Objects.equals(existing.format(), spec.format())) {
+          throw new IllegalArgumentException(String.format(
+              "Pattern %s: field %s is %s, but %s in an earlier pattern",
+              pattern, spec.name(), spec, existing));
+        }
+        return i;
+      }
+    }
+    fields.add(spec);
+    return fields.size() - 1;
+  }
+
+  public int size() { return names.size(); }
+  public String name(int pattern) { return names.get(pattern); }
+  public byte[] nameBytes(int pattern) { return nameBytes.get(pattern); }
+  public String regex(int pattern) { return regexes.get(pattern); }
+
+  /**
+   * @return the combined regex
+   */
+
+  public String regex() { return regex; }
+
+  /**
+   * @return the union of the fields of all the patterns, with missing
+   * names filled in as <tt>Column$n</tt>
+   */
+
+  public List<FieldSpec> fields() { return fields; }
+
+  /**
+   * @return the number of groups the {@link #matcher(LineMatcher)
+   * matcher} presents: one per column and one per marker
+   */
+
+  public int groupCount() { return fields.size() + names.size(); }
+
+  /**
+   * @return the group of the marker of the given pattern, as presented
+   * by the matcher (1-based)
+   */
+
+  public int markerGroup(int pattern) { return fields.size() + pattern + 1; }
+
+  /**
+   * Translate the groups to keep, as presented by the matcher, to
+   * those of the combined regex, for {@link LineMatcher#withCaptures}.
+   * Markers are always kept: they tell which pattern matched.
+   */
+
+  public boolean[] captures(boolean[] keep) {
+    final boolean[] combined = new boolean[combinedGroupCount];
+    for (int p = 0; p < markers.length; p++) {
+      combined[markers[p] - 1] = true;
+      for (int col = 0; col < fields.size(); col++) {
+        final int group = groupMap[p][col + 1];
+        if (group != 0 && keep[col]) {
+          combined[group - 1] = true;
+        }
+      }
+    }
+    return combined;
+  }
+
+  /**
+   * Build a prefilter that accepts a line only if it has the required
+   * literals of at least one pattern, and the extra literals.
+   *
+   * @return the prefilter, or null if there are no usable literals
+   */
+
+  public LiteralPrefilter prefilter(List<String> extraLiterals) {
+    return LiteralPrefilter.buildAny(regexes, extraLiterals);
+  }
+
+  /**
+   * Wrap a matcher of the combined regex.
+   */
+
+  public LineMatcher matcher(LineMatcher combined) {
+    return new Matcher(combined);
+  }
+
+  /**
+   * Matcher presenting the combined regex with one group per column,
+   * taken from whichever pattern matched, then one per marker.
+   */
+
+  public class Matcher extends LineMatcher {
+    private final LineMatcher matcher;
+    private int pattern = -1;
+
+    public Matcher(LineMatcher matcher) {
+      this.matcher = matcher;
+    }
+
+    @Override
+    public LineMatcher reset(CharSequence input) {
+      matcher.reset(input);
+      pattern = -1;
+      return this;
+    }
+
+    @Override
+    public boolean matches() {
+      pattern = -1;
+      if (! matcher.matches()) {
+        return false;
+      }
+      for (int p = 0; p < markers.length; p++) {
+        if (matcher.start(markers[p]) != -1) {
+          pattern = p;
+          break;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return the index of the pattern that matched, or -1 if none
+     */
+
+    public int pattern() { return pattern; }
+
+    @Override
+    public int groupCount() { return PatternSet.this.groupCount(); }
+
+    private int mapped(int group) {
+      if (pattern == -1) {
+        return 0;
+      }
+      if (group > fields.size()) {
+        return group == markerGroup(pattern) ? markers[pattern] : 0;
+      }
+      return groupMap[pattern][group];
+    }
+
+    @Override
+    public int start(int group) {
+      final int mapped = mapped(group);
+      return mapped == 0 ? -1 : matcher.start(mapped);
+    }
+
+    @Override
+    public int end(int group) {
+      final int mapped = mapped(group);
+      return mapped == 0 ? -1 : matcher.end(mapped);
+    }
+
+    @Override
+    public String group(int group) {
+      final int mapped = mapped(group);
+      return mapped == 0 ? null : matcher.group(mapped);
+    }
+
+    @Override
+    public String engine() { return matcher.engine(); }
+  }
+}
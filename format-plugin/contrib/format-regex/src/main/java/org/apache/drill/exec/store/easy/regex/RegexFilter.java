@@ -0,0 +1,484 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Conjunction of simple predicates on regex columns, evaluated by the
+ * reader against the captured group bytes before anything is written
+ * to the vectors. Filled in by {@link RegexPushFilterIntoScan}, or given
+ * explicitly in the format config.
+ * <p>
+ * Like the field list, the filter is encoded as a string to work around
+ * DRILL-6169. The syntax is a small subset of SQL:<pre><code>
+ * level = 'ERROR' AND thread IN ('main', 'worker') AND
+ * message LIKE 'Failure%' AND `day` &gt;= '17'
+ * </code></pre>
+ * Supported operators are =, &lt;, &lt;=, &gt;, &gt;=, IN and LIKE with a
+ * prefix pattern (a single trailing %). Columns are VarChar, so
+ * comparisons are on the UTF-8 bytes, as in Drill itself. A null
+ * (unmatched) group fails every predicate.
+ */
+
+public class RegexFilter {
+
+  public enum Op {
+    EQ("="), LT("<"), LE("<="), GT(">"), GE(">="), IN("IN"), PREFIX("LIKE");
+
+    private final String symbol;
+
+    Op(String symbol) {
+      this.symbol = symbol;
+    }
+  }
+
+  public static class Predicate {
+    private final String column;
+    private final Op op;
+    private final List<String> values;
+
+    public Predicate(String column, Op op, List<String> values) {
+      this.column = column;
+      this.op = op;
+      this.values = values;
+    }
+
+    public String column() { return column; }
+    public Op op() { return op; }
+    public List<String> values() { return values; }
+
+    @Override
+    public String toString() {
+      final StringBuilder buf = new StringBuilder()
+          .append('`').append(column).append("` ")
+          .append(op.symbol).append(' ');
+      switch (op) {
+      case IN:
+        buf.append('(');
+        for (int i = 0; i < values.size(); i++) {
+          if (i > 0) {
+            buf.append(", ");
+          }
+          quote(buf, values.get(i));
+        }
+        buf.append(')');
+        break;
+      case PREFIX:
+        quote(buf, values.get(0) + "%");
+        break;
+      default:
+        quote(buf, values.get(0));
+      }
+      return buf.toString();
+    }
+
+    private static void quote(StringBuilder buf, String value) {
+      buf.append('\'').append(value.replace("'", "''")).append('\'');
+    }
+  }
+
+  private final List<Predicate> predicates;
+
+  public RegexFilter(List<Predicate> predicates) {
+    this.predicates = predicates;
+  }
+
+  public List<Predicate> predicates() { return predicates; }
+
+  /**
+   * Literals that must appear in any line that passes the filter:
+   * the value of each equality and the prefix of each LIKE. Used to
+   * strengthen the line-level {@link LiteralPrefilter}.
+   */
+
+  public List<String> requiredLiterals() {
+    final List<String> literals = new ArrayList<>();
+    for (final Predicate pred : predicates) {
+      switch (pred.op) {
+      case EQ:
+      case PREFIX:
+        literals.add(pred.values.get(0));
+        break;
+      case IN:
+        if (pred.values.size() == 1) {
+          literals.add(pred.values.get(0));
+        }
+        break;
+      default:
+      }
+    }
+    return literals;
+  }
+
+  public boolean hasPredicateOn(String column) {
+    for (final Predicate pred : predicates) {
+      if (pred.column.equalsIgnoreCase(column)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check whether some value between min and max (inclusive) could
+   * pass every predicate on a column. Used to skip data whose range
+   * of values is known from a {@link TimeIndex}.
+   */
+
+  public boolean mayMatchRange(String column, byte[] min, byte[] max) {
+    for (final Predicate pred : predicates) {
+      if (! pred.column.equalsIgnoreCase(column) || mayMatchRange(pred, min, max)) {
+        continue;
+      }
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean mayMatchRange(Predicate pred, byte[] min, byte[] max) {
+    final byte[] value = pred.values.get(0).getBytes(StandardCharsets.UTF_8);
+    switch (pred.op) {
+    case EQ:
+      return inRange(value, min, max);
+    case LT:
+      return Evaluator.compare(min, 0, min.length, value) < 0;
+    case LE:
+      return Evaluator.compare(min, 0, min.length, value) <= 0;
+    case GT:
+      return Evaluator.compare(max, 0, max.length, value) > 0;
+    case GE:
+      return Evaluator.compare(max, 0, max.length, value) >= 0;
+    case IN:
+      for (final String candidate : pred.values) {
+        if (inRange(candidate.getBytes(StandardCharsets.UTF_8), min, max)) {
+          return true;
+        }
+      }
+      return false;
+    case PREFIX:
+
+      // Values with the prefix sort from the prefix itself up to just
+      // before the first value above it that lacks the prefix.
+
+      return Evaluator.compare(max, 0, max.length, value) >= 0 &&
+          (Evaluator.compare(min, 0, min.length, value) <= 0 || startsWith(min, value));
+    default:
+      throw new IllegalStateException(pred.op.name());
+    }
+  }
+
+  private static boolean inRange(byte[] value, byte[] min, byte[] max) {
+    return Evaluator.compare(min, 0, min.length, value) <= 0 &&
+        Evaluator.compare(max, 0, max.length, value) >= 0;
+  }
+
+  private static boolean startsWith(byte[] value, byte[] prefix) {
+    if (value.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (value[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < predicates.size(); i++) {
+      if (i > 0) {
+        buf.append(" AND ");
+      }
+      buf.append(predicates.get(i).toString());
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Predicates bound to regex group numbers, ready for evaluation.
+   */
+
+  public static class Evaluator {
+    private final int[] groups;
+    private final Op[] ops;
+    private final byte[][][] values;
+
+    private Evaluator(int[] groups, Op[] ops, byte[][][] values) {
+      this.groups = groups;
+      this.ops = ops;
+      this.values = values;
+    }
+
+    /**
+     * Number of the regex group tested by predicate i, or 0 if the
+     * predicate's column is not captured by the pattern.
+     */
+
+    public int group(int i) { return groups[i]; }
+    public int size() { return groups.length; }
+
+    /**
+     * Test predicate i against a captured value.
+     *
+     * @param buf buffer holding the value, or null if the group
+     * did not participate in the match
+     */
+
+    public boolean test(int i, byte[] buf, int start, int end) {
+      if (buf == null) {
+        return false;
+      }
+      final byte[][] candidates = values[i];
+      switch (ops[i]) {
+      case EQ:
+        return compare(buf, start, end, candidates[0]) == 0;
+      case LT:
+        return compare(buf, start, end, candidates[0]) < 0;
+      case LE:
+        return compare(buf, start, end, candidates[0]) <= 0;
+      case GT:
+        return compare(buf, start, end, candidates[0]) > 0;
+      case GE:
+        return compare(buf, start, end, candidates[0]) >= 0;
+      case IN:
+        for (int j = 0; j < candidates.length; j++) {
+          if (compare(buf, start, end, candidates[j]) == 0) {
+            return true;
+          }
+        }
+        return false;
+      case PREFIX:
+        final byte[] prefix = candidates[0];
+        if (end - start < prefix.length) {
+          return false;
+        }
+        for (int j = 0; j < prefix.length; j++) {
+          if (buf[start + j] != prefix[j]) {
+            return false;
+          }
+        }
+        return true;
+      default:
+        throw new IllegalStateException(ops[i].name());
+      }
+    }
+
+    /**
+     * Unsigned lexicographic comparison, the same order Drill
+     * uses for VarChar.
+     */
+
+    private static int compare(byte[] buf, int start, int end, byte[] value) {
+      final int len = Math.min(end - start, value.length);
+      for (int i = 0; i < len; i++) {
+        final int cmp = (buf[start + i] & 0xFF) - (value[i] & 0xFF);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return (end - start) - value.length;
+    }
+  }
+
+  /**
+   * Bind the predicates to regex groups, matching column names
+   * case-insensitively as for projection.
+   */
+
+  public Evaluator bind(List<String> columnNames) {
+    final int n = predicates.size();
+    final int[] groups = new int[n];
+    final Op[] ops = new Op[n];
+    final byte[][][] values = new byte[n][][];
+    for (int i = 0; i < n; i++) {
+      final Predicate pred = predicates.get(i);
+      for (int j = 0; j < columnNames.size(); j++) {
+        if (columnNames.get(j).equalsIgnoreCase(pred.column)) {
+          groups[i] = j + 1;
+          break;
+        }
+      }
+      ops[i] = pred.op;
+      values[i] = new byte[pred.values.size()][];
+      for (int j = 0; j < values[i].length; j++) {
+        values[i][j] = pred.values.get(j).getBytes(StandardCharsets.UTF_8);
+      }
+    }
+    return new Evaluator(groups, ops, values);
+  }
+
+  /**
+   * Parse the string form of a filter.
+   *
+   * @throws IllegalArgumentException if the filter is not valid
+   */
+
+  public static RegexFilter parse(String text) {
+    return new Parser(text).parse();
+  }
+
+  private static class Parser {
+    private final String text;
+    private int pos;
+
+    public Parser(String text) {
+      this.text = text;
+    }
+
+    public RegexFilter parse() {
+      final List<Predicate> preds = new ArrayList<>();
+      for (;;) {
+        preds.add(parsePredicate());
+        skipSpace();
+        if (pos == text.length()) {
+          return new RegexFilter(preds);
+        }
+        expectKeyword("AND");
+      }
+    }
+
+    private Predicate parsePredicate() {
+      final String column = parseIdentifier();
+      skipSpace();
+      if (tryKeyword("IN")) {
+        skipSpace();
+        expect('(');
+        final List<String> values = new ArrayList<>();
+        for (;;) {
+          values.add(parseString());
+          skipSpace();
+          if (tryChar(')')) {
+            return new Predicate(column, Op.IN, values);
+          }
+          expect(',');
+        }
+      }
+      if (tryKeyword("LIKE")) {
+        final String pattern = parseString();
+        final String prefix = pattern.substring(0, Math.max(pattern.length() - 1, 0));
+        if (! pattern.endsWith("%") || prefix.indexOf('%') != -1 ||
+            prefix.indexOf('_') != -1) {
+          throw error("Only prefix LIKE patterns ('abc%') are supported");
+        }
+        return new Predicate(column, Op.PREFIX, Collections.singletonList(prefix));
+      }
+      Op op;
+      if (tryChar('=')) {
+        op = Op.EQ;
+      } else if (tryChar('<')) {
+        op = tryChar('=') ? Op.LE : Op.LT;
+      } else if (tryChar('>')) {
+        op = tryChar('=') ? Op.GE : Op.GT;
+      } else {
+        throw error("Expected an operator");
+      }
+      return new Predicate(column, op, Collections.singletonList(parseString()));
+    }
+
+    private String parseIdentifier() {
+      skipSpace();
+      if (tryChar('`')) {
+        final int end = text.indexOf('`', pos);
+        if (end == -1) {
+          throw error("Unterminated identifier");
+        }
+        final String name = text.substring(pos, end);
+        pos = end + 1;
+        return name;
+      }
+      final int start = pos;
+      while (pos < text.length() &&
+          (Character.isLetterOrDigit(text.charAt(pos)) ||
+           text.charAt(pos) == '_' || text.charAt(pos) == '$')) {
+        pos++;
+      }
+      if (start == pos) {
+        throw error("Expected a column name");
+      }
+      return text.substring(start, pos);
+    }
+
+    private String parseString() {
+      skipSpace();
+      expect('\'');
+      final StringBuilder buf = new StringBuilder();
+      for (;;) {
+        if (pos == text.length()) {
+          throw error("Unterminated string");
+        }
+        final char c = text.charAt(pos++);
+        if (c == '\'') {
+          if (pos < text.length() && text.charAt(pos) == '\'') {
+            pos++;
+          } else {
+            return buf.toString();
+          }
+        }
+        buf.append(c);
+      }
+    }
+
+    private boolean tryKeyword(String keyword) {
+      final int end = pos + keyword.length();
+      if (text.regionMatches(true, pos, keyword, 0, keyword.length()) &&
+          (end == text.length() || ! Character.isLetterOrDigit(text.charAt(end)))) {
+        pos = end;
+        return true;
+      }
+      return false;
+    }
+
+    private void expectKeyword(String keyword) {
+      if (! tryKeyword(keyword)) {
+        throw error("Expected " + keyword);
+      }
+    }
+
+    private boolean tryChar(char c) {
+      skipSpace();
+      if (pos < text.length() && text.charAt(pos) == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char c) {
+      if (! tryChar(c)) {
+        throw error("Expected '" + c + "'");
+      }
+    }
+
+    private void skipSpace() {
+      while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    private IllegalArgumentException error(String msg) {
+      return new IllegalArgumentException(
+          String.format("%s at position %d of filter: %s", msg, pos, text));
+    }
+  }
+}
@@ -36,11 +36,20 @@ import com.fasterxml.jackson.annotation.JsonTypeName;
  * The list may have any number of spaces (including none) before or after
  * the comma.
  * <p>
+ * Each field may also give a type and format; see {@link FieldSpec}.
+ * <p>
  * When used in a table function, DRILL-6167 forces us to specify the type
  * as follows:<pre><code>
  * SELECT * FROM table(cp.`regex/simple.log2`
  *   (type => 'regex', regex => 'some pattern'))
  * </code></pre>
+ * The other options are described where they are used: engine in
+ * {@link LineMatcher}, threads and queueDepth in {@link MatchPipeline},
+ * cacheDir and cacheSize in {@link ResultCache}, checkpointDir in
+ * {@link TailCheckpoint}, timeColumn and indexBlockSize in
+ * {@link TimeIndex}, patterns in {@link PatternSet}, mapFiles in
+ * {@link MappedInputStream} and dictFields in {@link ValueDictionary}.
+ * State pushed down by the planner is in {@link RegexScanConfig}.
  */
 
 @JsonTypeName("regex")
@@ -60,10 +69,62 @@ public class RegexFormatConfig implements FormatPluginConfig {
 
   public String fields;
   public String extension;
+  public String engine;
+  public int threads;
+  public int queueDepth;
+  public String cacheDir;
+  public long cacheSize;
+  public String checkpointDir;
+  public String timeColumn;
+  public int indexBlockSize;
+
+  // Also a string, for the same reason as the fields: one pattern
+  // per line.
+
+  public String patterns;
+  public boolean mapFiles;
+
+  // Also a comma-delimited list, for the same reason as the fields.
+
+  public String dictFields;
 
   public String getRegex() { return regex; }
   public String getFields() { return fields; }
   public String getExtension() { return extension; }
+  public String getEngine() { return engine; }
+  public int getThreads() { return threads; }
+  public int getQueueDepth() { return queueDepth; }
+  public String getCacheDir() { return cacheDir; }
+  public long getCacheSize() { return cacheSize; }
+  public String getCheckpointDir() { return checkpointDir; }
+  public String getTimeColumn() { return timeColumn; }
+  public int getIndexBlockSize() { return indexBlockSize; }
+  public String getPatterns() { return patterns; }
+  public boolean getMapFiles() { return mapFiles; }
+  public String getDictFields() { return dictFields; }
+
+  public RegexFormatConfig copy() {
+    final RegexFormatConfig copy = new RegexFormatConfig();
+    copyTo(copy);
+    return copy;
+  }
+
+  protected void copyTo(RegexFormatConfig copy) {
+    copy.regex = regex;
+    copy.fields = fields;
+    copy.extension = extension;
+    copy.engine = engine;
+    copy.threads = threads;
+    copy.queueDepth = queueDepth;
+    copy.cacheDir = cacheDir;
+    copy.cacheSize = cacheSize;
+    copy.checkpointDir = checkpointDir;
+    copy.timeColumn = timeColumn;
+    copy.indexBlockSize = indexBlockSize;
+    copy.patterns = patterns;
+    copy.mapFiles = mapFiles;
+    copy.dictFields = dictFields;
+  }
 
   @Override
   public boolean equals(Object obj) {
@@ -74,11 +135,24 @@ public class RegexFormatConfig implements FormatPluginConfig {
     final RegexFormatConfig other = (RegexFormatConfig) obj;
     return Objects.equals(regex, other.regex) &&
            Objects.equals(fields, other.fields) &&
-           Objects.equals(extension, other.extension);
+           Objects.equals(extension, other.extension) &&
+           Objects.equals(engine, other.engine) &&
+           threads == other.threads &&
+           queueDepth == other.queueDepth &&
+           Objects.equals(cacheDir, other.cacheDir) &&
+           cacheSize == other.cacheSize &&
+           Objects.equals(checkpointDir, other.checkpointDir) &&
+           Objects.equals(timeColumn, other.timeColumn) &&
+           indexBlockSize == other.indexBlockSize &&
+           Objects.equals(patterns, other.patterns) &&
+           mapFiles == other.mapFiles &&
+           Objects.equals(dictFields, other.dictFields);
   }
 
   @Override
   public int hashCode() {
-    return Arrays.hashCode(new Object[] {regex, fields, extension});
+    return Arrays.hashCode(new Object[] {regex, fields, extension, engine, threads,
+        queueDepth, cacheDir, cacheSize, checkpointDir, timeColumn, indexBlockSize, patterns,
+        mapFiles, dictFields});
   }
 }
@@ -19,20 +19,24 @@ package org.apache.drill.exec.store.easy.regex;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.drill.common.exceptions.ExecutionSetupException;
 import org.apache.drill.common.expression.SchemaPath;
 import org.apache.drill.common.logical.StoragePluginConfig;
 import org.apache.drill.exec.ops.FragmentContext;
+import org.apache.drill.exec.proto.UserBitShared.CoreOperatorType;
 import org.apache.drill.exec.server.DrillbitContext;
 import org.apache.drill.exec.store.RecordReader;
 import org.apache.drill.exec.store.RecordWriter;
+import org.apache.drill.exec.store.StoragePluginOptimizerRule;
 import org.apache.drill.exec.store.dfs.DrillFileSystem;
 import org.apache.drill.exec.store.dfs.easy.EasyFormatPlugin;
 import org.apache.drill.exec.store.dfs.easy.EasyWriter;
 import org.apache.drill.exec.store.dfs.easy.FileWork;
 import org.apache.hadoop.conf.Configuration;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
 public class RegexFormatPlugin extends EasyFormatPlugin<RegexFormatConfig> {
@@ -46,13 +50,25 @@ public class RegexFormatPlugin extends EasyFormatPlugin<RegexFormatConfig> {
     super(name, context, fsConf, storageConfig, formatConfig,
         true,  // readable
         false, // writable
-        false, // blockSplittable
+        formatConfig.getCheckpointDir() == null,  // blockSplittable
         true,  // compressible
         Lists.newArrayList(formatConfig.getExtension()),
         DEFAULT_NAME);
     this.formatConfig = formatConfig;
   }
 
+  /**
+   * Plugin for a scan with pushed-down state. Drill finds the plugin
+   * for a format config by the config's class, so the derived config
+   * needs a constructor of its own.
+   */
+
+  public RegexFormatPlugin(String name, DrillbitContext context,
+      Configuration fsConf, StoragePluginConfig storageConfig,
+      RegexScanConfig formatConfig) {
+    this(name, context, fsConf, storageConfig, (RegexFormatConfig) formatConfig);
+  }
+
   @Override
   public RecordReader getRecordReader(FragmentContext context,
       DrillFileSystem dfs, FileWork fileWork, List<SchemaPath> columns,
@@ -64,6 +80,25 @@ public class RegexFormatPlugin extends EasyFormatPlugin<RegexFormatConfig> {
   @Override
   public boolean supportsPushDown() { return true; }
 
+  @Override
+  public Set<StoragePluginOptimizerRule> getOptimizerRules() {
+    return ImmutableSet.of(
+        RegexPushFilterIntoScan.FILTER_ON_SCAN,
+        RegexPushLimitIntoScan.LIMIT_ON_SCAN);
+  }
+
+  /**
+   * Return the plugin for a config derived from this plugin's config,
+   * such as one carrying a pushed-down filter. As with table functions,
+   * the storage plugin registry creates the plugin instance for the
+   * derived config on demand.
+   */
+
+  public RegexFormatPlugin withConfig(RegexFormatConfig newConfig) throws ExecutionSetupException {
+    return (RegexFormatPlugin) getContext().getStorage()
+        .getFormatPlugin(getStorageConfig(), newConfig);
+  }
+
   @Override
   public RecordWriter getRecordWriter(FragmentContext context,
       EasyWriter writer) throws IOException {
@@ -71,7 +106,7 @@ public class RegexFormatPlugin extends EasyFormatPlugin<RegexFormatConfig> {
   }
 
   @Override
-  public int getReaderOperatorType() { return 0; }
+  public int getReaderOperatorType() { return CoreOperatorType.REGEX_SUB_SCAN_VALUE; }
 
   @Override
   public int getWriterOperatorType() { return 0; }
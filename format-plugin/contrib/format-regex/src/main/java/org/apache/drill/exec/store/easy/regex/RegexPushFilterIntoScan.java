@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeFamily;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.drill.exec.planner.logical.RelOptHelper;
+import org.apache.drill.exec.planner.physical.FilterPrel;
+import org.apache.drill.exec.planner.physical.ScanPrel;
+import org.apache.drill.exec.store.StoragePluginOptimizerRule;
+import org.apache.drill.exec.store.dfs.DrillFileSystem;
+import org.apache.drill.exec.store.dfs.easy.EasyGroupScan;
+import org.apache.drill.exec.util.ImpersonationUtil;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Pushes simple WHERE predicates on regex columns into the regex scan:
+ * comparisons of a column with a string literal, IN lists (which Calcite
+ * presents as an OR of equalities) and prefix LIKE patterns. Other
+ * conjuncts are simply not pushed.
+ * <p>
+ * The pushed predicates travel to the readers as the filter property
+ * of a {@link RegexScanConfig}. The original Filter is left in
+ * place: the reader drops only rows that the Filter would drop anyway,
+ * so the plan stays correct even if a predicate has subtle semantics
+ * (such as trailing spaces) that the reader does not model.
+ * <p>
+ * If the config names a time column with a predicate in the filter,
+ * files whose complete {@link TimeIndex} shows no row can pass are
+ * dropped from the scan.
+ */
+
+public class RegexPushFilterIntoScan extends RegexScanRule {
+
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RegexPushFilterIntoScan.class);
+
+  public static final StoragePluginOptimizerRule FILTER_ON_SCAN = new RegexPushFilterIntoScan();
+
+  private RegexPushFilterIntoScan() {
+    super(RelOptHelper.some(FilterPrel.class, RelOptHelper.any(ScanPrel.class)),
+        "RegexPushFilterIntoScan:Filter_On_Scan");
+  }
+
+  @Override
+  public boolean matches(RelOptRuleCall call) {
+    final ScanPrel scan = call.rel(1);
+    final RegexFormatConfig config = regexConfig(scan.getGroupScan());
+
+    // Don't push a second time into a scan that already has a filter.
+
+    return config != null && RegexScanConfig.filterOf(config) == null;
+  }
+
+  @Override
+  public void onMatch(RelOptRuleCall call) {
+    final FilterPrel filter = call.rel(0);
+    final ScanPrel scan = call.rel(1);
+    final RegexFilter regexFilter = convert(filter.getCondition(),
+        scan.getRowType().getFieldNames());
+    if (regexFilter == null) {
+      return;
+    }
+    final RegexScanConfig newConfig = RegexScanConfig.of(regexConfig(scan.getGroupScan()));
+    newConfig.filter = regexFilter.toString();
+    final ScanPrel newScan = withConfig(scan, newConfig,
+        pruneFiles((EasyGroupScan) scan.getGroupScan(), newConfig, regexFilter));
+    call.transformTo(filter.copy(filter.getTraitSet(), ImmutableList.of((RelNode) newScan)));
+  }
+
+  /**
+   * Drop the files whose time index shows that no row passes the
+   * filter. A scan needs at least one file, so if all would go, the
+   * first stays; its reader then finds nothing to read.
+   */
+
+  private static List<String> pruneFiles(EasyGroupScan groupScan,
+      RegexFormatConfig config, RegexFilter filter) {
+    final List<String> files = groupScan.getFiles();
+    final String column = config.getTimeColumn();
+    if (! TimeIndex.isUsable(config) || ! filter.hasPredicateOn(column)) {
+      return files;
+    }
+    final RegexFormatPlugin plugin = (RegexFormatPlugin) groupScan.getFormatPlugin();
+    final DrillFileSystem fs = ImpersonationUtil.createFileSystem(
+        groupScan.getUserName(), plugin.getFsConf());
+    final String id = TimeIndex.id(config);
+    final int blockSize = TimeIndex.blockSize(config);
+    final List<String> kept = new ArrayList<>();
+    for (final String file : files) {
+      final Path path = new Path(file);
+      try {
+        final TimeIndex index = TimeIndex.load(fs, path, fs.getFileStatus(path), id, blockSize);
+        if (index != null && index.isComplete() && ! index.mayMatch(filter, column)) {
+          continue;
+        }
+      } catch (final IOException e) {
+        logger.debug("Failed to read the time index of {}", file, e);
+      }
+      kept.add(file);
+    }
+    if (kept.size() < files.size()) {
+      logger.debug("Time index pruned {} of {} files", files.size() - kept.size(), files.size());
+    }
+    return kept.isEmpty() ? files.subList(0, 1) : kept;
+  }
+
+  /**
+   * Convert the pushable conjuncts of a filter condition.
+   *
+   * @return the filter, or null if no conjunct can be pushed
+   */
+
+  public static RegexFilter convert(RexNode condition, List<String> fieldNames) {
+    final List<RegexFilter.Predicate> preds = new ArrayList<>();
+    for (final RexNode conjunct : RelOptUtil.conjunctions(condition)) {
+      final RegexFilter.Predicate pred = convertConjunct(conjunct, fieldNames);
+      if (pred != null) {
+        preds.add(pred);
+      }
+    }
+    return preds.isEmpty() ? null : new RegexFilter(preds);
+  }
+
+  private static RegexFilter.Predicate convertConjunct(RexNode node, List<String> fieldNames) {
+    if (! (node instanceof RexCall)) {
+      return null;
+    }
+    final RexCall call = (RexCall) node;
+    switch (call.getKind()) {
+    case EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      return convertComparison(call, fieldNames);
+    case OR:
+      return convertIn(call, fieldNames);
+    case LIKE:
+      return convertLike(call, fieldNames);
+    default:
+      return null;
+    }
+  }
+
+  private static RegexFilter.Predicate convertComparison(RexCall call, List<String> fieldNames) {
+    RexNode left = call.getOperands().get(0);
+    RexNode right = call.getOperands().get(1);
+    SqlKind kind = call.getKind();
+    if (left instanceof RexLiteral) {
+      final RexNode temp = left;
+      left = right;
+      right = temp;
+      kind = kind.reverse();
+    }
+    final String column = columnName(left, fieldNames);
+    final String value = stringValue(right);
+    if (column == null || value == null) {
+      return null;
+    }
+    RegexFilter.Op op;
+    switch (kind) {
+    case EQUALS:
+      op = RegexFilter.Op.EQ;
+      break;
+    case LESS_THAN:
+      op = RegexFilter.Op.LT;
+      break;
+    case LESS_THAN_OR_EQUAL:
+      op = RegexFilter.Op.LE;
+      break;
+    case GREATER_THAN:
+      op = RegexFilter.Op.GT;
+      break;
+    case GREATER_THAN_OR_EQUAL:
+      op = RegexFilter.Op.GE;
+      break;
+    default:
+      return null;
+    }
+    return new RegexFilter.Predicate(column, op, Collections.singletonList(value));
+  }
+
+  /**
+   * Convert an OR of equalities on the same column (the form Calcite
+   * uses for short IN lists) to an IN predicate.
+   */
+
+  private static RegexFilter.Predicate convertIn(RexCall call, List<String> fieldNames) {
+    String column = null;
+    final List<String> values = new ArrayList<>();
+    for (final RexNode disjunct : RelOptUtil.disjunctions(call)) {
+      if (disjunct.getKind() != SqlKind.EQUALS) {
+        return null;
+      }
+      final RegexFilter.Predicate pred = convertComparison((RexCall) disjunct, fieldNames);
+      if (pred == null || (column != null && ! column.equals(pred.column()))) {
+        return null;
+      }
+      column = pred.column();
+      values.add(pred.values().get(0));
+    }
+    return column == null ? null : new RegexFilter.Predicate(column, RegexFilter.Op.IN, values);
+  }
+
+  private static RegexFilter.Predicate convertLike(RexCall call, List<String> fieldNames) {
+
+    // An ESCAPE clause adds a third operand; not supported.
+
+    if (call.getOperands().size() != 2) {
+      return null;
+    }
+    final String column = columnName(call.getOperands().get(0), fieldNames);
+    final String pattern = stringValue(call.getOperands().get(1));
+    if (column == null || pattern == null || ! pattern.endsWith("%")) {
+      return null;
+    }
+    final String prefix = pattern.substring(0, pattern.length() - 1);
+    if (prefix.indexOf('%') != -1 || prefix.indexOf('_') != -1) {
+      return null;
+    }
+    return new RegexFilter.Predicate(column, RegexFilter.Op.PREFIX,
+        Collections.singletonList(prefix));
+  }
+
+  private static String columnName(RexNode node, List<String> fieldNames) {
+    if (! (node instanceof RexInputRef)) {
+      return null;
+    }
+
+    // Regex columns are VarChar, seen by the planner as ANY until
+    // the schema is known.
+
+    final SqlTypeName type = node.getType().getSqlTypeName();
+    if (type != SqlTypeName.ANY && type != SqlTypeName.VARCHAR && type != SqlTypeName.CHAR) {
+      return null;
+    }
+    return fieldNames.get(((RexInputRef) node).getIndex());
+  }
+
+  private static String stringValue(RexNode node) {
+    if (! (node instanceof RexLiteral)) {
+      return null;
+    }
+    final RexLiteral literal = (RexLiteral) node;
+    if (literal.getTypeName().getFamily() != SqlTypeFamily.CHARACTER) {
+      return null;
+    }
+    return RexLiteral.stringValue(literal);
+  }
+}
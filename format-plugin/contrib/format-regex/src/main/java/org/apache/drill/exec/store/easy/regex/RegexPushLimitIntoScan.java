@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.drill.exec.planner.logical.RelOptHelper;
+import org.apache.drill.exec.planner.physical.LimitPrel;
+import org.apache.drill.exec.planner.physical.ScanPrel;
+import org.apache.drill.exec.store.StoragePluginOptimizerRule;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Pushes a LIMIT directly above a regex scan into the readers: each
+ * reader stops reading, and closes its file, once it has produced
+ * OFFSET + FETCH matching rows. The Limit operator stays in the plan to
+ * trim the combined output of the readers; once it has enough rows it
+ * ends the scan, so readers for the remaining files are never set up
+ * and never open their files.
+ * <p>
+ * A limit above a filter is not pushed, since the reader cannot know
+ * how many of its rows the filter will keep.
+ */
+
+public class RegexPushLimitIntoScan extends RegexScanRule {
+
+  public static final StoragePluginOptimizerRule LIMIT_ON_SCAN = new RegexPushLimitIntoScan();
+
+  private RegexPushLimitIntoScan() {
+    super(RelOptHelper.some(LimitPrel.class, RelOptHelper.any(ScanPrel.class)),
+        "RegexPushLimitIntoScan:Limit_On_Scan");
+  }
+
+  @Override
+  public boolean matches(RelOptRuleCall call) {
+    final LimitPrel limit = call.rel(0);
+    final ScanPrel scan = call.rel(1);
+    final RegexFormatConfig config = regexConfig(scan.getGroupScan());
+    return config != null && RegexScanConfig.limitOf(config) == 0 && limit.getFetch() != null;
+  }
+
+  @Override
+  public void onMatch(RelOptRuleCall call) {
+    final LimitPrel limit = call.rel(0);
+    final ScanPrel scan = call.rel(1);
+    long rowCount = RexLiteral.intValue(limit.getFetch());
+    if (limit.getOffset() != null) {
+      rowCount += RexLiteral.intValue(limit.getOffset());
+    }
+
+    // LIMIT 0 is handled by the planner without a scan. Very large
+    // limits save nothing.
+
+    if (rowCount <= 0 || rowCount > Integer.MAX_VALUE) {
+      return;
+    }
+    final RegexScanConfig newConfig = RegexScanConfig.of(regexConfig(scan.getGroupScan()));
+    newConfig.limit = (int) rowCount;
+    final ScanPrel newScan = withConfig(scan, newConfig);
+    call.transformTo(limit.copy(limit.getTraitSet(), ImmutableList.of((RelNode) newScan)));
+  }
+}
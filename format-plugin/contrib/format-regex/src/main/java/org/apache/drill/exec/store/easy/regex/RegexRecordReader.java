@@ -17,35 +17,43 @@
  */
 package org.apache.drill.exec.store.easy.regex;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import org.apache.drill.common.exceptions.UserException;
 import org.apache.drill.common.expression.SchemaPath;
 import org.apache.drill.common.types.TypeProtos.MinorType;
-import org.apache.drill.common.types.Types;
+import org.apache.drill.exec.ExecConstants;
 import org.apache.drill.exec.exception.SchemaChangeException;
 import org.apache.drill.exec.ops.FragmentContext;
+import org.apache.drill.exec.ops.MetricDef;
 import org.apache.drill.exec.ops.OperatorContext;
+import org.apache.drill.exec.ops.OperatorStats;
 import org.apache.drill.exec.physical.impl.OutputMutator;
-import org.apache.drill.exec.record.MaterializedField;
 import org.apache.drill.exec.store.AbstractRecordReader;
 import org.apache.drill.exec.store.dfs.DrillFileSystem;
 import org.apache.drill.exec.store.dfs.easy.FileWork;
-import org.apache.drill.exec.vector.BaseValueVector;
-import org.apache.drill.exec.vector.NullableVarCharVector;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Splitter;
+import com.google.common.io.CountingInputStream;
 
 /**
  * Parse a file using a regular expression. The regular expression must
@@ -55,50 +63,300 @@ import com.google.common.base.Splitter;
  * <p>
  * Lines that do not match the regex are silently ignored.
  * <p>
- * The type of all columns is VarChar. If a column should be some other
- * type, that conversion can be done in a CAST in the query itself.
+ * Lines are scanned as raw bytes. When both the pattern and the line
+ * are pure ASCII, the regex runs directly on those bytes (see
+ * {@link ByteCharSequence}) and matched groups are copied into the
+ * vectors as byte ranges, so no per-line or per-group objects are
+ * created. Lines with non-ASCII bytes, and every line for a pattern with
+ * non-ASCII characters, are decoded as UTF-8 first, so that <tt>.</tt>,
+ * <tt>\w</tt>, negated classes and counted repeats see characters, not
+ * bytes.
+ * <p>
+ * Before running the regex, each line is checked for the literal
+ * substrings that every match must contain (see {@link LiteralPrefilter}).
+ * Lines without them are rejected without invoking the regex engine.
+ * <p>
+ * If the format config carries a {@link RegexFilter} (usually pushed down
+ * from the WHERE clause), matched rows are tested against it using the
+ * group bytes, and rejected rows are never written to the vectors. The
+ * filter's equality and prefix values also feed the prefilter.
+ * <p>
+ * Columns are VarChar unless the field list gives a type (see
+ * {@link FieldSpec}). Typed columns are parsed directly from the captured
+ * bytes into the matching nullable vector; values that do not parse are
+ * null.
  * <p>
  * Projection is supported: no columns (for COUNT(*)), all columns (SELECT *)
- * or a list of columns. Projected columns not in the configured field list
+ * or a list of columns. With no columns, the reader just counts matching
+ * lines, using a capture-free copy of the regex, and writes nothing to
+ * its one column, a nullable INT left all null.
+ * Likewise, groups that the query does not read are rewritten so that
+ * they do not capture. Projected columns not in the configured field list
  * are filled with nulls. Projected columns are matched to the field list
  * using standard SQL case insensitive comparison.
+ * <p>
+ * If the format config gives a list of patterns rather than a regex,
+ * the patterns are combined into one regex and a shared prefilter (see
+ * {@link PatternSet}), so each line is read and matched once whatever
+ * its format. The columns are <tt>pattern_name</tt>, the name of the
+ * pattern that matched, and the union of the patterns' fields.
+ * <p>
+ * Low-cardinality VARCHAR fields listed in the format config's
+ * dictFields keep a per-reader {@link ValueDictionary} of their values.
+ * A pushed-down predicate on such a field is then evaluated once per
+ * distinct value rather than once per row, and values of decoded lines
+ * are written from the interned bytes (see
+ * {@link ColumnWriter.DictVarCharWriter}).
+ * <p>
+ * Uncompressed files are block splittable. Each reader scans the byte
+ * range given by its {@link FileWork}, using the same convention as
+ * Hadoop's <tt>LineRecordReader</tt>: a reader that does not start at
+ * offset 0 skips the (possibly partial) first line, and every reader
+ * finishes the line that crosses its end offset. Thus each line is read
+ * by exactly one reader. If the format config sets mapFiles, uncompressed
+ * files on the local file system are memory-mapped (see
+ * {@link MappedInputStream}). Compressed files are
+ * always read whole, but gzip files in BGZF form are inflated on several
+ * threads (see {@link BgzfInputStream}).
+ * <p>
+ * If the scan config carries a limit (pushed down from a LIMIT
+ * clause), the reader closes its file as soon as it has produced that
+ * many rows.
+ * <p>
+ * Batches are sized to the <tt>drill.exec.memory.operator.output_batch_size</tt>
+ * budget rather than to a fixed row count, with vectors pre-allocated
+ * from the average column widths seen so far (see {@link BatchSizer}).
+ * <p>
+ * The reader reports the {@link Metric}s in the operator profile: line
+ * and byte counts, and where the time went (I/O, matching or writing
+ * vectors), to show whether a slow scan is bound by I/O or by the regex.
+ * The profile holds them by id; the web UI names only the metrics of
+ * operators in core's <tt>OperatorMetricRegistry</tt>, which plugins
+ * cannot add to, so this operator's table there is empty. With debug
+ * logging, the reader also logs them by name when it closes.
+ * <p>
+ * If the format config sets threads, reading and matching run on other
+ * threads (see {@link MatchPipeline}), so that a single file, such as a
+ * gzipped log, can use more than one core.
+ * <p>
+ * If the format config sets a cache directory, each split's groups are
+ * saved on the first full scan and read back on later scans of the
+ * unchanged file, skipping the regex (see {@link ResultCache}).
+ * <p>
+ * If the format config sets a checkpoint directory, reading is
+ * incremental: each scan of an uncompressed file resumes where the last
+ * complete scan stopped, so returns only lines appended since, and starts
+ * over if the file was rotated (see {@link TailCheckpoint}). A final line
+ * with no terminator is left for the next scan. Each projection and
+ * pushed-down filter keeps its own checkpoint, and delivery is at most
+ * once.
+ * <p>
+ * If the format config names a time column, the reader uses the file's
+ * {@link TimeIndex}: with a filter on the column, it skips the file, or
+ * the blocks of the file, whose range of times cannot pass the filter.
+ * (Pipelined reads skip only whole files.) Without a complete index, a
+ * serial scan of the whole split adds its blocks to the index.
  */
 
 public class RegexRecordReader extends AbstractRecordReader {
 
   private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RegexRecordReader.class);
 
+  /**
+   * Column index of the <tt>pattern_name</tt> column.
+   */
+
+  private static final int PATTERN_NAME = -2;
+
   private static class ColumnDefn {
-    private final String name;
     private final int index;
-    private NullableVarCharVector.Mutator mutator;
+    private final ColumnWriter writer;
+
+    public ColumnDefn(String name, int index, FieldSpec spec) {
+      this(index, ColumnWriter.build(name, spec));
+    }
 
-    public ColumnDefn(String name, int index) {
-      this.name = name;
+    public ColumnDefn(int index, ColumnWriter writer) {
       this.index = index;
+      this.writer = writer;
     }
   }
 
-  private static final int BATCH_SIZE = BaseValueVector.INITIAL_VALUE_ALLOCATION;
+  public enum Metric implements MetricDef {
+
+    /**
+     * Lines rejected by the literal prefilter without running
+     * the regex. Included in {@link #LINES_UNMATCHED}.
+     */
+
+    LINES_PREFILTERED,
+
+    /**
+     * Matched rows rejected by the pushed-down filter.
+     */
+
+    ROWS_FILTERED,
+
+    /**
+     * Lines read from the split, whether or not they match.
+     */
+
+    LINES_READ,
+
+    /**
+     * Lines that match the regex.
+     */
+
+    LINES_MATCHED,
+
+    /**
+     * Lines that do not match the regex, including those rejected
+     * by the prefilter.
+     */
+
+    LINES_UNMATCHED,
+
+    /**
+     * Bytes read from the file system.
+     */
 
+    BYTES_READ,
+
+    /**
+     * For compressed files, bytes produced by the decompressor.
+     */
+
+    BYTES_DECOMPRESSED,
+
+    /**
+     * Time waiting on the input stream, including decompression.
+     */
+
+    IO_NANOS,
+
+    /**
+     * Time spent finding lines, prefiltering, matching and filtering:
+     * the time in <tt>next()</tt> not spent on I/O or vector writes.
+     */
+
+    MATCH_NANOS,
+
+    /**
+     * Time spent writing matched groups to the vectors.
+     */
+
+    WRITE_NANOS,
+
+    /**
+     * 1 if the rows came from the result cache rather than the file.
+     */
+
+    CACHE_HITS,
+
+    /**
+     * Bytes of the split passed over without matching, because the
+     * time index shows that no row there can pass the filter.
+     */
+
+    BYTES_SKIPPED;
+
+    @Override
+    public int metricId() {
+      return ordinal();
+    }
+  }
+
+  private final FragmentContext.ExecutorState executorState;
   private final DrillFileSystem dfs;
   private final FileWork fileWork;
   private final String userName;
   private final RegexFormatConfig formatConfig;
+  private final String pushedFilter;
+  private final int limit;
   private List<String> columnNames;
+  private List<FieldSpec> fieldSpecs;
   private ColumnDefn columns[];
-  private Pattern pattern;
+  private PatternSet patterns;
+  private String regex;
+  private LineMatcher matcher;
+  private String matchRegex;
+  private boolean captureMap[];
+  private boolean byteMatching;
+  private boolean matchedBytes;
+  private boolean countOnly;
+  private LiteralPrefilter prefilter;
+  private RegexFilter filter;
+  private RegexFilter.Evaluator filterEvaluator;
+
+  // Dictionaries of the low-cardinality fields, by group number, and
+  // the result of each predicate on such a field for each dictionary
+  // entry: 0 if not yet known, else PASS or FAIL.
+
+  private static final byte PASS = 1;
+  private static final byte FAIL = 2;
+
+  private ValueDictionary[] dictionaries;
+  private byte[][] filterMemo;
+  private String decodedLine;
+  private final ByteCharSequence line = new ByteCharSequence();
   private int groupCount;
-  private BufferedReader reader;
+  private LineScanner reader;
+  private MatchPipeline pipeline;
+  private MatchPipeline.Chunk chunk;
+  private int chunkRow;
+  private ResultCache cache;
+  private ResultCache.Writer cacheWriter;
+  private ResultCache.Reader cacheReader;
+  private int cacheRow;
+  private boolean cacheDone;
+  private boolean eof;
+  private boolean limitReached;
+  private boolean finished;
+  private boolean tailing;
+  private String checkpointKey;
+  private TailCheckpoint checkpoint;
+  private long lastLineStart = -1;
+  private long fileSize;
+  private String fileKey;
+  private TimeIndex timeIndex;
+  private TimeIndex.Builder indexBuilder;
+  private int timeGroup;
+  private FileStatus fileStatus;
+  private Seekable seekIn;
+  private long blockEnd;
+  private boolean pruned;
+  private long splitEnd;
+  private long pos;
   private int rowIndex;
+  private int batchLimit;
+  private long rowCount;
+  private long batchBytes;
+  private BatchSizer sizer;
+  private OperatorStats stats;
+  private CountingInputStream fileIn;
+  private ExecutorService decodeExecutor;
+  private boolean compressed;
+  private long linesPrefiltered;
+  private long rowsFiltered;
+  private long linesRead;
+  private long linesMatched;
+  private long bytesRead;
+  private long bytesDecompressed;
+  private long ioNanos;
+  private long matchNanos;
+  private long writeNanos;
+  private long bytesSkipped;
 
   public RegexRecordReader(FragmentContext context, DrillFileSystem dfs,
       FileWork fileWork, List<SchemaPath> columns, String userName,
       RegexFormatConfig formatConfig) {
+    this.executorState = context.getExecutorState();
     this.dfs = dfs;
     this.fileWork = fileWork;
     this.userName = userName;
     this.formatConfig = formatConfig;
+    this.pushedFilter = RegexScanConfig.filterOf(formatConfig);
+    this.limit = RegexScanConfig.limitOf(formatConfig);
 
     // Ask the superclass to parse the projection list.
 
@@ -107,49 +365,166 @@ public class RegexRecordReader extends AbstractRecordReader {
 
   @Override
   public void setup(OperatorContext context, OutputMutator output) {
+    stats = context.getStats();
+    decodeExecutor = context.getScanDecodeExecutor();
+    batchBytes = context.getOptions().getLong(ExecConstants.OUTPUT_BATCH_SIZE);
     setupPattern();
     setupColumns();
+    setupDictionaries();
+    setupFilter();
+    openIndex();
+    setupPrefilter();
     setupProjection();
-    openFile();
+    countOnly = isSkipQuery();
+    openCache();
+    setupCaptures();
+    if (cacheReader == null && ! pruned) {
+      openFile();
+    }
     defineVectors(output);
+    if (cacheReader == null && ! pruned) {
+      startPipeline(context);
+    }
   }
 
   private void setupPattern() {
 
-    // Compile the pattern
+    // Combine the patterns, if given, into one regex
 
-    try {
-      pattern = Pattern.compile(formatConfig.getRegex());
-    } catch (final PatternSyntaxException e) {
-      throw UserException
-          .validationError(e)
-          .message("Failed to parse regex: \"%s\"", formatConfig.getRegex())
-          .build(logger);
+    if (formatConfig.getPatterns() != null) {
+      setupPatternSet();
+      regex = patterns.regex();
+    } else {
+      regex = formatConfig.getRegex();
     }
 
+    // Compile the pattern
+
+    matchRegex = regex;
+    matcher = newMatcher(formatConfig.getEngine());
+
     // Pattern must contain at least one group
 
-    final Matcher matcher = pattern.matcher("");
     groupCount = matcher.groupCount();
     if (groupCount == 0) {
       throw UserException
         .validationError()
-        .message("Regex contains no groups: \"%s\"", formatConfig.getRegex())
+        .message("Regex contains no groups: \"%s\"", regex)
         .build(logger);
     }
+    byteMatching = isAscii(regex);
+    if (! byteMatching) {
+      logger.debug("Regex contains non-ASCII characters, decoding each line: {}", regex);
+    }
+
+    if (pushedFilter != null) {
+      try {
+        filter = RegexFilter.parse(pushedFilter);
+      } catch (final IllegalArgumentException e) {
+        throw UserException
+            .validationError(e)
+            .message("Failed to parse regex filter: \"%s\"", pushedFilter)
+            .build(logger);
+      }
+    }
+
+  }
+
+  private void setupPatternSet() {
+    if (formatConfig.getRegex() != null || formatConfig.getFields() != null) {
+      throw UserException
+          .validationError()
+          .message("Give either the regex and fields or the patterns, not both")
+          .build(logger);
+    }
+    try {
+      patterns = PatternSet.parse(formatConfig.getPatterns());
+    } catch (final IllegalArgumentException e) {
+      throw UserException
+          .validationError(e)
+          .message("Failed to parse regex patterns: %s", e.getMessage())
+          .addContext("Patterns", formatConfig.getPatterns())
+          .build(logger);
+    }
+    logger.debug("Matching {} patterns as one regex: {}", patterns.size(), patterns.regex());
+  }
+
+  /**
+   * Text that identifies the regex and fields, for the cache and
+   * checkpoint keys.
+   */
+
+  private String patternText() {
+    return patterns == null ? formatConfig.getRegex() : formatConfig.getPatterns();
+  }
+
+  private static LineMatcher compilePattern(String regex, String engine) {
+    if (engine != null && ! engine.equalsIgnoreCase(LineMatcher.JAVA_ENGINE) &&
+        ! engine.equalsIgnoreCase(LineMatcher.RE2J_ENGINE)) {
+      throw UserException
+          .validationError()
+          .message("Unknown regex engine: \"%s\"", engine)
+          .addContext("Supported engines", LineMatcher.JAVA_ENGINE + ", " + LineMatcher.RE2J_ENGINE)
+          .build(logger);
+    }
+    if (engine != null && engine.equalsIgnoreCase(LineMatcher.RE2J_ENGINE)) {
+      try {
+        return new LineMatcher.Re2jMatcher(com.google.re2j.Pattern.compile(regex));
+      } catch (final com.google.re2j.PatternSyntaxException e) {
+
+        // RE2/J rejects back-references, lookaround and the like.
+        // Let java.util.regex try; it reports real syntax errors.
+
+        logger.info("Regex not supported by the {} engine, falling back to {}: {}. Regex: {}",
+            LineMatcher.RE2J_ENGINE, LineMatcher.JAVA_ENGINE, e.getMessage(), regex);
+      }
+    }
+    try {
+      return new LineMatcher.JavaMatcher(Pattern.compile(regex));
+    } catch (final PatternSyntaxException e) {
+      throw UserException
+          .validationError(e)
+          .message("Failed to parse regex: \"%s\"", regex)
+          .build(logger);
+    }
+  }
+
+  private static boolean isAscii(String str) {
+    for (int i = 0; i < str.length(); i++) {
+      if (str.charAt(i) > 0x7F) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private void setupColumns() {
     columnNames = new ArrayList<>();
-    String fieldStr = formatConfig.getFields();
-    if (fieldStr == null) {
-      fieldStr = "";
+    fieldSpecs = new ArrayList<>();
+    if (patterns != null) {
+
+      // Union of the pattern fields, each named. The remaining
+      // groups are the pattern markers.
+
+      for (final FieldSpec field : patterns.fields()) {
+        columnNames.add(field.name());
+        fieldSpecs.add(field);
+      }
+      return;
     }
 
     // Ugly, but must work around DRILL-6169, table functions
     // cannot contain lists.
 
-    final List<String> fields = Splitter.on(Pattern.compile("\\s*,\\s*")).splitToList(fieldStr);
+    final List<FieldSpec> fields;
+    try {
+      fields = FieldSpec.parse(formatConfig.getFields());
+    } catch (final IllegalArgumentException e) {
+      throw UserException
+          .validationError(e)
+          .message("Failed to parse regex fields: \"%s\"", formatConfig.getFields())
+          .build(logger);
+    }
     if (groupCount > fields.size()) {
       logger.warn(
           "Column list has fewer names than the pattern has groups, " +
@@ -174,18 +549,166 @@ public class RegexRecordReader extends AbstractRecordReader {
     // etc.
 
     for (int i = 0; i < fields.size(); i++) {
-      final String colName = fields.get(i);
+      final String colName = fields.get(i).name();
       if (colName.isEmpty()) {
         columnNames.add(String.format("Column$%d", i));
       } else {
         columnNames.add(colName);
       }
+      fieldSpecs.add(fields.get(i));
     }
     for (int i = columnNames.size(); i < groupCount; i++) {
       columnNames.add(String.format("Column$%d", i));
+      fieldSpecs.add(null);
+    }
+  }
+
+  /**
+   * Create a dictionary for each field listed in the dictionary fields,
+   * a comma-delimited list like the fields.
+   */
+
+  private void setupDictionaries() {
+    dictionaries = new ValueDictionary[columnNames.size() + 1];
+    if (formatConfig.getDictFields() == null) {
+      return;
+    }
+    for (final String field : formatConfig.getDictFields().split(",")) {
+      final String name = field.trim();
+      if (name.isEmpty()) {
+        continue;
+      }
+      final int index = columnIndex(name);
+      if (index == -1) {
+        logger.warn("Dictionary field {} is not a regex field, ignored", name);
+      } else if (fieldSpecs.get(index) != null && fieldSpecs.get(index).type() != MinorType.VARCHAR) {
+        logger.warn("Dictionary field {} is not VARCHAR, ignored", name);
+      } else {
+        dictionaries[index + 1] = new ValueDictionary();
+      }
+    }
+  }
+
+  private int columnIndex(String name) {
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (columnNames.get(i).equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void setupFilter() {
+    if (filter != null) {
+
+      // Predicates compare strings, so they apply only to VarChar
+      // columns. (Columns not in the field list are null, and so fail
+      // any predicate.) Others are left to the Filter operator.
+
+      final List<RegexFilter.Predicate> preds = new ArrayList<>();
+      for (final RegexFilter.Predicate pred : filter.predicates()) {
+        if (patterns != null && pred.column().equalsIgnoreCase(PatternSet.PATTERN_COLUMN)) {
+
+          // Not a group; also left to the Filter operator.
+
+          continue;
+        }
+        final FieldSpec spec = fieldSpec(pred.column());
+        if (spec == null || spec.type() == MinorType.VARCHAR) {
+          preds.add(pred);
+        }
+      }
+      filter = preds.isEmpty() ? null : new RegexFilter(preds);
+    }
+    if (filter != null) {
+      filterEvaluator = filter.bind(columnNames);
+      filterMemo = new byte[filterEvaluator.size()][];
+      for (int i = 0; i < filterMemo.length; i++) {
+        if (dictionaries[filterEvaluator.group(i)] != null) {
+          filterMemo[i] = new byte[ValueDictionary.MAX_ENTRIES];
+        }
+      }
+      logger.debug("Filtering rows on: {}", filter);
     }
   }
 
+  /**
+   * Find literals that must appear in every matching line. While
+   * building the time index, every line that matches the regex must be
+   * seen, so the filter's literals are left out.
+   */
+
+  private void setupPrefilter() {
+    final List<String> filterLiterals = filter == null || indexBuilder != null
+        ? Collections.<String>emptyList() : filter.requiredLiterals();
+    prefilter = patterns == null
+        ? LiteralPrefilter.build(regex, filterLiterals)
+        : patterns.prefilter(filterLiterals);
+    if (prefilter != null) {
+      logger.debug("Prefiltering lines on literals {} for regex: {}", prefilter, regex);
+    }
+  }
+
+  /**
+   * Load the file's time index, if the format config names a time
+   * column. With a complete index and a filter on the column, the file
+   * may be skipped outright. Without a complete index, a serial scan
+   * builds its part.
+   */
+
+  private void openIndex() {
+    if (! TimeIndex.isUsable(formatConfig)) {
+      return;
+    }
+    final String column = formatConfig.getTimeColumn();
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (columnNames.get(i).equalsIgnoreCase(column)) {
+        timeGroup = i + 1;
+        break;
+      }
+    }
+    if (timeGroup == 0) {
+      logger.warn("Time index column {} is not a regex field, index not used", column);
+      return;
+    }
+    final Path path = new Path(fileWork.getPath());
+    try {
+      fileStatus = dfs.getFileStatus(path);
+      timeIndex = TimeIndex.load(dfs, path, fileStatus,
+          TimeIndex.id(formatConfig), TimeIndex.blockSize(formatConfig));
+    } catch (final IOException e) {
+      logger.warn("Failed to read the time index of {}", path, e);
+      return;
+    }
+    if (timeIndex == null || ! timeIndex.isComplete()) {
+      timeIndex = null;
+      if (formatConfig.getThreads() <= 0) {
+        indexBuilder = new TimeIndex.Builder(TimeIndex.blockSize(formatConfig));
+      }
+      return;
+    }
+    if (filter == null || ! filter.hasPredicateOn(column)) {
+
+      // Nothing to prune.
+
+      timeIndex = null;
+    } else if (! timeIndex.mayMatch(filter, column)) {
+      logger.debug("Time index shows no rows of {} pass the filter", path);
+      pruned = true;
+      eof = true;
+      bytesSkipped = fileWork.getLength();
+    }
+  }
+
+  private FieldSpec fieldSpec(String name) {
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (columnNames.get(i).equalsIgnoreCase(name)) {
+        return fieldSpecs.get(i);
+      }
+    }
+    return null;
+  }
+
   private void setupProjection() {
     if (isSkipQuery()) {
       projectNone();
@@ -196,17 +719,114 @@ public class RegexRecordReader extends AbstractRecordReader {
     }
   }
 
+  /**
+   * A batch needs at least one vector, so COUNT(*) gets a column that
+   * is never written. The vector's null bits are zeroed when allocated,
+   * so every row is null without a write per row.
+   */
+
   private void projectNone() {
-    columns = new ColumnDefn[] { new ColumnDefn("dummy", -1) };
+    columns = new ColumnDefn[] { new ColumnDefn(-1, new ColumnWriter.IntWriter("dummy")) };
+  }
+
+  /**
+   * Once the projection is known, rewrite the regex so that only the
+   * groups this scan reads still capture: those of projected columns,
+   * of filtered columns and, while building the time index, of the time
+   * column. The engine then does not track positions for the others.
+   * With no columns projected (as for COUNT(*)) and no filter, no group
+   * captures at all, and the reader only counts matching lines.
+   * <p>
+   * The matcher presents the original group numbers (see
+   * {@link LineMatcher.RemappedMatcher}), so the column, filter and
+   * pipeline code need no remapping, and a <tt>SELECT *</tt> with the
+   * same config, which reads every group, simply keeps the regex. A new
+   * cache entry also needs every group.
+   */
+
+  private void setupCaptures() {
+    if (cacheWriter != null) {
+      return;
+    }
+    final boolean keep[] = new boolean[groupCount];
+    for (final ColumnDefn column : columns) {
+      if (column.index >= 0) {
+        keep[column.index] = true;
+      }
+    }
+
+    // The markers of a pattern list tell which pattern matched.
+
+    for (int group = columnNames.size(); group < groupCount; group++) {
+      keep[group] = true;
+    }
+    if (filterEvaluator != null) {
+      for (int i = 0; i < filterEvaluator.size(); i++) {
+        if (filterEvaluator.group(i) != 0) {
+          keep[filterEvaluator.group(i) - 1] = true;
+        }
+      }
+    }
+    if (indexBuilder != null) {
+      keep[timeGroup - 1] = true;
+    }
+    int keepCount = 0;
+    for (final boolean kept : keep) {
+      keepCount += kept ? 1 : 0;
+    }
+    if (keepCount == groupCount) {
+      return;
+    }
+    final boolean regexKeep[] = patterns == null ? keep : patterns.captures(keep);
+    final String rewritten = LineMatcher.withCaptures(regex, regexKeep);
+    if (rewritten == null) {
+      return;
+    }
+    logger.debug("Capturing {} of {} groups, regex: {}", keepCount, groupCount, rewritten);
+    matchRegex = rewritten;
+    captureMap = regexKeep;
+    matcher = newMatcher(matcher.engine());
+  }
+
+  /**
+   * Compile the regex in use, with the group numbers of the original
+   * (or, for a pattern list, of its columns and markers).
+   */
+
+  private LineMatcher newMatcher(String engine) {
+    LineMatcher m = compilePattern(matchRegex, engine);
+    if (captureMap != null) {
+      m = new LineMatcher.RemappedMatcher(m, captureMap);
+    }
+    return patterns == null ? m : patterns.matcher(m);
   }
 
   private void projectAll() {
-    columns = new ColumnDefn[groupCount];
-    for (int i = 0; i < columns.length; i++) {
-      columns[i] = new ColumnDefn(columnNames.get(i), i);
+    final int offset = patterns == null ? 0 : 1;
+    columns = new ColumnDefn[columnNames.size() + offset];
+    if (patterns != null) {
+      columns[0] = patternNameColumn(PatternSet.PATTERN_COLUMN);
+    }
+    for (int i = 0; i < columnNames.size(); i++) {
+      columns[i + offset] = column(columnNames.get(i), i);
     }
   }
 
+  /**
+   * Column of field i, written through its dictionary if it has one.
+   */
+
+  private ColumnDefn column(String name, int index) {
+    if (dictionaries[index + 1] != null) {
+      return new ColumnDefn(index, new ColumnWriter.DictVarCharWriter(name, dictionaries[index + 1]));
+    }
+    return new ColumnDefn(name, index, fieldSpecs.get(index));
+  }
+
+  private ColumnDefn patternNameColumn(String name) {
+    return new ColumnDefn(name, PATTERN_NAME, null);
+  }
+
   private void projectSubset() {
 
     // Ensure the projected columns are only simple columns;
@@ -236,16 +856,114 @@ public class RegexRecordReader extends AbstractRecordReader {
         }
       }
 
+      if (patternIndex == -1 && patterns != null &&
+          name.equalsIgnoreCase(PatternSet.PATTERN_COLUMN)) {
+        columns[colIndex++] = patternNameColumn(name);
+        continue;
+      }
+
       // Create the column. Index of -1 means column will be null.
 
-      columns[colIndex++] = new ColumnDefn(name, patternIndex);
+      columns[colIndex++] = patternIndex == -1
+          ? new ColumnDefn(name, -1, null) : column(name, patternIndex);
+    }
+  }
+
+  /**
+   * Look up the split in the result cache, if enabled. On a miss, save
+   * the groups as the split is read, but only when the scan sees every
+   * matching line with all its groups: with no filter (whose literals
+   * would prefilter lines), no limit, no count-only regex and no
+   * pipeline.
+   */
+
+  private void openCache() {
+    if (formatConfig.getCacheDir() == null || formatConfig.getCheckpointDir() != null || pruned) {
+      return;
+    }
+    final Path path = new Path(fileWork.getPath());
+    String key;
+    try {
+      final FileStatus status = dfs.getFileStatus(path);
+      cache = new ResultCache(formatConfig.getCacheDir(), formatConfig.getCacheSize());
+      key = ResultCache.key(path.toString(), status.getLen(), status.getModificationTime(),
+          fileWork.getStart(), fileWork.getLength(), patternText());
+      cacheReader = cache.open(key);
+    } catch (final IOException e) {
+      logger.warn("Regex result cache unavailable: {}", formatConfig.getCacheDir(), e);
+      cache = null;
+      return;
+    }
+    if (cacheReader != null) {
+      logger.debug("Reading {} from the regex result cache", fileWork.getPath());
+      return;
+    }
+    if (filter == null && limit == 0 && ! countOnly &&
+        formatConfig.getThreads() <= 0) {
+      try {
+        cacheWriter = cache.create(key, groupCount);
+      } catch (final IOException e) {
+        logger.warn("Failed to create regex result cache entry", e);
+      }
     }
   }
 
   private void openFile() {
-    InputStream in;
+    final Path path = new Path(fileWork.getPath());
+    final InputStream in;
     try {
-      in = dfs.open(new Path(fileWork.getPath()));
+      final CompressionCodec codec = new CompressionCodecFactory(dfs.getConf()).getCodec(path);
+      if (codec != null) {
+
+        // Compressed files are not splittable; read the whole stream.
+        // Count the compressed bytes below the decompressor.
+
+        fileIn = new CountingInputStream(dfs.open(path));
+        final BufferedInputStream bufferedIn = new BufferedInputStream(fileIn, LineScanner.DEFAULT_BUFFER_SIZE);
+        if (codec instanceof GzipCodec && BgzfInputStream.isBgzf(bufferedIn)) {
+
+          // BGZF blocks can be inflated in parallel.
+
+          final int threads = formatConfig.getThreads();
+          in = new BgzfInputStream(bufferedIn, decodeExecutor,
+              threads > 0 ? threads : BgzfInputStream.DEFAULT_PARALLELISM);
+          logger.debug("Reading BGZF file: {}", path);
+        } else {
+          in = codec.createInputStream(bufferedIn);
+        }
+        compressed = true;
+        pos = 0;
+        splitEnd = Long.MAX_VALUE;
+        if (formatConfig.getCheckpointDir() != null) {
+          logger.info("Incremental reading does not apply to compressed files, reading all of {}", path);
+        }
+      } else if (formatConfig.getCheckpointDir() != null) {
+
+        // Incremental: the whole file is one split.
+
+        final FSDataInputStream fsIn = dfs.open(path);
+        tailing = true;
+        pos = resumeOffset(path, fsIn);
+        splitEnd = Long.MAX_VALUE;
+        fsIn.seek(pos);
+        fileIn = new CountingInputStream(fsIn);
+        in = fileIn;
+      } else {
+        pos = fileWork.getStart();
+        splitEnd = pos + fileWork.getLength();
+        final MappedInputStream mapped = formatConfig.getMapFiles() ? openMapped(path) : null;
+        if (mapped != null) {
+          mapped.seek(pos);
+          seekIn = mapped;
+          fileIn = new CountingInputStream(mapped);
+        } else {
+          final FSDataInputStream fsIn = dfs.open(path);
+          fsIn.seek(pos);
+          seekIn = fsIn;
+          fileIn = new CountingInputStream(fsIn);
+        }
+        in = fileIn;
+      }
     } catch (final Exception e) {
       throw UserException
         .dataReadError(e)
@@ -253,15 +971,136 @@ public class RegexRecordReader extends AbstractRecordReader {
         .addContext("User name", userName)
         .build(logger);
     }
-    reader = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+    reader = new LineScanner(in);
+
+    // If this split does not start the file, the first line belongs
+    // to the previous split, which reads past its end to finish it.
+
+    if (pos != 0 && ! tailing) {
+      pos += readLine();
+    }
+  }
+
+  /**
+   * Memory-map a file on the local file system (which includes network
+   * mounts), bypassing the Hadoop stream layers.
+   *
+   * @return the stream, or null if the file is not local or cannot
+   * be mapped
+   */
+
+  private MappedInputStream openMapped(Path path) {
+    if (! "file".equals(dfs.getUri().getScheme())) {
+      return null;
+    }
+    try {
+      return new MappedInputStream(Paths.get(path.toUri().getPath()));
+    } catch (final IOException | UnsupportedOperationException e) {
+      logger.debug("Cannot map {}, reading it as a stream", path, e);
+      return null;
+    }
+  }
+
+  /**
+   * Find where an incremental scan starts: just past the lines read by
+   * the last scan, or at the start if there was none or the file has
+   * since been rotated.
+   */
+
+  private long resumeOffset(Path path, FSDataInputStream fsIn) throws IOException {
+    fileSize = dfs.getFileStatus(path).getLen();
+    fileKey = fileKey(path);
+    checkpointKey = TailCheckpoint.key(path.toString(), patternText(),
+        pushedFilter, getColumns().toString());
+    checkpoint = TailCheckpoint.load(formatConfig.getCheckpointDir(), checkpointKey);
+    if (checkpoint == null) {
+      return 0;
+    }
+    if (checkpoint.isValidFor(fileSize, fileKey) && lastLineMatches(fsIn)) {
+      logger.debug("Resuming {} at offset {}", path, checkpoint.offset());
+      return checkpoint.offset();
+    }
+    logger.info("Log file was rotated or rewritten, reading from the start: {}", path);
+    checkpoint = null;
+    return 0;
+  }
+
+  private boolean lastLineMatches(FSDataInputStream fsIn) throws IOException {
+    if (checkpoint.offset() == 0) {
+      return true;
+    }
+    final long len = checkpoint.offset() - checkpoint.lastLineStart();
+    if (len <= 0 || len > Integer.MAX_VALUE) {
+      return false;
+    }
+    final byte[] lastLine = new byte[(int) len];
+    fsIn.readFully(checkpoint.lastLineStart(), lastLine);
+    return TailCheckpoint.hashLine(lastLine, 0, lastLine.length) == checkpoint.lastLineHash();
+  }
+
+  /**
+   * Identity of a local file (device and inode on Unix), to tell a
+   * rotated file from the one in the checkpoint.
+   *
+   * @return the key, or null if the file system does not provide one
+   */
+
+  private String fileKey(Path path) {
+    if (! "file".equals(dfs.getUri().getScheme())) {
+      return null;
+    }
+    try {
+      final Object key = Files.readAttributes(Paths.get(path.toUri().getPath()),
+          BasicFileAttributes.class).fileKey();
+      return key == null ? null : key.toString();
+    } catch (final IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Record where this incremental scan stopped, once it has returned
+   * every row to the end of the file. (A scan cut short by a LIMIT, or
+   * closed early because the query failed or was cancelled, leaves the
+   * old checkpoint, so the next scan returns the remaining rows.)
+   */
+
+  private void saveCheckpoint() {
+    try {
+      long lastStart;
+      long lastHash;
+      if (lastLineStart != -1) {
+        final byte[] lastLine = new byte[(int) (pos - lastLineStart)];
+        try (FSDataInputStream in = dfs.open(new Path(fileWork.getPath()))) {
+          in.readFully(lastLineStart, lastLine);
+        }
+        lastStart = lastLineStart;
+        lastHash = TailCheckpoint.hashLine(lastLine, 0, lastLine.length);
+      } else if (checkpoint != null) {
+
+        // No new lines.
+
+        lastStart = checkpoint.lastLineStart();
+        lastHash = checkpoint.lastLineHash();
+      } else {
+        lastStart = 0;
+        lastHash = 0;
+      }
+      new TailCheckpoint(pos, lastStart, lastHash, fileSize, fileKey)
+          .save(formatConfig.getCheckpointDir(), checkpointKey);
+    } catch (final IOException e) {
+
+      // The rows are already returned; the next scan repeats them.
+
+      logger.warn("Failed to save the incremental read checkpoint for {} in {}",
+          fileWork.getPath(), formatConfig.getCheckpointDir(), e);
+    }
   }
 
   private void defineVectors(OutputMutator output) {
     for (int i = 0; i < columns.length; i++) {
-      final MaterializedField field = MaterializedField.create(columns[i].name,
-          Types.optional(MinorType.VARCHAR));
       try {
-        columns[i].mutator = output.addField(field, NullableVarCharVector.class).getMutator();
+        columns[i].writer.define(output);
       } catch (final SchemaChangeException e) {
         throw UserException
           .systemError(e)
@@ -269,61 +1108,623 @@ public class RegexRecordReader extends AbstractRecordReader {
           .build(logger);
       }
     }
+    final ColumnWriter writers[] = new ColumnWriter[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      writers[i] = columns[i].writer;
+    }
+    sizer = new BatchSizer(batchBytes, writers);
+  }
+
+  /**
+   * In pipelined mode, matching moves to worker threads. Workers match
+   * the line bytes directly, so this mode needs byte matching.
+   */
+
+  private void startPipeline(OperatorContext context) {
+    final int threads = formatConfig.getThreads();
+    if (threads <= 0 || tailing) {
+      return;
+    }
+    if (! byteMatching) {
+      logger.info("Regex contains non-ASCII characters, matching on the fragment thread: {}",
+          regex);
+      return;
+    }
+
+    // One matcher per worker; use the engine the first one settled on.
+
+    final LineMatcher matchers[] = new LineMatcher[threads];
+    matchers[0] = matcher;
+    for (int i = 1; i < threads; i++) {
+      matchers[i] = newMatcher(matcher.engine());
+    }
+    final int queueDepth = formatConfig.getQueueDepth() > 0
+        ? formatConfig.getQueueDepth() : 2 * threads;
+    pipeline = new MatchPipeline(reader, pos, splitEnd, matchers, prefilter,
+        filterEvaluator, groupCount, ! countOnly,
+        context.getScanExecutor(), context.getScanDecodeExecutor(), queueDepth);
+    pipeline.start();
   }
 
   @Override
   public int next() {
     rowIndex = 0;
-    while (nextLine()) { }
+    if (limitReached || pruned) {
+
+      // File already closed on reaching the limit, or never opened.
+
+      return 0;
+    }
+    batchLimit = sizer.rowLimit();
+    if (limit > 0) {
+      batchLimit = (int) Math.min(batchLimit, limit - rowCount);
+    }
+
+    // Replace the scan operator's default allocation with one sized
+    // from the widths seen so far.
+
+    sizer.allocate(batchLimit);
+    if (cacheReader != null) {
+      readCached();
+    } else if (pipeline != null) {
+      readPipelined();
+    } else {
+      final long startNanos = System.nanoTime();
+      final long startIoNanos = reader.readNanos();
+      final long startWriteNanos = writeNanos;
+      while (nextLine()) { }
+      matchNanos += System.nanoTime() - startNanos -
+          (reader.readNanos() - startIoNanos) - (writeNanos - startWriteNanos);
+    }
+    sizer.endBatch(rowIndex);
+    rowCount += rowIndex;
+    if (rowIndex == 0 && eof) {
+      finished = true;
+    }
+    if (limit > 0 && rowCount >= limit) {
+      limitReached = true;
+      closeFile();
+    }
     return rowIndex;
   }
 
   private boolean nextLine() {
-    String line;
+
+    // A line that starts exactly at the split end belongs to this
+    // split; the next split skips it.
+
+    if (pos > splitEnd || (timeIndex != null && pos >= blockEnd && ! skipBlocks())) {
+      eof = true;
+      return false;
+    }
+    final int consumed = readLine();
+    if (consumed == 0) {
+      eof = true;
+      return false;
+    }
+    if (tailing) {
+      if (consumed == reader.lineLength()) {
+
+        // No terminator: the last line may still be being written.
+        // Leave it for the next scan.
+
+        eof = true;
+        return false;
+      }
+      lastLineStart = pos;
+    }
+    final long lineStart = pos;
+    pos += consumed;
+    linesRead++;
+    if (prefilter != null &&
+        ! prefilter.mayMatch(reader.buffer(), reader.lineStart(), reader.lineEnd())) {
+      linesPrefiltered++;
+      return true;
+    }
+
+    // Only an ASCII line reads the same as bytes and as characters.
+
+    matchedBytes = byteMatching && reader.isAscii();
+    if (matchedBytes) {
+      matcher.reset(line.reset(reader.buffer(), reader.lineStart(), reader.lineLength()));
+    } else {
+      decodedLine = new String(reader.buffer(), reader.lineStart(),
+          reader.lineLength(), StandardCharsets.UTF_8);
+      matcher.reset(decodedLine);
+    }
+    if (! matcher.matches()) {
+      return true;
+    }
+    linesMatched++;
+    if (cacheWriter != null) {
+      saveGroups(matcher);
+    }
+    if (indexBuilder != null) {
+      indexTime(matcher, lineStart);
+    }
+    if (filterEvaluator != null && ! passesFilter(matcher)) {
+      rowsFiltered++;
+      return true;
+    }
+    if (countOnly) {
+
+      // The dummy column is already null.
+
+      rowIndex++;
+      return rowIndex < batchLimit;
+    }
+    final long startNanos = System.nanoTime();
+    loadVectors(matcher);
+    writeNanos += System.nanoTime() - startNanos;
+    return rowIndex < batchLimit && ! sizer.isFull(rowIndex);
+  }
+
+  /**
+   * Move past the index blocks, starting with the one holding the next
+   * line, that have no rows to pass the filter. Uncompressed files seek
+   * to the next useful block; compressed files read through the lines
+   * without matching them.
+   *
+   * @return false if no later line of the split can pass
+   */
+
+  private boolean skipBlocks() {
+    final int blockSize = timeIndex.blockSize();
+    final String column = formatConfig.getTimeColumn();
+    while (pos >= blockEnd) {
+      final long block = pos / blockSize;
+      final long next = timeIndex.nextBlock(block, filter, column);
+      if (next == block) {
+        blockEnd = (block + 1) * blockSize;
+        return true;
+      }
+      final long target = next == -1 ? Long.MAX_VALUE : next * blockSize;
+      if (next == -1 || target > splitEnd) {
+        if (seekIn != null) {
+          bytesSkipped += Math.max(0, Math.min(splitEnd, fileStatus.getLen()) - pos);
+        }
+        return false;
+      }
+      final long from = pos;
+      if (seekIn != null) {
+
+        // As at the start of a split: the line holding the byte before
+        // the block belongs to the block before it.
+
+        try {
+          seekIn.seek(target - 1);
+        } catch (final IOException e) {
+          throw UserException
+            .dataReadError(e)
+            .addContext("File", fileWork.getPath())
+            .build(logger);
+        }
+        reader.reset();
+        pos = target - 1;
+      }
+      while (pos < target) {
+        final int consumed = readLine();
+        if (consumed == 0) {
+          return false;
+        }
+        pos += consumed;
+      }
+      bytesSkipped += pos - from;
+      if (pos > splitEnd) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void indexTime(LineMatcher m, long lineStart) {
+    final int start = m.start(timeGroup);
+    if (start == -1) {
+      return;
+    }
+    if (matchedBytes) {
+      indexBuilder.add(lineStart, line.buffer(), line.offset() + start, line.offset() + m.end(timeGroup));
+    } else {
+      final byte[] value = m.group(timeGroup).getBytes(StandardCharsets.UTF_8);
+      indexBuilder.add(lineStart, value, 0, value.length);
+    }
+  }
+
+  /**
+   * Add this split's blocks to the time index. The split covers line
+   * starts up to its end offset, or the whole of a compressed file.
+   */
+
+  private void saveIndex() {
     try {
-      line = reader.readLine();
+      indexBuilder.save(dfs, new Path(fileWork.getPath()), fileStatus, TimeIndex.id(formatConfig),
+          fileWork.getStart(), compressed ? Long.MAX_VALUE : splitEnd);
+    } catch (final IOException e) {
+
+      // The index is an optimization; the next scan tries again.
+
+      logger.warn("Failed to save the time index of {}", fileWork.getPath(), e);
+    }
+  }
+
+  /**
+   * Fill the batch from the rows of the matched chunks, picking up
+   * part way through a chunk if the last batch ended there.
+   */
+
+  private void readPipelined() {
+    for (;;) {
+      if (chunk == null || chunkRow == chunk.rowCount()) {
+        chunk = takeChunk();
+        chunkRow = 0;
+        if (chunk == null) {
+          return;
+        }
+        linesRead += chunk.lineCount();
+        linesPrefiltered += chunk.linesPrefiltered();
+        linesMatched += chunk.linesMatched();
+        rowsFiltered += chunk.rowsFiltered();
+        matchNanos += chunk.matchNanos();
+      }
+      if (countOnly) {
+        final int n = Math.min(chunk.rowCount() - chunkRow, batchLimit - rowIndex);
+        chunkRow += n;
+        rowIndex += n;
+        if (rowIndex == batchLimit) {
+          return;
+        }
+        continue;
+      }
+      final long startNanos = System.nanoTime();
+      boolean full = false;
+      while (chunkRow < chunk.rowCount() && ! full) {
+        loadVectors(chunk, chunkRow++);
+        full = rowIndex == batchLimit || sizer.isFull(rowIndex);
+      }
+      writeNanos += System.nanoTime() - startNanos;
+      if (full) {
+        return;
+      }
+    }
+  }
+
+  private void saveGroups(LineMatcher m) {
+    try {
+      for (int group = 1; group <= groupCount; group++) {
+        final int start = m.start(group);
+        if (start == -1) {
+          cacheWriter.addGroup(null, 0, 0);
+        } else if (matchedBytes) {
+          cacheWriter.addGroup(line.buffer(), line.offset() + start, line.offset() + m.end(group));
+        } else {
+          final byte[] value = m.group(group).getBytes(StandardCharsets.UTF_8);
+          cacheWriter.addGroup(value, 0, value.length);
+        }
+      }
+    } catch (final IOException e) {
+      logger.warn("Failed to write regex result cache entry", e);
+      cacheWriter.abort();
+      cacheWriter = null;
+    }
+  }
+
+  /**
+   * Fill the batch from the result cache. The cache holds all matching
+   * lines, so the filter still applies.
+   */
+
+  private void readCached() {
+    for (;;) {
+      if (cacheRow == cacheReader.rowCount()) {
+        if (cacheDone || ! nextCacheBlock()) {
+          return;
+        }
+      }
+      final int row = cacheRow++;
+      linesMatched++;
+      if (filterEvaluator != null && ! passesFilter(cacheReader, row)) {
+        rowsFiltered++;
+        continue;
+      }
+      if (countOnly) {
+        rowIndex++;
+        if (rowIndex == batchLimit) {
+          return;
+        }
+        continue;
+      }
+      loadVectors(cacheReader, row);
+      if (rowIndex == batchLimit || sizer.isFull(rowIndex)) {
+        return;
+      }
+    }
+  }
+
+  private boolean nextCacheBlock() {
+    try {
+      cacheRow = 0;
+      if (! cacheReader.next()) {
+        cacheDone = true;
+        return false;
+      }
+      return true;
     } catch (final IOException e) {
       throw UserException
         .dataReadError(e)
+        .message("Failed to read regex result cache entry")
         .addContext("File", fileWork.getPath())
+        .addContext("Cache directory", formatConfig.getCacheDir())
         .build(logger);
     }
-    if (line == null) {
-      return false;
+  }
+
+  private boolean passesFilter(ResultCache.Reader source, int row) {
+    for (int i = 0; i < filterEvaluator.size(); i++) {
+      final int group = filterEvaluator.group(i);
+      final int start = group == 0 ? -1 : source.start(group - 1, row);
+      final boolean pass = start == -1
+          ? filterEvaluator.test(i, null, 0, 0)
+          : filterEvaluator.test(i, source.data(group - 1), start, source.end(group - 1, row));
+      if (! pass) {
+        return false;
+      }
     }
-    final Matcher m = pattern.matcher(line);
-    if (m.matches()) {
-      loadVectors(m);
+    return true;
+  }
+
+  private void loadVectors(ResultCache.Reader source, int row) {
+    for (int i = 0; i < columns.length; i++) {
+      final ColumnWriter writer = columns[i].writer;
+      final int group = columns[i].index;
+      if (group == PATTERN_NAME) {
+        int pattern = -1;
+        for (int p = 0; p < patterns.size(); p++) {
+          if (source.start(patterns.markerGroup(p) - 1, row) != -1) {
+            pattern = p;
+            break;
+          }
+        }
+        writePatternName(writer, pattern);
+        continue;
+      }
+      final int start = group == -1 ? -1 : source.start(group, row);
+      if (start == -1) {
+        writer.setNull(rowIndex);
+      } else {
+        writer.write(rowIndex, source.data(group), start, source.end(group, row));
+      }
     }
-    return rowIndex < BATCH_SIZE;
+    rowIndex++;
   }
 
-  private void loadVectors(Matcher m) {
+  private MatchPipeline.Chunk takeChunk() {
+    try {
+      return pipeline.take();
+    } catch (final IOException e) {
+      throw UserException
+        .dataReadError(e)
+        .addContext("File", fileWork.getPath())
+        .build(logger);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw UserException
+        .executionError(e)
+        .message("Interrupted while waiting for regex matches")
+        .addContext("File", fileWork.getPath())
+        .build(logger);
+    }
+  }
+
+  private int readLine() {
+    try {
+      return reader.next();
+    } catch (final IOException e) {
+      throw UserException
+        .dataReadError(e)
+        .addContext("File", fileWork.getPath())
+        .build(logger);
+    }
+  }
+
+  private boolean passesFilter(LineMatcher m) {
+    for (int i = 0; i < filterEvaluator.size(); i++) {
+      final int group = filterEvaluator.group(i);
+      final int start = group == 0 ? -1 : m.start(group);
+      int result = 0;
+      if (start == -1) {
+        result = filterEvaluator.test(i, null, 0, 0) ? PASS : FAIL;
+      } else if (filterMemo[i] != null) {
+        result = testEntry(i, group, start, m.end(group));
+      }
+      if (result == 0) {
+        if (matchedBytes) {
+          result = filterEvaluator.test(i, line.buffer(),
+              line.offset() + start, line.offset() + m.end(group)) ? PASS : FAIL;
+        } else {
+          final byte[] value = m.group(group).getBytes(StandardCharsets.UTF_8);
+          result = filterEvaluator.test(i, value, 0, value.length) ? PASS : FAIL;
+        }
+      }
+      if (result == FAIL) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Test predicate i on a dictionary field, once per distinct value.
+   *
+   * @return PASS or FAIL, or 0 if the value is not in the dictionary
+   */
+
+  private int testEntry(int i, int group, int start, int end) {
+    final ValueDictionary dictionary = dictionaries[group];
+    final int entry = matchedBytes
+        ? dictionary.lookup(line.buffer(), line.offset() + start, line.offset() + end)
+        : dictionary.lookup(decodedLine, start, end);
+    if (entry == -1) {
+      return 0;
+    }
+    if (filterMemo[i][entry] == 0) {
+      final byte[] value = dictionary.value(entry);
+      filterMemo[i][entry] = filterEvaluator.test(i, value, 0, value.length) ? PASS : FAIL;
+    }
+    return filterMemo[i][entry];
+  }
+
+  private void loadVectors(LineMatcher m) {
 
     // Core work: write values into vectors for the current
     // row. If projected by name, some columns may be null.
 
     for (int i = 0; i < columns.length; i++) {
-      final NullableVarCharVector.Mutator mutator = columns[i].mutator;
-      if (columns[i].index == -1) {
+      final ColumnWriter writer = columns[i].writer;
+      if (columns[i].index == PATTERN_NAME) {
+        writePatternName(writer, ((PatternSet.Matcher) m).pattern());
+      } else if (columns[i].index == -1) {
         // Not necessary; included just for clarity
-        mutator.setNull(rowIndex);
+        writer.setNull(rowIndex);
       } else {
-        final String value = m.group(columns[i].index + 1);
-        if (value == null) {
+        final int group = columns[i].index + 1;
+        final int start = m.start(group);
+        if (start == -1) {
           // Not necessary; included just for clarity
-          mutator.setNull(rowIndex);
+          writer.setNull(rowIndex);
+        } else if (matchedBytes) {
+
+          // Group offsets are byte offsets into the line buffer.
+
+          writer.write(rowIndex, line.buffer(), line.offset() + start, line.offset() + m.end(group));
         } else {
-          mutator.set(rowIndex, value.getBytes());
+          writer.write(rowIndex, decodedLine, start, m.end(group));
         }
       }
     }
     rowIndex++;
   }
 
+  private void loadVectors(MatchPipeline.Chunk source, int row) {
+    final int base = row * groupCount;
+    for (int i = 0; i < columns.length; i++) {
+      final ColumnWriter writer = columns[i].writer;
+      if (columns[i].index == PATTERN_NAME) {
+        int pattern = -1;
+        for (int p = 0; p < patterns.size(); p++) {
+          if (source.groupStart(base + patterns.markerGroup(p) - 1) != -1) {
+            pattern = p;
+            break;
+          }
+        }
+        writePatternName(writer, pattern);
+        continue;
+      }
+      final int start = columns[i].index == -1 ? -1 : source.groupStart(base + columns[i].index);
+      if (start == -1) {
+        writer.setNull(rowIndex);
+      } else {
+        writer.write(rowIndex, source.data(), start, source.groupEnd(base + columns[i].index));
+      }
+    }
+    rowIndex++;
+  }
+
+  private void writePatternName(ColumnWriter writer, int pattern) {
+    if (pattern == -1) {
+      writer.setNull(rowIndex);
+    } else {
+      final byte[] name = patterns.nameBytes(pattern);
+      writer.write(rowIndex, name, 0, name.length);
+    }
+  }
+
   @Override
   public void close() {
+    closeFile();
+    closeCache();
+    if (tailing && finished && executorState.shouldContinue()) {
+      saveCheckpoint();
+    }
+    if (indexBuilder != null && eof && cacheReader == null) {
+      saveIndex();
+    }
+    if (stats != null) {
+      final StringBuilder summary = logger.isDebugEnabled() ? new StringBuilder() : null;
+      report(Metric.LINES_PREFILTERED, linesPrefiltered, summary);
+      report(Metric.ROWS_FILTERED, rowsFiltered, summary);
+      report(Metric.LINES_READ, linesRead, summary);
+      report(Metric.LINES_MATCHED, linesMatched, summary);
+      report(Metric.LINES_UNMATCHED, linesRead - linesMatched, summary);
+      report(Metric.BYTES_READ, bytesRead, summary);
+      report(Metric.BYTES_DECOMPRESSED, bytesDecompressed, summary);
+      report(Metric.IO_NANOS, ioNanos, summary);
+      report(Metric.MATCH_NANOS, matchNanos, summary);
+      report(Metric.WRITE_NANOS, writeNanos, summary);
+      report(Metric.CACHE_HITS, cacheReader == null ? 0 : 1, summary);
+      report(Metric.BYTES_SKIPPED, bytesSkipped, summary);
+      if (summary != null) {
+        logger.debug("Regex scan of {}: {}", fileWork.getPath(), summary);
+      }
+    }
+  }
+
+  /**
+   * Set a metric in the operator profile and, if given a summary, add
+   * it there by name.
+   */
+
+  private void report(Metric metric, long value, StringBuilder summary) {
+    stats.setLongStat(metric, value);
+    if (summary != null) {
+      summary.append(summary.length() == 0 ? "" : ", ")
+          .append(metric.name()).append('=').append(value);
+    }
+  }
+
+  /**
+   * Keep a new cache entry only if the whole split was read.
+   */
+
+  private void closeCache() {
+    if (cacheWriter != null) {
+      if (eof) {
+        try {
+          cacheWriter.commit();
+          cache.evict();
+        } catch (final IOException e) {
+          logger.warn("Failed to save regex result cache entry", e);
+          cacheWriter.abort();
+        }
+      } else {
+        cacheWriter.abort();
+      }
+      cacheWriter = null;
+    }
+    if (cacheReader != null) {
+      try {
+        cacheReader.close();
+      } catch (final IOException e) {
+        logger.warn("Error when closing regex result cache entry", e);
+      }
+    }
+  }
+
+  private void closeFile() {
+    if (pipeline != null) {
+
+      // Stop the read-ahead before closing the stream under it.
+
+      pipeline.close();
+      pipeline = null;
+      chunk = null;
+    }
     if (reader != null) {
+
+      // Collect the I/O counts before releasing the reader.
+
+      bytesRead = fileIn.getCount();
+      bytesDecompressed = compressed ? reader.bytesRead() : 0;
+      ioNanos = reader.readNanos();
       try {
         reader.close();
       } catch (final IOException e) {
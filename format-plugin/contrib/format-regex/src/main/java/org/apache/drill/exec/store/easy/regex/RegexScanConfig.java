@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+/**
+ * Regex format config with the state the planner pushes into a scan:
+ * the filter (see {@link RegexFilter} for the syntax) and the limit on
+ * rows per reader (0 means none). Created only by the
+ * {@link RegexScanRule}s, so that a user's {@link RegexFormatConfig},
+ * which has no such properties, cannot truncate or filter every scan.
+ */
+
+@JsonTypeName("regex-scan")
+@JsonInclude(Include.NON_DEFAULT)
+public class RegexScanConfig extends RegexFormatConfig {
+
+  public String filter;
+  public int limit;
+
+  public String getFilter() { return filter; }
+  public int getLimit() { return limit; }
+
+  /**
+   * Create a scan config from the config of a scan, keeping anything
+   * already pushed into it.
+   */
+
+  public static RegexScanConfig of(RegexFormatConfig config) {
+    final RegexScanConfig scanConfig = new RegexScanConfig();
+    config.copyTo(scanConfig);
+    if (config instanceof RegexScanConfig) {
+      scanConfig.filter = ((RegexScanConfig) config).filter;
+      scanConfig.limit = ((RegexScanConfig) config).limit;
+    }
+    return scanConfig;
+  }
+
+  /**
+   * @return the pushed filter of a config, or null if none
+   */
+
+  public static String filterOf(RegexFormatConfig config) {
+    return config instanceof RegexScanConfig ? ((RegexScanConfig) config).filter : null;
+  }
+
+  /**
+   * @return the pushed limit of a config, or 0 if none
+   */
+
+  public static int limitOf(RegexFormatConfig config) {
+    return config instanceof RegexScanConfig ? ((RegexScanConfig) config).limit : 0;
+  }
+
+  @Override
+  public RegexScanConfig copy() {
+    return of(this);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (! super.equals(obj)) {
+      return false;
+    }
+    final RegexScanConfig other = (RegexScanConfig) obj;
+    return Objects.equals(filter, other.filter) &&
+           limit == other.limit;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * super.hashCode() + Objects.hash(filter, limit);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.calcite.plan.RelOptRuleOperand;
+import org.apache.drill.common.exceptions.DrillRuntimeException;
+import org.apache.drill.common.exceptions.ExecutionSetupException;
+import org.apache.drill.exec.physical.base.GroupScan;
+import org.apache.drill.exec.planner.physical.ScanPrel;
+import org.apache.drill.exec.store.StoragePluginOptimizerRule;
+import org.apache.drill.exec.store.dfs.FileSelection;
+import org.apache.drill.exec.store.dfs.easy.EasyGroupScan;
+
+/**
+ * Base for planner rules that push work into a regex scan. The pushed
+ * state travels to the readers as properties of a {@link RegexScanConfig}
+ * derived from the scan's format config, the same way table function
+ * options do, so the standard Easy group and sub scans can be used
+ * unchanged.
+ */
+
+public abstract class RegexScanRule extends StoragePluginOptimizerRule {
+
+  public RegexScanRule(RelOptRuleOperand operand, String description) {
+    super(operand, description);
+  }
+
+  /**
+   * @return the regex format config of the scan, or null if the scan
+   * is not a regex scan
+   */
+
+  protected static RegexFormatConfig regexConfig(GroupScan groupScan) {
+    if (! (groupScan instanceof EasyGroupScan)) {
+      return null;
+    }
+    final EasyGroupScan easyScan = (EasyGroupScan) groupScan;
+    if (! (easyScan.getFormatPlugin() instanceof RegexFormatPlugin)) {
+      return null;
+    }
+    return ((RegexFormatPlugin) easyScan.getFormatPlugin()).getConfig();
+  }
+
+  /**
+   * Create a copy of a regex scan that uses the given config.
+   */
+
+  protected static ScanPrel withConfig(ScanPrel scan, RegexFormatConfig newConfig) {
+    return withConfig(scan, newConfig, ((EasyGroupScan) scan.getGroupScan()).getFiles());
+  }
+
+  /**
+   * Create a copy of a regex scan that uses the given config and
+   * reads only the given files.
+   */
+
+  protected static ScanPrel withConfig(ScanPrel scan, RegexFormatConfig newConfig,
+      List<String> files) {
+    final EasyGroupScan groupScan = (EasyGroupScan) scan.getGroupScan();
+    final RegexFormatPlugin plugin = (RegexFormatPlugin) groupScan.getFormatPlugin();
+    GroupScan newGroupScan;
+    try {
+      newGroupScan = plugin.withConfig(newConfig).getGroupScan(
+          groupScan.getUserName(),
+          FileSelection.create(null, files, groupScan.getSelectionRoot()),
+          groupScan.getColumns());
+    } catch (final ExecutionSetupException | IOException e) {
+      throw new DrillRuntimeException("Failed to rewrite regex scan", e);
+    }
+    return new ScanPrel(scan.getCluster(), scan.getTraitSet(),
+        newGroupScan, scan.getRowType(), scan.getTable());
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * A local directory of parsed regex results, so that repeated scans of
+ * the same immutable log files skip the regex.
+ * <p>
+ * Each entry holds the captured groups of every matching line of one
+ * file split, in a simple block-columnar layout:<pre><code>
+ * magic "RXC1", group count
+ * blocks: row count, then for each group:
+ *         row count value lengths (-1 for null), the value bytes
+ * a row count of 0 to end
+ * </code></pre>
+ * The entry holds raw group bytes rather than typed values, so the same
+ * entry serves any projection, field list or filter; the reader passes
+ * the bytes through the usual column writers and filter.
+ * <p>
+ * Entries are keyed by a hash of the file path, size, modification time,
+ * split range and regex, so a changed file or regex simply misses. A new
+ * entry is written to a temporary file and renamed into place when
+ * complete. When the directory grows past its size limit, the least
+ * recently used entries are removed; a hit touches the entry's
+ * modification time to mark its use.
+ */
+
+public class ResultCache {
+
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ResultCache.class);
+
+  public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+
+  private static final int MAGIC = 0x52584331; // "RXC1"
+  private static final String SUFFIX = ".rxc";
+  private static final int BLOCK_ROWS = 4096;
+
+  private final Path dir;
+  private final long maxBytes;
+
+  public ResultCache(String dir, long maxBytes) {
+    this.dir = Paths.get(dir);
+    this.maxBytes = maxBytes > 0 ? maxBytes : DEFAULT_MAX_BYTES;
+  }
+
+  /**
+   * Build the key of a file split's entry.
+   */
+
+  public static String key(String path, long size, long modTime,
+      long start, long length, String regex) {
+    final String id = String.join("\u0000", path, Long.toString(size),
+        Long.toString(modTime), Long.toString(start), Long.toString(length), regex);
+    return Hashing.sha256().hashString(id, StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * Open the entry for a key.
+   *
+   * @return a reader for the entry, or null if there is no entry
+   */
+
+  public Reader open(String key) throws IOException {
+    final Path file = dir.resolve(key + SUFFIX);
+    final DataInputStream in;
+    try {
+      in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+    } catch (final NoSuchFileException e) {
+      return null;
+    }
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a regex cache file: " + file);
+      }
+      final Reader reader = new Reader(in, in.readInt());
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return reader;
+    } catch (final IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Start a new entry.
+   */
+
+  public Writer create(String key, int groupCount) throws IOException {
+    Files.createDirectories(dir);
+    final Path temp = Files.createTempFile(dir, key, ".tmp");
+    return new Writer(temp, dir.resolve(key + SUFFIX), groupCount);
+  }
+
+  /**
+   * Remove least recently used entries until the directory fits its
+   * size limit. Other drillbits or fragments may be doing the same,
+   * so files that have already gone are skipped.
+   */
+
+  public void evict() {
+    final List<Path> files = new ArrayList<>();
+    final List<BasicFileAttributes> attrs = new ArrayList<>();
+    long total = 0;
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+      for (final Path file : entries) {
+        try {
+          final BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+          files.add(file);
+          attrs.add(attr);
+          total += attr.size();
+        } catch (final NoSuchFileException e) {
+          // Removed by someone else
+        }
+      }
+    } catch (final IOException e) {
+      logger.warn("Failed to list regex cache directory: {}", dir, e);
+      return;
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    final Integer order[] = new Integer[files.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return attrs.get(a).lastModifiedTime().compareTo(attrs.get(b).lastModifiedTime());
+      }
+    });
+    for (int i = 0; i < order.length && total > maxBytes; i++) {
+      try {
+        Files.deleteIfExists(files.get(order[i]));
+        total -= attrs.get(order[i]).size();
+      } catch (final IOException e) {
+        logger.warn("Failed to remove regex cache entry: {}", files.get(order[i]), e);
+      }
+    }
+  }
+
+  /**
+   * Writes the groups of each matching line, buffering a block of
+   * rows in memory.
+   */
+
+  public static class Writer {
+    private final Path temp;
+    private final Path target;
+    private final DataOutputStream out;
+    private final int groupCount;
+    private final int[][] lengths;
+    private final byte[][] data;
+    private final int[] dataLengths;
+    private final ByteBuffer lengthBuf = ByteBuffer.allocate(BLOCK_ROWS * 4);
+    private int rowCount;
+    private int group;
+
+    private Writer(Path temp, Path target, int groupCount) throws IOException {
+      this.temp = temp;
+      this.target = target;
+      this.groupCount = groupCount;
+      out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+      out.writeInt(MAGIC);
+      out.writeInt(groupCount);
+      lengths = new int[groupCount][BLOCK_ROWS];
+      data = new byte[groupCount][BLOCK_ROWS * 16];
+      dataLengths = new int[groupCount];
+    }
+
+    /**
+     * Add the next group of the current row.
+     *
+     * @param buf buffer holding the value, or null for a group that
+     * did not participate in the match
+     */
+
+    public void addGroup(byte[] buf, int start, int end) throws IOException {
+      if (buf == null) {
+        lengths[group][rowCount] = -1;
+      } else {
+        final int len = end - start;
+        if (dataLengths[group] + len > data[group].length) {
+          data[group] = Arrays.copyOf(data[group],
+              Math.max(data[group].length * 2, dataLengths[group] + len));
+        }
+        System.arraycopy(buf, start, data[group], dataLengths[group], len);
+        dataLengths[group] += len;
+        lengths[group][rowCount] = len;
+      }
+      if (++group == groupCount) {
+        group = 0;
+        if (++rowCount == BLOCK_ROWS) {
+          flush();
+        }
+      }
+    }
+
+    private void flush() throws IOException {
+      if (rowCount == 0) {
+        return;
+      }
+      out.writeInt(rowCount);
+      for (int g = 0; g < groupCount; g++) {
+        lengthBuf.clear();
+        for (int r = 0; r < rowCount; r++) {
+          lengthBuf.putInt(lengths[g][r]);
+        }
+        out.write(lengthBuf.array(), 0, lengthBuf.position());
+        out.write(data[g], 0, dataLengths[g]);
+        dataLengths[g] = 0;
+      }
+      rowCount = 0;
+    }
+
+    /**
+     * Finish the entry and move it into place.
+     */
+
+    public void commit() throws IOException {
+      flush();
+      out.writeInt(0);
+      out.close();
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Discard a partial entry.
+     */
+
+    public void abort() {
+      try {
+        out.close();
+        Files.deleteIfExists(temp);
+      } catch (final IOException e) {
+        logger.warn("Failed to remove partial regex cache entry: {}", temp, e);
+      }
+    }
+  }
+
+  /**
+   * Reads an entry a block at a time. Within a block, the value of
+   * group g for row r is <tt>data(g)[start(g, r), end(g, r))</tt>, with
+   * a start of -1 for null.
+   */
+
+  public static class Reader {
+    private final DataInputStream in;
+    private final int groupCount;
+    private final int[][] starts;
+    private final int[][] ends;
+    private final byte[][] data;
+    private byte[] lengthBytes = new byte[0];
+    private int rowCount;
+
+    private Reader(DataInputStream in, int groupCount) {
+      this.in = in;
+      this.groupCount = groupCount;
+      starts = new int[groupCount][0];
+      ends = new int[groupCount][0];
+      data = new byte[groupCount][0];
+    }
+
+    public int groupCount() { return groupCount; }
+
+    /**
+     * Load the next block.
+     *
+     * @return false at the end of the entry
+     */
+
+    public boolean next() throws IOException {
+      rowCount = in.readInt();
+      if (rowCount == 0) {
+        return false;
+      }
+      if (lengthBytes.length < rowCount * 4) {
+        lengthBytes = new byte[rowCount * 4];
+      }
+      final ByteBuffer lengthBuf = ByteBuffer.wrap(lengthBytes);
+      for (int g = 0; g < groupCount; g++) {
+        if (starts[g].length < rowCount) {
+          starts[g] = new int[rowCount];
+          ends[g] = new int[rowCount];
+        }
+        try {
+          in.readFully(lengthBytes, 0, rowCount * 4);
+        } catch (final EOFException e) {
+          throw new IOException("Truncated regex cache entry", e);
+        }
+        int offset = 0;
+        for (int r = 0; r < rowCount; r++) {
+          final int len = lengthBuf.getInt(r * 4);
+          if (len == -1) {
+            starts[g][r] = ends[g][r] = -1;
+          } else {
+            starts[g][r] = offset;
+            offset += len;
+            ends[g][r] = offset;
+          }
+        }
+        if (data[g].length < offset) {
+          data[g] = new byte[offset];
+        }
+        try {
+          in.readFully(data[g], 0, offset);
+        } catch (final EOFException e) {
+          throw new IOException("Truncated regex cache entry", e);
+        }
+      }
+      return true;
+    }
+
+    public int rowCount() { return rowCount; }
+    public byte[] data(int group) { return data[group]; }
+    public int start(int group, int row) { return starts[group][row]; }
+    public int end(int group, int row) { return ends[group][row]; }
+
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Where the last incremental scan of a growing log file stopped.
+ * <p>
+ * The checkpoint records the offset just past the last complete line
+ * read, with the start and a hash of that line, the file size, and the
+ * file's identity (its inode, where the file system exposes one). A
+ * later scan resumes at the offset only if the file still looks like
+ * the same file: it is no smaller, has the same identity, and still has
+ * the same last line at the same place. Otherwise the file has been
+ * rotated or rewritten, and the scan starts again from the beginning.
+ * <p>
+ * Checkpoints are small properties files in a local directory, one per
+ * file and consumer (see {@link #key}), written by rename so a reader
+ * never sees a partial one.
+ * <p>
+ * Delivery is at most once. A scan saves its checkpoint when it has read
+ * to the end of the file and its fragment has not failed or been
+ * cancelled, but a query can still fail after that, downstream of the
+ * scan, and the rows it read are then not returned again. A scan that
+ * fails first, or is cut short by a LIMIT, leaves the old checkpoint.
+ */
+
+public class TailCheckpoint {
+
+  private static final String SUFFIX = ".checkpoint";
+
+  private final long offset;
+  private final long lastLineStart;
+  private final long lastLineHash;
+  private final long size;
+  private final String fileKey;
+
+  public TailCheckpoint(long offset, long lastLineStart, long lastLineHash,
+      long size, String fileKey) {
+    this.offset = offset;
+    this.lastLineStart = lastLineStart;
+    this.lastLineHash = lastLineHash;
+    this.size = size;
+    this.fileKey = fileKey;
+  }
+
+  public long offset() { return offset; }
+  public long lastLineStart() { return lastLineStart; }
+  public long lastLineHash() { return lastLineHash; }
+  public long size() { return size; }
+  public String fileKey() { return fileKey; }
+
+  /**
+   * Key for the checkpoint of a file scanned with a regex, a pushed-down
+   * filter (or null) and a projection. Each combination is a separate
+   * consumer of the file with its own checkpoint, so that, for example,
+   * a scan filtered to errors does not consume the lines an unfiltered
+   * scan has yet to see.
+   */
+
+  public static String key(String path, String regex, String filter, String columns) {
+    final String text = path + "\u0000" + regex + "\u0000" +
+        (filter == null ? "" : filter) + "\u0000" + columns;
+    return Hashing.sha256().hashString(text, StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * Hash of a line, including its terminator.
+   */
+
+  public static long hashLine(byte[] buf, int start, int end) {
+    final CRC32 crc = new CRC32();
+    crc.update(buf, start, end - start);
+    return crc.getValue() ^ ((long) (end - start) << 32);
+  }
+
+  /**
+   * @return true if the file, as now seen, can still be the file
+   * this checkpoint was taken from
+   */
+
+  public boolean isValidFor(long newSize, String newFileKey) {
+    return newSize >= offset && Objects.equals(fileKey, newFileKey);
+  }
+
+  public static TailCheckpoint load(String dir, String key) throws IOException {
+    final Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(Paths.get(dir, key + SUFFIX))) {
+      props.load(in);
+    } catch (final NoSuchFileException e) {
+      return null;
+    }
+    try {
+      return new TailCheckpoint(
+          Long.parseLong(props.getProperty("offset")),
+          Long.parseLong(props.getProperty("lastLineStart")),
+          Long.parseLong(props.getProperty("lastLineHash")),
+          Long.parseLong(props.getProperty("size")),
+          props.getProperty("fileKey"));
+    } catch (final NumberFormatException | NullPointerException e) {
+      throw new IOException("Invalid checkpoint: " + Paths.get(dir, key + SUFFIX), e);
+    }
+  }
+
+  public void save(String dir, String key) throws IOException {
+    final Properties props = new Properties();
+    props.setProperty("offset", Long.toString(offset));
+    props.setProperty("lastLineStart", Long.toString(lastLineStart));
+    props.setProperty("lastLineHash", Long.toString(lastLineHash));
+    props.setProperty("size", Long.toString(size));
+    if (fileKey != null) {
+      props.setProperty("fileKey", fileKey);
+    }
+    final Path dirPath = Paths.get(dir);
+    Files.createDirectories(dirPath);
+    final Path temp = Files.createTempFile(dirPath, key, ".tmp");
+    try (OutputStream out = Files.newOutputStream(temp)) {
+      props.store(out, "Regex tail checkpoint");
+    }
+    Files.move(temp, dirPath.resolve(key + SUFFIX),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
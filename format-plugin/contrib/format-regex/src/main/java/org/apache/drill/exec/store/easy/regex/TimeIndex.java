@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.drill.common.types.TypeProtos.MinorType;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Sidecar index of the range of a time column in a log file, used to
+ * skip data that a time filter would reject anyway.
+ * <p>
+ * The file is divided into fixed-size byte blocks. A line belongs to the
+ * block holding its first byte. For each block with matching lines, the
+ * index keeps the least and greatest captured value of the time column,
+ * compared as bytes, the same way {@link RegexFilter} compares. This
+ * suits the sortable text timestamps most logs use, such as
+ * <tt>2017-12-17 10:52:41</tt>. Blocks with no value are not in the
+ * index: no row from them can pass a filter on the column.
+ * <p>
+ * The index is a hidden file next to the log, <tt>.name.rxi</tt>, so it
+ * is visible to the planner and to every drillbit, and is skipped by
+ * directory scans. It is built lazily: each reader that reads its whole
+ * split records the blocks it saw and merges them into the sidecar, with
+ * the range of line starts it covered. The index is used only once those
+ * ranges cover the whole file. It is valid only for the file size,
+ * modification time, regex, fields and block size it was built with; any
+ * change makes it stale, and the next scan rebuilds it.
+ * <p>
+ * Two readers that save at the same moment may lose one's part; the next
+ * scan finds the index incomplete and adds it again.
+ */
+
+public class TimeIndex {
+
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TimeIndex.class);
+
+  public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+  private static final int MAGIC = 0x52584931; // "RXI1"
+  private static final String SUFFIX = ".rxi";
+
+  private final long modTime;
+  private final long size;
+  private final String id;
+  private final int blockSize;
+
+  // Ranges of line starts covered, as {start, end} pairs.
+
+  private final List<long[]> ranges;
+
+  // Block number to {min, max}.
+
+  private final TreeMap<Long, byte[][]> blocks;
+
+  private TimeIndex(long modTime, long size, String id, int blockSize,
+      List<long[]> ranges, TreeMap<Long, byte[][]> blocks) {
+    this.modTime = modTime;
+    this.size = size;
+    this.id = id;
+    this.blockSize = blockSize;
+    this.ranges = ranges;
+    this.blocks = blocks;
+  }
+
+  /**
+   * Identifies the regex and column an index was built for.
+   */
+
+  public static String id(RegexFormatConfig config) {
+    String text = String.join("\u0000", config.getRegex(),
+        config.getFields() == null ? "" : config.getFields(), config.getTimeColumn());
+    if (config.getPatterns() != null) {
+      text += "\u0000" + config.getPatterns();
+    }
+    return Hashing.sha256().hashString(text, StandardCharsets.UTF_8).toString();
+  }
+
+  public static int blockSize(RegexFormatConfig config) {
+    return config.getIndexBlockSize() > 0 ? config.getIndexBlockSize() : DEFAULT_BLOCK_SIZE;
+  }
+
+  /**
+   * Check whether a config can use an index: it names a time column,
+   * is not tailing, and does not give the column a type other than
+   * VARCHAR (whose text order is not the order of the typed values).
+   */
+
+  public static boolean isUsable(RegexFormatConfig config) {
+    if (config.getTimeColumn() == null || config.getCheckpointDir() != null) {
+      return false;
+    }
+    try {
+      final List<FieldSpec> fields = config.getPatterns() == null
+          ? FieldSpec.parse(config.getFields()) : PatternSet.parse(config.getPatterns()).fields();
+      for (final FieldSpec spec : fields) {
+        if (spec.name().equalsIgnoreCase(config.getTimeColumn())) {
+          return spec.type() == MinorType.VARCHAR;
+        }
+      }
+    } catch (final IllegalArgumentException e) {
+      return false;
+    }
+    return true;
+  }
+
+  public static Path sidecar(Path file) {
+    return new Path(file.getParent(), "." + file.getName() + SUFFIX);
+  }
+
+  /**
+   * Load the index of a file.
+   *
+   * @return the index, or null if there is none or it is stale
+   */
+
+  public static TimeIndex load(FileSystem fs, Path file, FileStatus status,
+      String id, int blockSize) throws IOException {
+    final TimeIndex index;
+    try (DataInputStream in = fs.open(sidecar(file))) {
+      index = read(in);
+    } catch (final FileNotFoundException e) {
+      return null;
+    }
+    if (index.modTime != status.getModificationTime() || index.size != status.getLen() ||
+        ! index.id.equals(id) || index.blockSize != blockSize) {
+      logger.debug("Time index of {} is stale", file);
+      return null;
+    }
+    return index;
+  }
+
+  private static TimeIndex read(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a regex time index");
+    }
+    final long modTime = in.readLong();
+    final long size = in.readLong();
+    final String id = in.readUTF();
+    final int blockSize = in.readInt();
+    final int rangeCount = in.readInt();
+    final List<long[]> ranges = new ArrayList<>(rangeCount);
+    for (int i = 0; i < rangeCount; i++) {
+      ranges.add(new long[] {in.readLong(), in.readLong()});
+    }
+    final int blockCount = in.readInt();
+    final TreeMap<Long, byte[][]> blocks = new TreeMap<>();
+    for (int i = 0; i < blockCount; i++) {
+      final long block = in.readLong();
+      blocks.put(block, new byte[][] {readBytes(in), readBytes(in)});
+    }
+    return new TimeIndex(modTime, size, id, blockSize, ranges, blocks);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    final byte[] value = new byte[in.readInt()];
+    in.readFully(value);
+    return value;
+  }
+
+  private void write(DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeLong(modTime);
+    out.writeLong(size);
+    out.writeUTF(id);
+    out.writeInt(blockSize);
+    out.writeInt(ranges.size());
+    for (final long[] range : ranges) {
+      out.writeLong(range[0]);
+      out.writeLong(range[1]);
+    }
+    out.writeInt(blocks.size());
+    for (final Map.Entry<Long, byte[][]> entry : blocks.entrySet()) {
+      out.writeLong(entry.getKey());
+      for (final byte[] value : entry.getValue()) {
+        out.writeInt(value.length);
+        out.write(value);
+      }
+    }
+  }
+
+  public int blockSize() { return blockSize; }
+
+  /**
+   * @return true if the index covers every line of the file
+   */
+
+  public boolean isComplete() {
+    final List<long[]> sorted = new ArrayList<>(ranges);
+    Collections.sort(sorted, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] a, long[] b) {
+        return Long.compare(a[0], b[0]);
+      }
+    });
+    long covered = 0;
+    for (final long[] range : sorted) {
+      if (range[0] > covered) {
+        return false;
+      }
+      covered = Math.max(covered, range[1]);
+    }
+    return covered >= size;
+  }
+
+  /**
+   * @return true if any row of the file may pass the filter's
+   * predicates on the column
+   */
+
+  public boolean mayMatch(RegexFilter filter, String column) {
+    return nextBlock(0, filter, column) != -1;
+  }
+
+  /**
+   * Find the first block, starting with the given one, with rows that
+   * may pass the filter's predicates on the column.
+   *
+   * @return the block number, or -1 if there is none
+   */
+
+  public long nextBlock(long from, RegexFilter filter, String column) {
+    for (final Map.Entry<Long, byte[][]> entry : blocks.tailMap(from).entrySet()) {
+      if (filter.mayMatchRange(column, entry.getValue()[0], entry.getValue()[1])) {
+        return entry.getKey();
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Collects the block ranges seen by one reader. Lines must be added
+   * in file order.
+   */
+
+  public static class Builder {
+    private final int blockSize;
+    private final TreeMap<Long, byte[][]> blocks = new TreeMap<>();
+    private long block = -1;
+    private byte[] min = new byte[64];
+    private int minLength;
+    private byte[] max = new byte[64];
+    private int maxLength;
+
+    public Builder(int blockSize) {
+      this.blockSize = blockSize;
+    }
+
+    /**
+     * Add the time value of a matching line.
+     *
+     * @param lineStart file offset of the line
+     */
+
+    public void add(long lineStart, byte[] buf, int start, int end) {
+      final long lineBlock = lineStart / blockSize;
+      if (lineBlock != block) {
+        flush();
+        block = lineBlock;
+        min = copy(min, buf, start, end);
+        minLength = end - start;
+        max = copy(max, buf, start, end);
+        maxLength = end - start;
+      } else if (compare(buf, start, end, min, minLength) < 0) {
+        min = copy(min, buf, start, end);
+        minLength = end - start;
+      } else if (compare(buf, start, end, max, maxLength) > 0) {
+        max = copy(max, buf, start, end);
+        maxLength = end - start;
+      }
+    }
+
+    private static byte[] copy(byte[] dest, byte[] buf, int start, int end) {
+      if (dest.length < end - start) {
+        dest = new byte[Math.max(dest.length * 2, end - start)];
+      }
+      System.arraycopy(buf, start, dest, 0, end - start);
+      return dest;
+    }
+
+    private void flush() {
+      if (block != -1) {
+        blocks.put(block, new byte[][] {
+            Arrays.copyOf(min, minLength), Arrays.copyOf(max, maxLength)});
+      }
+    }
+
+    /**
+     * Merge the blocks seen into the file's index.
+     *
+     * @param start offset of the first line start covered
+     * @param end offset of the last line start covered
+     */
+
+    public void save(FileSystem fs, Path file, FileStatus status, String id,
+        long start, long end) throws IOException {
+      flush();
+      block = -1;
+      TimeIndex index;
+      try {
+        index = load(fs, file, status, id, blockSize);
+      } catch (final IOException e) {
+        logger.debug("Replacing unreadable time index of {}", file, e);
+        index = null;
+      }
+      if (index == null) {
+        index = new TimeIndex(status.getModificationTime(), status.getLen(), id,
+            blockSize, new ArrayList<long[]>(), new TreeMap<Long, byte[][]>());
+      }
+      index.ranges.add(new long[] {start, end});
+      for (final Map.Entry<Long, byte[][]> entry : blocks.entrySet()) {
+        final byte[][] old = index.blocks.get(entry.getKey());
+        final byte[][] range = entry.getValue();
+        if (old == null) {
+          index.blocks.put(entry.getKey(), range);
+        } else {
+          index.blocks.put(entry.getKey(), new byte[][] {
+            compare(range[0], range[0].length, old[0]) < 0 ? range[0] : old[0],
+            compare(range[1], range[1].length, old[1]) > 0 ? range[1] : old[1]});
+        }
+      }
+
+      // Write aside, then replace. Not every file system can rename
+      // over an existing file.
+
+      final Path target = sidecar(file);
+      final Path temp = new Path(file.getParent(),
+          "." + file.getName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+      try (DataOutputStream out = fs.create(temp, true)) {
+        index.write(out);
+      }
+      fs.delete(target, false);
+      if (! fs.rename(temp, target)) {
+        fs.delete(temp, false);
+        throw new IOException("Failed to rename " + temp + " to " + target);
+      }
+    }
+  }
+
+  private static int compare(byte[] value, int length, byte[] other) {
+    return compare(value, 0, length, other, other.length);
+  }
+
+  /**
+   * Unsigned lexicographic comparison, as in {@link RegexFilter}.
+   */
+
+  private static int compare(byte[] buf, int start, int end, byte[] other, int otherLength) {
+    final int len = Math.min(end - start, otherLength);
+    for (int i = 0; i < len; i++) {
+      final int cmp = (buf[start + i] & 0xFF) - (other[i] & 0xFF);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return (end - start) - otherLength;
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Distinct values of a low-cardinality column, such as a log level or
+ * thread name, each interned once as its UTF-8 bytes and numbered in
+ * order of arrival. A value can be looked up either as a range of bytes
+ * of a line matched as bytes, or as a range of characters of a decoded
+ * line; both find the same entry, without creating a string or byte
+ * array for a value already present.
+ * <p>
+ * The reader keeps one per field listed in the format config's
+ * dictFields, and uses the entry numbers to test a pushed-down filter
+ * once per distinct value (see {@link RegexRecordReader}).
+ * <p>
+ * The dictionary is an open-addressing hash table, bounded so that a
+ * column with more distinct values than expected cannot use unbounded
+ * memory: once full, or for long values, lookups of new values return
+ * -1 and the caller handles the value itself.
+ */
+
+public class ValueDictionary {
+
+  public static final int MAX_ENTRIES = 1024;
+  public static final int MAX_VALUE_LENGTH = 256;
+
+  // Table slots hold an entry number plus one, 0 when empty.
+
+  private int[] slots = new int[64];
+  private int[] hashes = new int[32];
+  private byte[][] values = new byte[32][];
+  private String[] keys = new String[32];
+  private int size;
+
+  /**
+   * Find the entry of the value in <tt>buf[start, end)</tt>, adding
+   * the value if it is new and there is room.
+   *
+   * @return the entry number, or -1 if the value is not in the
+   * dictionary
+   */
+
+  public int lookup(byte[] buf, int start, int end) {
+    if (end - start > MAX_VALUE_LENGTH) {
+      return -1;
+    }
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + (buf[i] & 0xFF);
+    }
+    final int mask = slots.length - 1;
+    int slot = mix(hash) & mask;
+    for (int entry; (entry = slots[slot] - 1) != -1; slot = (slot + 1) & mask) {
+      if (hashes[entry] == hash && regionEquals(values[entry], buf, start, end)) {
+        return entry;
+      }
+    }
+    if (size == MAX_ENTRIES) {
+      return -1;
+    }
+    final byte[] value = new byte[end - start];
+    System.arraycopy(buf, start, value, 0, value.length);
+
+    // Bytes that are not valid UTF-8 have no characters to match.
+
+    final String key = new String(value, StandardCharsets.UTF_8);
+    return add(slot, hash, value,
+        Arrays.equals(key.getBytes(StandardCharsets.UTF_8), value) ? key : null);
+  }
+
+  /**
+   * Find the entry of the value in <tt>chars[start, end)</tt>, adding
+   * the value if it is new and there is room.
+   *
+   * @return the entry number, or -1 if the value is not in the
+   * dictionary
+   */
+
+  public int lookup(CharSequence chars, int start, int end) {
+    if (end - start > MAX_VALUE_LENGTH) {
+      return -1;
+    }
+    final int hash = utf8Hash(chars, start, end);
+    final int mask = slots.length - 1;
+    int slot = mix(hash) & mask;
+    for (int entry; (entry = slots[slot] - 1) != -1; slot = (slot + 1) & mask) {
+      if (hashes[entry] == hash && regionEquals(keys[entry], chars, start, end)) {
+        return entry;
+      }
+    }
+    if (size == MAX_ENTRIES) {
+      return -1;
+    }
+    final String key = chars.subSequence(start, end).toString();
+    return add(slot, hash, key.getBytes(StandardCharsets.UTF_8), key);
+  }
+
+  /**
+   * @return the UTF-8 bytes of an entry, shared by every lookup of
+   * the value
+   */
+
+  public byte[] value(int entry) { return values[entry]; }
+
+  public int size() { return size; }
+
+  private int add(int slot, int hash, byte[] value, String key) {
+    if (size == values.length) {
+      hashes = Arrays.copyOf(hashes, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+      keys = Arrays.copyOf(keys, size * 2);
+    }
+    final int entry = size++;
+    hashes[entry] = hash;
+    values[entry] = value;
+    keys[entry] = key;
+    slots[slot] = entry + 1;
+    if (size * 2 > slots.length) {
+      rehash();
+    }
+    return entry;
+  }
+
+  /**
+   * Hash of the UTF-8 encoding of the characters, the same as the byte
+   * lookup computes from the bytes, without encoding them. As in
+   * <tt>String.getBytes()</tt>, an unpaired surrogate encodes as '?'.
+   */
+
+  private static int utf8Hash(CharSequence chars, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      final char c = chars.charAt(i);
+      if (c < 0x80) {
+        hash = 31 * hash + c;
+      } else if (c < 0x800) {
+        hash = 31 * hash + (0xC0 | c >> 6);
+        hash = 31 * hash + (0x80 | c & 0x3F);
+      } else if (! Character.isSurrogate(c)) {
+        hash = 31 * hash + (0xE0 | c >> 12);
+        hash = 31 * hash + (0x80 | c >> 6 & 0x3F);
+        hash = 31 * hash + (0x80 | c & 0x3F);
+      } else if (Character.isHighSurrogate(c) && i + 1 < end &&
+          Character.isLowSurrogate(chars.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, chars.charAt(++i));
+        hash = 31 * hash + (0xF0 | cp >> 18);
+        hash = 31 * hash + (0x80 | cp >> 12 & 0x3F);
+        hash = 31 * hash + (0x80 | cp >> 6 & 0x3F);
+        hash = 31 * hash + (0x80 | cp & 0x3F);
+      } else {
+        hash = 31 * hash + '?';
+      }
+    }
+    return hash;
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean regionEquals(byte[] value, byte[] buf, int start, int end) {
+    if (value.length != end - start) {
+      return false;
+    }
+    for (int i = 0; i < value.length; i++) {
+      if (value[i] != buf[start + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean regionEquals(String key, CharSequence chars, int start, int end) {
+    if (key == null || key.length() != end - start) {
+      return false;
+    }
+    for (int i = 0; i < key.length(); i++) {
+      if (key.charAt(i) != chars.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    final int mask = slots.length - 1;
+    for (int entry = 0; entry < size; entry++) {
+      int slot = mix(hashes[entry]) & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = entry + 1;
+    }
+  }
+}
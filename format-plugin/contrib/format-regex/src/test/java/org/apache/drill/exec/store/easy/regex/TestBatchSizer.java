@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.Test;
+
+public class TestBatchSizer extends DrillTest {
+
+  /**
+   * VarChar writer that records sizes rather than writing to a vector.
+   */
+
+  private static class MockVarCharWriter extends ColumnWriter.VarCharWriter {
+    private int allocated;
+    private int written;
+
+    public MockVarCharWriter(String name) {
+      super(name);
+    }
+
+    @Override
+    public void allocate(int rowCount, int dataBytes) {
+      allocated = dataBytes;
+      written = 0;
+    }
+
+    @Override
+    public void write(int row, byte[] buf, int start, int end) {
+      written += end - start;
+    }
+
+    @Override
+    public int dataBytes() { return written; }
+  }
+
+  @Test
+  public void testSizing() {
+    final MockVarCharWriter writer = new MockVarCharWriter("a");
+    final BatchSizer sizer = new BatchSizer(10_000, new ColumnWriter[] { writer });
+
+    // Before any data, assume the default width.
+
+    assertEquals(10_000 / (BatchSizer.DEFAULT_WIDTH + 5), sizer.rowLimit());
+
+    // A batch of 1000-byte values shrinks the batch.
+
+    sizer.allocate(sizer.rowLimit());
+    final byte[] value = new byte[1000];
+    int rows = 0;
+    while (! sizer.isFull(rows)) {
+      writer.write(rows++, value, 0, value.length);
+    }
+    assertEquals(10, rows);
+    sizer.endBatch(rows);
+    assertEquals(1000, sizer.averageWidth(0), 0);
+    assertEquals(10_000 / 1005, sizer.rowLimit());
+
+    // Pre-allocation covers a batch of average rows.
+
+    sizer.allocate(sizer.rowLimit());
+    assertTrue(writer.allocated >= 9 * 1000);
+    assertFalse(sizer.isFull(0));
+  }
+
+  @Test
+  public void testNarrowRows() {
+
+    // With no data columns (as for COUNT(*)), the batch is capped
+    // by the row limit, not the budget.
+
+    final BatchSizer sizer = new BatchSizer(16 * 1024 * 1024,
+        new ColumnWriter[] { new ColumnWriter.IntWriter("n") });
+    assertEquals(BatchSizer.MAX_ROWS, sizer.rowLimit());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestBgzf extends DrillTest {
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void setup() {
+    executor = Executors.newFixedThreadPool(3);
+  }
+
+  @AfterClass
+  public static void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private static byte[] sampleData() {
+    final StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < 50_000; i++) {
+      buf.append("2017-12-17 10:52:41,820 [main] INFO line ").append(i).append('\n');
+    }
+    return buf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (OutputStream gzipOut = new GZIPOutputStream(out)) {
+      gzipOut.write(data);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buf = new byte[10_000];
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      out.write(buf, 0, n);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final byte[] data = sampleData();
+    final ByteArrayOutputStream bgzf = new ByteArrayOutputStream();
+    assertEquals(data.length, GzipToBgzf.convert(new ByteArrayInputStream(gzip(data)), bgzf));
+
+    // Several blocks, read back in order.
+
+    final BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(bgzf.toByteArray()));
+    assertTrue(BgzfInputStream.isBgzf(in));
+    assertArrayEquals(data, readAll(new BgzfInputStream(in, executor, 2)));
+
+    // BGZF is still gzip.
+
+    assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(bgzf.toByteArray()))));
+  }
+
+  @Test
+  public void testPlainGzip() throws IOException {
+    final BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(gzip(sampleData())));
+    assertFalse(BgzfInputStream.isBgzf(in));
+
+    // The check leaves the stream at the start.
+
+    assertEquals(0x1F, in.read());
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    final ByteArrayOutputStream bgzf = new ByteArrayOutputStream();
+    new BgzfOutputStream(bgzf).close();
+    final BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(bgzf.toByteArray()));
+    assertTrue(BgzfInputStream.isBgzf(in));
+    assertEquals(-1, new BgzfInputStream(in, executor, 2).read());
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.drill.common.types.TypeProtos.MinorType;
+import org.apache.drill.test.DrillTest;
+import org.junit.Test;
+
+public class TestFieldSpec extends DrillTest {
+
+  @Test
+  public void testParse() {
+    final List<FieldSpec> specs = FieldSpec.parse(
+        "ts:TIMESTAMP:yyyy-MM-dd HH:mm:ss,SSS, bytes:BIGINT,level , d:date");
+    assertEquals(4, specs.size());
+    assertEquals("ts", specs.get(0).name());
+    assertEquals(MinorType.TIMESTAMP, specs.get(0).type());
+    assertEquals("yyyy-MM-dd HH:mm:ss,SSS", specs.get(0).format());
+    assertEquals(MinorType.BIGINT, specs.get(1).type());
+    assertEquals("level", specs.get(2).name());
+    assertEquals(MinorType.VARCHAR, specs.get(2).type());
+    assertEquals(FieldSpec.DEFAULT_DATE_FORMAT, specs.get(3).format());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadType() {
+    FieldSpec.parse("a:BLOB");
+  }
+
+  @Test
+  public void testDateParser() {
+    final ByteDateParser parser = new ByteDateParser("yyyy-MM-dd HH:mm:ss,SSS");
+    assertTrue(parser.isDirect());
+    assertEquals(1513682047278L, parseTimestamp(parser, "2017-12-19 11:14:07,278"));
+    assertEquals(ByteDateParser.INVALID, parseTimestamp(parser, "2017-02-29 11:14:07,278"));
+    assertEquals(ByteDateParser.INVALID, parseTimestamp(parser, "2017-12-19 11:14:07"));
+
+    // Month names need DateTimeFormatter.
+
+    final ByteDateParser named = new ByteDateParser("dd/MMM/yyyy:HH:mm:ss");
+    assertFalse(named.isDirect());
+    assertEquals(971185336000L, parseTimestamp(named, "10/Oct/2000:13:42:16"));
+
+    // An offset moves the time to UTC.
+
+    final ByteDateParser offset = new ByteDateParser("dd/MMM/yyyy:HH:mm:ss Z");
+    assertEquals(971185336000L + 7 * 3600 * 1000, parseTimestamp(offset, "10/Oct/2000:13:42:16 -0700"));
+    assertEquals(971185336000L, parseTimestamp(offset, "10/Oct/2000:13:42:16 +0000"));
+    assertEquals(971185336000L - 3600 * 1000, parseTimestamp(offset, "10/Oct/2000:13:42:16 +0100"));
+  }
+
+  @Test
+  public void testNumbers() {
+    assertEquals(-1234L, ColumnWriter.parseLong(bytes("-1234"), 0, 5));
+    assertEquals(ColumnWriter.INVALID_LONG, ColumnWriter.parseLong(bytes("-"), 0, 1));
+    assertEquals(ColumnWriter.INVALID_LONG, ColumnWriter.parseLong(bytes("9223372036854775808"), 0, 19));
+    assertEquals(12.75, ColumnWriter.parseDouble(bytes("12.75"), 0, 5), 0);
+    assertEquals(0.1, ColumnWriter.parseDouble(bytes("0.1"), 0, 3), 0);
+    assertEquals(1.5e10, ColumnWriter.parseDouble(bytes("1.5e10"), 0, 6), 0);
+    assertTrue(Double.isNaN(ColumnWriter.parseDouble(bytes("n/a"), 0, 3)));
+
+    // A sign or point needs at least one digit; zeros count.
+
+    assertTrue(Double.isNaN(ColumnWriter.parseDouble(bytes("+"), 0, 1)));
+    assertTrue(Double.isNaN(ColumnWriter.parseDouble(bytes("-"), 0, 1)));
+    assertTrue(Double.isNaN(ColumnWriter.parseDouble(bytes("+."), 0, 2)));
+    assertEquals(0.0, ColumnWriter.parseDouble(bytes("+0"), 0, 2), 0);
+    assertEquals(-0.5, ColumnWriter.parseDouble(bytes("-.5"), 0, 3), 0);
+    assertEquals(0.0, ColumnWriter.parseDouble(bytes("0.00"), 0, 4), 0);
+  }
+
+  private static long parseTimestamp(ByteDateParser parser, String value) {
+    final byte[] buf = bytes(value);
+    return parser.parseTimestamp(buf, 0, buf.length);
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
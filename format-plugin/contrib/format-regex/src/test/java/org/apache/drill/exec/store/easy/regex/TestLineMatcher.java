@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.Test;
+
+public class TestLineMatcher extends DrillTest {
+
+  @Test
+  public void testWithoutCaptures() {
+    assertEquals("(?:\\d+)-(?:\\w+)", LineMatcher.withoutCaptures("(\\d+)-(\\w+)"));
+    assertEquals("a(?:b)c", LineMatcher.withoutCaptures("a(?<x>b)c"));
+    assertEquals("(?i)(?<=a)(?:b)", LineMatcher.withoutCaptures("(?i)(?<=a)(b)"));
+
+    // Parentheses in classes and quoted text are literals.
+
+    assertEquals("[]()](?:a)", LineMatcher.withoutCaptures("[]()](a)"));
+    assertEquals("\\Q(a)\\E(?:b)", LineMatcher.withoutCaptures("\\Q(a)\\E(b)"));
+    assertEquals("\\((?:a)\\)", LineMatcher.withoutCaptures("\\((a)\\)"));
+
+    // Back-references and comment mode are not rewritten.
+
+    assertNull(LineMatcher.withoutCaptures("(a)\\1"));
+    assertNull(LineMatcher.withoutCaptures("(?x)(a) # ("));
+  }
+
+  @Test
+  public void testWithCaptures() {
+    final boolean keep[] = {false, true, false, true};
+    assertEquals("(?:a)(b)(?:c)(?<d>d)",
+        LineMatcher.withCaptures("(a)(b)(?<c>c)(?<d>d)", keep));
+    assertEquals("((?:b))(?:c)", LineMatcher.withCaptures("((b))(c)", new boolean[] {true}));
+    assertNull(LineMatcher.withCaptures("(a)(b)\\2", keep));
+  }
+
+  @Test
+  public void testRemappedMatcher() {
+    final String regex = "(\\d+)-(\\w+)-(\\w+)";
+    final boolean keep[] = {false, true, true};
+    final LineMatcher m = new LineMatcher.RemappedMatcher(new LineMatcher.JavaMatcher(
+        Pattern.compile(LineMatcher.withCaptures(regex, keep))), keep);
+    assertTrue(m.reset("12-ab-cd").matches());
+    assertEquals(3, m.groupCount());
+    assertEquals(-1, m.start(1));
+    assertNull(m.group(1));
+    assertEquals(3, m.start(2));
+    assertEquals(5, m.end(2));
+    assertEquals("cd", m.group(3));
+    assertEquals("12-ab-cd", m.group(0));
+  }
+}
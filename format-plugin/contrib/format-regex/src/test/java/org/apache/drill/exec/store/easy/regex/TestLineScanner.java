@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.Test;
+
+public class TestLineScanner extends DrillTest {
+
+  private static List<String> scan(String input, int bufferSize) throws IOException {
+    final byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+    final LineScanner scanner = new LineScanner(new ByteArrayInputStream(bytes), bufferSize);
+    final List<String> lines = new ArrayList<>();
+    int total = 0;
+    int n;
+    while ((n = scanner.next()) > 0) {
+      total += n;
+      lines.add(new String(scanner.buffer(), scanner.lineStart(),
+          scanner.lineLength(), StandardCharsets.UTF_8));
+    }
+    assertEquals(bytes.length, total);
+    scanner.close();
+    return lines;
+  }
+
+  @Test
+  public void testTerminators() throws IOException {
+    final String input = "first\nsecond\r\nthird\rlast";
+    final List<String> expected = new ArrayList<>();
+    expected.add("first");
+    expected.add("second");
+    expected.add("third");
+    expected.add("last");
+    assertEquals(expected, scan(input, LineScanner.DEFAULT_BUFFER_SIZE));
+
+    // Small buffer forces refills, including between "\r" and "\n".
+
+    assertEquals(expected, scan(input, 16));
+  }
+
+  @Test
+  public void testEmptyLines() throws IOException {
+    assertEquals(0, scan("", 16).size());
+    assertEquals(2, scan("\n\n", 16).size());
+    assertEquals(1, scan("x\r", 16).size());
+  }
+
+  @Test
+  public void testLongLine() throws IOException {
+    final StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      buf.append("0123456789");
+    }
+    final String longLine = buf.toString();
+    final List<String> lines = scan("short\n" + longLine + "\nend", 16);
+    assertEquals(3, lines.size());
+    assertEquals(longLine, lines.get(1));
+    assertEquals("end", lines.get(2));
+  }
+
+  @Test
+  public void testAscii() throws IOException {
+    final byte[] bytes = ("plain\r\ncaf\u00e9\n" +
+        "0123456789abcdef\u00c5\nplain again\n\u00e9").getBytes(StandardCharsets.UTF_8);
+
+    // Small buffer, so the non-ASCII byte of the third line comes
+    // after a refill.
+
+    final LineScanner scanner = new LineScanner(new ByteArrayInputStream(bytes), 16);
+    final boolean expected[] = {true, false, false, true, false};
+    for (final boolean ascii : expected) {
+      assertTrue(scanner.next() > 0);
+      assertEquals(ascii, scanner.isAscii());
+    }
+    assertEquals(0, scanner.next());
+    assertTrue(scanner.isAscii());
+    scanner.close();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.Test;
+
+public class TestLiteralPrefilter extends DrillTest {
+
+  @Test
+  public void testRequiredLiterals() {
+    assertEquals(Arrays.asList(" [main] ", " - "),
+        LiteralPrefilter.requiredLiterals("(\\d+) \\[main\\] (\\w+) - (.*)"));
+    assertEquals(Arrays.asList(" ERROR "),
+        LiteralPrefilter.requiredLiterals("(.*) ERROR (.*)"));
+
+    // Optional and repeated atoms end a literal run.
+
+    assertEquals(Arrays.asList("ab", "c", "ef", "gh ", "x"),
+        LiteralPrefilter.requiredLiterals("ab+cd?ef{2}gh (x)"));
+
+    // Optional groups and alternation contribute nothing.
+
+    assertEquals(Arrays.asList("foo ", " baz"),
+        LiteralPrefilter.requiredLiterals("(foo (bar)?)+ baz"));
+    assertEquals(Arrays.asList(" foo"),
+        LiteralPrefilter.requiredLiterals("(a|b) foo"));
+    assertTrue(LiteralPrefilter.requiredLiterals("abc|def").isEmpty());
+
+    // Flags and quoting disable the prefilter.
+
+    assertNull(LiteralPrefilter.requiredLiterals("(?i)ERROR (.*)"));
+    assertNull(LiteralPrefilter.requiredLiterals("\\Qa.b\\E(.*)"));
+  }
+
+  @Test
+  public void testMayMatch() {
+    final LiteralPrefilter prefilter = LiteralPrefilter.build("(\\d+) \\[main\\] (\\w+) - (.*)");
+    assertTrue(mayMatch(prefilter, "12 [main] INFO - started"));
+    assertFalse(mayMatch(prefilter, "12 [worker] INFO - started"));
+    assertFalse(mayMatch(prefilter, "12 [main] INFO: started"));
+    assertFalse(mayMatch(prefilter, ""));
+
+    // No literals of useful length.
+
+    assertNull(LiteralPrefilter.build("(\\d+)-(\\d+)"));
+  }
+
+  @Test
+  public void testBuildAny() {
+    final LiteralPrefilter prefilter = LiteralPrefilter.buildAny(
+        Arrays.asList("(\\S+) GET (\\d+)", "\\[(\\S+)\\] GC pause (\\S+)"),
+        Arrays.<String>asList());
+    assertTrue(mayMatch(prefilter, "10.0.0.1 GET 200"));
+    assertTrue(mayMatch(prefilter, "[10:01] GC pause 12ms"));
+    assertFalse(mayMatch(prefilter, "10.0.0.1 PUT 200"));
+
+    // Extra literals are required whichever pattern matches.
+
+    final LiteralPrefilter withExtra = LiteralPrefilter.buildAny(
+        Arrays.asList("(\\S+) GET (\\d+)", "\\[(\\S+)\\] GC pause (\\S+)"),
+        Arrays.asList("10:01"));
+    assertTrue(mayMatch(withExtra, "[10:01] GC pause 12ms"));
+    assertFalse(mayMatch(withExtra, "[10:02] GC pause 12ms"));
+
+    // A pattern without literals can match any line.
+
+    assertNull(LiteralPrefilter.buildAny(Arrays.asList("(\\S+) GET (\\d+)", "(.*)"),
+        Arrays.<String>asList()));
+  }
+
+  private static boolean mayMatch(LiteralPrefilter prefilter, String line) {
+
+    // Offset the line within the buffer to check range handling.
+
+    final byte[] buf = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+    return prefilter.mayMatch(buf, 2, buf.length - 2);
+  }
+}
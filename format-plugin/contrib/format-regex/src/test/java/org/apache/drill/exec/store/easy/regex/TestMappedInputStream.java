@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestMappedInputStream extends DrillTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File writeFile(int size) throws IOException {
+    final byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) i;
+    }
+    final File file = folder.newFile();
+    Files.write(file.toPath(), data);
+    return file;
+  }
+
+  private static byte[] readAll(MappedInputStream in, int chunk) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buf = new byte[chunk];
+    int n;
+    while ((n = in.read(buf, 0, buf.length)) != -1) {
+      out.write(buf, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testReadAcrossWindows() throws IOException {
+    final File file = writeFile(1000);
+    final byte[] expected = Files.readAllBytes(file.toPath());
+    try (MappedInputStream in = new MappedInputStream(file.toPath(), 64)) {
+      assertArrayEquals(expected, readAll(in, 100));
+      assertEquals(-1, in.read());
+      assertEquals(1000, in.getPos());
+    }
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    final File file = writeFile(1000);
+    try (MappedInputStream in = new MappedInputStream(file.toPath(), 64)) {
+      in.seek(900);
+      assertEquals(900 & 0xFF, in.read());
+      in.seek(10);
+      assertEquals(10, in.read());
+      assertEquals(100, in.skip(100));
+      assertEquals(111, in.read());
+      in.seek(1000);
+      assertEquals(-1, in.read());
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void testSeekPastEnd() throws IOException {
+    try (MappedInputStream in = new MappedInputStream(writeFile(10).toPath())) {
+      in.seek(11);
+    }
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    final MappedInputStream in = new MappedInputStream(writeFile(1000).toPath(), 64);
+    assertEquals(0, in.read());
+    in.close();
+    in.close();
+    try {
+      in.read();
+      fail();
+    } catch (final IOException e) {
+      assertEquals("Stream closed", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    try (MappedInputStream in = new MappedInputStream(writeFile(0).toPath())) {
+      assertEquals(-1, in.read());
+    }
+  }
+}
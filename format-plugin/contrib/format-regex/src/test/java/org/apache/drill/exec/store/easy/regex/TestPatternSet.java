@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.regex.Pattern;
+
+import org.apache.drill.common.types.TypeProtos.MinorType;
+import org.apache.drill.test.DrillTest;
+import org.junit.Test;
+
+public class TestPatternSet extends DrillTest {
+
+  private static final String PATTERNS =
+      "access | ip, ts, status:INT | (\\S+) \\[([^\\]]+)\\] GET (\\d+)\n" +
+      "\n" +
+      "gc | ts, pause | \\[(\\S+)\\] GC pause (\\S+)ms\n" +
+      "other | | (.*)";
+
+  @Test
+  public void testParse() {
+    final PatternSet patterns = PatternSet.parse(PATTERNS);
+    assertEquals(3, patterns.size());
+    assertEquals("gc", patterns.name(1));
+    assertEquals("\\[(\\S+)\\] GC pause (\\S+)ms", patterns.regex(1));
+
+    // Shared fields are one column; unnamed groups get the usual names.
+
+    assertEquals("[ip:VARCHAR, ts:VARCHAR, status:INT, pause:VARCHAR, Column$0:VARCHAR]",
+        patterns.fields().toString());
+    assertEquals(5 + 3, patterns.groupCount());
+    assertEquals(7, patterns.markerGroup(1));
+  }
+
+  @Test
+  public void testMatch() {
+    final PatternSet patterns = PatternSet.parse(PATTERNS);
+    final LineMatcher m = patterns.matcher(
+        new LineMatcher.JavaMatcher(Pattern.compile(patterns.regex())));
+
+    assertTrue(m.reset("10.0.0.1 [10:00] GET 200").matches());
+    assertEquals(0, ((PatternSet.Matcher) m).pattern());
+    assertEquals("10.0.0.1", m.group(1));
+    assertEquals("10:00", m.group(2));
+    assertEquals("200", m.group(3));
+    assertNull(m.group(4));
+    assertEquals(0, m.start(patterns.markerGroup(0)));
+    assertEquals(-1, m.start(patterns.markerGroup(1)));
+
+    assertTrue(m.reset("[10:01] GC pause 12ms").matches());
+    assertEquals(1, ((PatternSet.Matcher) m).pattern());
+    assertNull(m.group(1));
+    assertEquals("10:01", m.group(2));
+    assertEquals("12", m.group(4));
+    assertEquals(-1, m.start(patterns.markerGroup(0)));
+
+    // The first pattern that matches wins.
+
+    assertTrue(m.reset("[10:01] GC pause soon").matches());
+    assertEquals(2, ((PatternSet.Matcher) m).pattern());
+    assertEquals("[10:01] GC pause soon", m.group(5));
+  }
+
+  @Test
+  public void testCaptures() {
+    final PatternSet patterns = PatternSet.parse(PATTERNS);
+
+    // Keep only the pause column: its group and the markers capture.
+
+    final boolean keep[] = new boolean[patterns.groupCount()];
+    keep[3] = true;
+    final boolean regexKeep[] = patterns.captures(keep);
+    final String regex = LineMatcher.withCaptures(patterns.regex(), regexKeep);
+    assertEquals(4, Pattern.compile(regex).matcher("").groupCount());
+    final LineMatcher m = patterns.matcher(new LineMatcher.RemappedMatcher(
+        new LineMatcher.JavaMatcher(Pattern.compile(regex)), regexKeep));
+    assertTrue(m.reset("[10:01] GC pause 12ms").matches());
+    assertEquals(1, ((PatternSet.Matcher) m).pattern());
+    assertEquals("12", m.group(4));
+    assertNull(m.group(2));
+  }
+
+  @Test
+  public void testErrors() {
+    assertParseFails("access | (\\S+)");   // missing a separator
+    assertParseFails("access | ip | ");
+    assertParseFails("a | x | (\\S+)\nA | y | (\\S+)");
+    assertParseFails("a | x:INT | (\\d+)\nb | x | (\\S+)");
+    assertParseFails("a | x | (\\S+) \\1");
+    assertParseFails("a | pattern_name | (\\S+)");
+    assertParseFails("a | x | ([a-z)");
+    assertParseFails("\n\n");
+  }
+
+  private static void assertParseFails(String text) {
+    try {
+      PatternSet.parse(text);
+      fail("Parsed: " + text);
+    } catch (final IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testTypes() {
+    final PatternSet patterns = PatternSet.parse(
+        "a | n:BIGINT, ts:TIMESTAMP:yyyy-MM-dd | (\\d+) (\\S+)\n" +
+        "b | ts:TIMESTAMP:yyyy-MM-dd | x (\\S+)");
+    assertEquals(MinorType.BIGINT, patterns.fields().get(0).type());
+    assertEquals(2, patterns.fields().size());
+    assertFalse(patterns.regex().isEmpty());
+  }
+}
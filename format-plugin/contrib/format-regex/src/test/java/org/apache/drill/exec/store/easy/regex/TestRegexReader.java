@@ -18,8 +18,24 @@
 package org.apache.drill.exec.store.easy.regex;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.drill.common.exceptions.ExecutionSetupException;
+import org.apache.drill.common.logical.FormatPluginConfig;
 import org.apache.drill.common.types.TypeProtos.MinorType;
 import org.apache.drill.exec.record.BatchSchema;
 import org.apache.drill.exec.record.metadata.TupleMetadata;
@@ -33,11 +49,15 @@ import org.apache.drill.test.ClusterFixture;
 import org.apache.drill.test.ClusterTest;
 import org.apache.drill.test.LogFixture;
 import org.apache.drill.test.LogFixture.LogFixtureBuilder;
+import org.apache.drill.test.QueryBuilder.QuerySummary;
 import org.apache.drill.test.rowSet.RowSet;
 import org.apache.drill.test.rowSet.RowSetBuilder;
 import org.apache.drill.test.rowSet.RowSetComparison;
 import org.apache.drill.test.rowSet.RowSetUtilities;
 import org.apache.drill.test.rowSet.schema.SchemaBuilder;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
@@ -48,6 +68,40 @@ public class TestRegexReader extends ClusterTest {
 
   public static final String DATE_ONLY_PATTERN = "(\\d\\d\\d\\d)-(\\d\\d)-(\\d\\d) .*";
 
+  private static final int SPLIT_BLOCK_SIZE = 1024 * 1024;
+
+  /**
+   * The local file system reports a file as one block, so Drill never
+   * splits it. This one, under the <tt>splitfs</tt> scheme, reports
+   * blocks of <tt>fs.local.block.size</tt>, so a scan gets one reader
+   * per block.
+   */
+
+  public static class SplitFileSystem extends RawLocalFileSystem {
+    private static final URI NAME = URI.create("splitfs:///");
+    private static volatile int maxBlocks;
+
+    @Override
+    public URI getUri() { return NAME; }
+
+    @Override
+    public String getScheme() { return NAME.getScheme(); }
+
+    @Override
+    public BlockLocation[] getFileBlockLocations(FileStatus file, long start, long len) {
+      final long blockSize = getConf().getLong("fs.local.block.size", SPLIT_BLOCK_SIZE);
+      final int count = (int) Math.max(1, (file.getLen() + blockSize - 1) / blockSize);
+      final BlockLocation blocks[] = new BlockLocation[count];
+      for (int i = 0; i < count; i++) {
+        final long offset = i * blockSize;
+        blocks[i] = new BlockLocation(new String[] {"localhost:50010"}, new String[] {"localhost"},
+            offset, Math.min(blockSize, file.getLen() - offset));
+      }
+      maxBlocks = Math.max(maxBlocks, count);
+      return blocks;
+    }
+  }
+
   @ClassRule
   public static final BaseDirTestWatcher dirTestWatcher = new BaseDirTestWatcher();
 
@@ -91,6 +145,24 @@ public class TestRegexReader extends ClusterTest {
     pluginConfig.getFormats().put("sample", sampleConfig);
     pluginConfig.getFormats().put("drill-log", logConfig);
     pluginRegistry.createOrUpdate("cp", pluginConfig, false);
+
+    // The test root, through a file system that splits files into
+    // small blocks.
+
+    final RegexFormatConfig splitConfig = new RegexFormatConfig();
+    splitConfig.extension = "log7";
+    splitConfig.regex = "(\\d+) (.*)";
+    splitConfig.fields = "n:INT, msg";
+    final Map<String, FormatPluginConfig> formats = new HashMap<>();
+    formats.put("split", splitConfig);
+    final Map<String, String> fsProps = new HashMap<>();
+    fsProps.put("fs.splitfs.impl", SplitFileSystem.class.getName());
+    fsProps.put("fs.local.block.size", Integer.toString(SPLIT_BLOCK_SIZE));
+    final FileSystemConfig dfsConfig = (FileSystemConfig) pluginRegistry.getPlugin("dfs").getConfig();
+    final FileSystemConfig splitFsConfig = new FileSystemConfig("splitfs:///", fsProps,
+        dfsConfig.getWorkspaces(), formats);
+    splitFsConfig.setEnabled(true);
+    pluginRegistry.createOrUpdate("splitfs", splitFsConfig, true);
   }
 
   @Test
@@ -140,6 +212,125 @@ public class TestRegexReader extends ClusterTest {
     assertEquals(3, result);
   }
 
+  /**
+   * COUNT(*) reads no groups, but still returns its rows in a vector.
+   * Check counts that span several batches, pipelined or not, and
+   * under a join.
+   */
+
+  @Test
+  public void testCountBatches() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "count.log3");
+    final StringBuilder buf = new StringBuilder();
+    for (int n = 0; n < 200_000; n++) {
+      buf.append(n).append(n % 10 == 0 ? " skip\n" : " message\n");
+    }
+    Files.write(logFile.toPath(), buf.toString().getBytes(StandardCharsets.UTF_8));
+    final String table = "table(dfs.`count.log3`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log3',\n" +
+        " fields => 'n, msg',\n" +
+        " regex => '(\\\\d+) (message)'))";
+    final String pipelined = table.replace("extension => 'log3',", "extension => 'log3', threads => 2,");
+    assertEquals(180_000, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table).singletonLong());
+    assertEquals(180_000, client.queryBuilder().sql("SELECT COUNT(*) FROM " + pipelined).singletonLong());
+    assertEquals(1, client.queryBuilder().sql(
+        "SELECT COUNT(*) FROM (SELECT COUNT(*) AS c FROM " + table + ") a\n" +
+        "JOIN (SELECT COUNT(*) AS c FROM " + pipelined + ") b ON a.c = b.c").singletonLong());
+  }
+
+  @Test
+  public void testFilter() throws RpcException {
+    final String sql = "SELECT `day`, `month` FROM cp.`regex/simple.log1`\n" +
+        "WHERE `day` IN ('17', '19') AND `month` LIKE '1%' AND `year` >= '2017'";
+    final RowSet results = client.queryBuilder().sql(sql).rowSet();
+
+    final BatchSchema expectedSchema = new SchemaBuilder()
+        .addNullable("day", MinorType.VARCHAR)
+        .addNullable("month", MinorType.VARCHAR)
+        .build();
+
+    final RowSet expected = client.rowSetBuilder(expectedSchema)
+        .addRow("17", "12")
+        .addRow("19", "12")
+        .build();
+
+    RowSetUtilities.verify(expected, results);
+  }
+
+  /**
+   * A LIMIT directly over the scan, with or without an OFFSET, is pushed
+   * into the scan's config as OFFSET + FETCH. A LIMIT over a Filter is
+   * not, since the reader cannot tell how many rows the Filter keeps.
+   * The limit is not a user option.
+   */
+
+  @Test
+  public void testLimitPushdown() throws Exception {
+    final String table = "cp.`regex/simple.log1`";
+
+    String sql = "SELECT * FROM " + table + " LIMIT 2";
+    assertEquals(Integer.valueOf(2), scanLimit(sql));
+    final RowSet results = client.queryBuilder().sql(sql).rowSet();
+    assertEquals(2, results.rowCount());
+    results.clear();
+
+    sql = "SELECT `day` FROM " + table + " LIMIT 2 OFFSET 1";
+    assertEquals(Integer.valueOf(3), scanLimit(sql));
+    final BatchSchema schema = new SchemaBuilder()
+        .addNullable("day", MinorType.VARCHAR)
+        .build();
+    RowSetUtilities.verify(client.rowSetBuilder(schema)
+        .addRow("18")
+        .addRow("19")
+        .build(), client.queryBuilder().sql(sql).rowSet());
+
+    // The Filter stays in the plan, so the limit is not pushed.
+
+    sql = "SELECT `day` FROM " + table + " WHERE `day` >= '18' LIMIT 1";
+    assertNull(scanLimit(sql));
+    RowSetUtilities.verify(client.rowSetBuilder(schema)
+        .addRow("18")
+        .build(), client.queryBuilder().sql(sql).rowSet());
+
+    sql = "SELECT * FROM table(cp.`regex/simple.log2`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log2',\n" +
+        " regex => '(\\\\d\\\\d\\\\d\\\\d)-.*',\n" +
+        " fields => 'year',\n" +
+        " limit => 1))";
+    final QuerySummary summary = client.queryBuilder().sql(sql).run();
+    assertTrue(summary.failed());
+    assertTrue(summary.error().getMessage(), summary.error().getMessage().contains("limit"));
+  }
+
+  /**
+   * @return the limit in the regex scan config of the query's scan,
+   * or null if there is none
+   */
+
+  private static Integer scanLimit(String sql) throws Exception {
+    final String plan = client.queryBuilder().sql(sql).explainJson();
+    assertTrue(plan, Pattern.compile("\"type\"\\s*:\\s*\"regex(-scan)?\"").matcher(plan).find());
+    final Matcher m = Pattern.compile("\"limit\"\\s*:\\s*(\\d+)").matcher(plan);
+    if (! m.find()) {
+      return null;
+    }
+    final int limit = Integer.parseInt(m.group(1));
+    assertFalse(plan, m.find());
+    return limit;
+  }
+
+  @Test
+  public void testFilterParse() {
+    final RegexFilter filter = RegexFilter.parse(
+        "level = 'ERROR' AND thread IN ('main', 'it''s') AND msg LIKE 'Fail%'");
+    assertEquals(3, filter.predicates().size());
+    assertEquals(RegexFilter.Op.IN, filter.predicates().get(1).op());
+    assertEquals("it's", filter.predicates().get(1).values().get(1));
+    assertEquals(filter.toString(), RegexFilter.parse(filter.toString()).toString());
+  }
+
   @Test
   public void testFull() throws RpcException {
     final String sql = "SELECT * FROM cp.`regex/simple.log2`";
@@ -240,6 +431,441 @@ public class TestRegexReader extends ClusterTest {
     }
   }
 
+  /**
+   * Run the same pattern on the linear-time engine, and a pattern with
+   * a back-reference, which RE2/J does not support, to check the
+   * fallback to java.util.regex.
+   */
+
+  @Test
+  public void testRe2jEngine() throws RpcException {
+    final String[] regexes = {
+        "(\\\\d\\\\d\\\\d\\\\d)-(\\\\d\\\\d)-(\\\\d\\\\d) .*",
+        "(\\\\d\\\\d\\\\d\\\\d)-(\\\\d\\\\d)-(\\\\d\\\\d) (?!\\\\1).*"
+    };
+    for (final String regex : regexes) {
+      final String sql = "SELECT * FROM table(cp.`regex/simple.log2`\n" +
+          "(type => 'regex',\n" +
+          " extension => 'log2',\n" +
+          " engine => 're2j',\n" +
+          " regex => '" + regex + "',\n" +
+          " fields => 'a, b, c'))";
+      final RowSet results = client.queryBuilder().sql(sql).rowSet();
+
+      final TupleMetadata schema = new SchemaBuilder()
+          .addNullable("a", MinorType.VARCHAR)
+          .addNullable("b", MinorType.VARCHAR)
+          .addNullable("c", MinorType.VARCHAR)
+          .buildSchema();
+      final RowSet expected = new RowSetBuilder(client.allocator(), schema)
+          .addRow("2017", "12", "17")
+          .addRow("2017", "12", "18")
+          .addRow("2017", "12", "19")
+          .build();
+      new RowSetComparison(expected)
+        .verifyAndClearAll(results);
+    }
+  }
+
+  @Test
+  public void testPipelined() throws RpcException {
+    final String sql = "SELECT * FROM table(cp.`regex/simple.log2`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log2',\n" +
+        " threads => 2,\n" +
+        " regex => '(\\\\d\\\\d\\\\d\\\\d)-(\\\\d\\\\d)-(\\\\d\\\\d) .*',\n" +
+        " fields => 'a, b, c'))";
+    final RowSet results = client.queryBuilder().sql(sql).rowSet();
+
+    final TupleMetadata schema = new SchemaBuilder()
+        .addNullable("a", MinorType.VARCHAR)
+        .addNullable("b", MinorType.VARCHAR)
+        .addNullable("c", MinorType.VARCHAR)
+        .buildSchema();
+    final RowSet expected = new RowSetBuilder(client.allocator(), schema)
+        .addRow("2017", "12", "17")
+        .addRow("2017", "12", "18")
+        .addRow("2017", "12", "19")
+        .build();
+    new RowSetComparison(expected)
+      .verifyAndClearAll(results);
+  }
+
+  /**
+   * Read a multi-block file, one reader per block, and check that every
+   * line comes back exactly once, including lines that start exactly at
+   * a block boundary and lines whose "\r\n" is split across one.
+   */
+
+  @Test
+  public void testSplits() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "split.log7");
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final Map<Integer, String> boundaryLines = new HashMap<>();
+    final Random random = new Random(7);
+    int lineCount = 0;
+    int boundary = 1;
+    boolean atBoundary = false;
+    while (out.size() < 4 * SPLIT_BLOCK_SIZE + SPLIT_BLOCK_SIZE / 2) {
+      final int gap = boundary * SPLIT_BLOCK_SIZE - out.size();
+      final String line;
+      final String terminator;
+      if (gap <= 300) {
+
+        // Fill up to the boundary. Odd boundaries get "\n", so the next
+        // line starts on the boundary; even ones get "\r\n", with the
+        // "\r" as the block's last byte and the "\n" as the next one's
+        // first.
+
+        line = line(lineCount, gap - 1);
+        terminator = boundary % 2 == 1 ? "\n" : "\r\n";
+        if (terminator.length() == 2) {
+          boundaryLines.put(lineCount, msg(line));
+        }
+        atBoundary = terminator.length() == 1;
+        boundary++;
+      } else {
+        line = line(lineCount, 10 + random.nextInt(150));
+        terminator = random.nextInt(4) == 0 ? "\r\n" : "\n";
+        if (atBoundary) {
+          boundaryLines.put(lineCount, msg(line));
+          atBoundary = false;
+        }
+      }
+      out.write((line + terminator).getBytes(StandardCharsets.UTF_8));
+      lineCount++;
+    }
+    Files.write(logFile.toPath(), out.toByteArray());
+    assertEquals(4, boundaryLines.size());
+
+    final String table = "splitfs.`split.log7`";
+    assertEquals(lineCount, client.queryBuilder().sql(
+        "SELECT COUNT(*) FROM " + table).singletonLong());
+    assertEquals(lineCount, client.queryBuilder().sql(
+        "SELECT COUNT(DISTINCT n) FROM " + table).singletonLong());
+    assertEquals(0, client.queryBuilder().sql(
+        "SELECT MIN(n) FROM " + table).singletonInt());
+    assertEquals(lineCount - 1, client.queryBuilder().sql(
+        "SELECT MAX(n) FROM " + table).singletonInt());
+    assertEquals(5, SplitFileSystem.maxBlocks);
+
+    // The lines at the boundaries are whole, with no stray "\r".
+
+    for (final Map.Entry<Integer, String> entry : boundaryLines.entrySet()) {
+      assertEquals(entry.getValue(), client.queryBuilder().sql(
+          "SELECT msg FROM " + table + " WHERE n = " + entry.getKey()).singletonString());
+    }
+  }
+
+  /**
+   * @return a line of the given length (at least that of its prefix)
+   * for the split test
+   */
+
+  private static String line(int n, int length) {
+    final StringBuilder buf = new StringBuilder(String.format("%d line %d ", n, n));
+    while (buf.length() < length) {
+      buf.append('x');
+    }
+    return buf.toString();
+  }
+
+  private static String msg(String line) {
+    return line.substring(line.indexOf(' ') + 1);
+  }
+
+  /**
+   * Lines with non-ASCII characters are decoded before matching, even
+   * for an ASCII regex, so that <tt>\w</tt>, <tt>.</tt> and counted
+   * repeats see characters. (As bytes, U+00C5 is C3 85, and <tt>.</tt>
+   * takes 0x85 for a line terminator.)
+   */
+
+  @Test
+  public void testNonAsciiLines() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "text.log8");
+    Files.write(logFile.toPath(), (
+        "2019 INFO \u00c5sa logged in\n" +
+        "2019 WARN caf\u00e9 closed\n" +
+        "2019 INFO plain ascii\n" +
+        "\u00e9t\u00e9 ok\n").getBytes(StandardCharsets.UTF_8));
+
+    final TupleMetadata schema = new SchemaBuilder()
+        .addNullable("year", MinorType.VARCHAR)
+        .addNullable("level", MinorType.VARCHAR)
+        .addNullable("msg", MinorType.VARCHAR)
+        .buildSchema();
+    for (final String threads : new String[] {"0", "2"}) {
+      final String table = "table(dfs.`text.log8`\n" +
+          "(type => 'regex',\n" +
+          " extension => 'log8',\n" +
+          " threads => " + threads + ",\n" +
+          " fields => 'year, level, msg',\n" +
+          " regex => '(\\\\d+) (\\\\w+) (.*)'))";
+      final RowSet expected = new RowSetBuilder(client.allocator(), schema)
+          .addRow("2019", "INFO", "\u00c5sa logged in")
+          .addRow("2019", "WARN", "caf\u00e9 closed")
+          .addRow("2019", "INFO", "plain ascii")
+          .build();
+      new RowSetComparison(expected)
+        .verifyAndClearAll(client.queryBuilder().sql("SELECT * FROM " + table).rowSet());
+      assertEquals(1, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+          "WHERE msg = '\u00c5sa logged in'").singletonLong());
+    }
+
+    final String sql = "SELECT * FROM table(dfs.`text.log8`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log8',\n" +
+        " fields => 'word, rest',\n" +
+        " regex => '(.{3}) (.*)'))";
+    final TupleMetadata wordSchema = new SchemaBuilder()
+        .addNullable("word", MinorType.VARCHAR)
+        .addNullable("rest", MinorType.VARCHAR)
+        .buildSchema();
+    final RowSet expected = new RowSetBuilder(client.allocator(), wordSchema)
+        .addRow("\u00e9t\u00e9", "ok")
+        .build();
+    new RowSetComparison(expected)
+      .verifyAndClearAll(client.queryBuilder().sql(sql).rowSet());
+  }
+
+  @Test
+  public void testIncremental() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "tail.log3");
+    final File checkpointDir = new File(dirTestWatcher.getTmpDir(), "checkpoints");
+    final String sql = "SELECT COUNT(*) FROM table(dfs.`tail.log3`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log3',\n" +
+        " checkpointDir => '" + checkpointDir.getAbsolutePath() + "',\n" +
+        " regex => '(\\\\d\\\\d\\\\d\\\\d)-(\\\\d\\\\d)-(\\\\d\\\\d) .*'))";
+
+    // The last line has no terminator yet, so is left for later.
+
+    Files.write(logFile.toPath(), (
+        "2017-12-17 10:52:41,820 one\n" +
+        "2017-12-18 10:52:41,820 two\n" +
+        "2017-12-19 10:52").getBytes(StandardCharsets.UTF_8));
+    assertEquals(2, client.queryBuilder().sql(sql).singletonLong());
+
+    Files.write(logFile.toPath(), (
+        ":41,820 three\n" +
+        "2017-12-20 10:52:41,820 four\n").getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    assertEquals(2, client.queryBuilder().sql(sql).singletonLong());
+    assertEquals(0, client.queryBuilder().sql(sql).singletonLong());
+
+    // Rotation: a new, smaller file starts over.
+
+    Files.delete(logFile.toPath());
+    Files.write(logFile.toPath(),
+        "2017-12-21 10:52:41,820 five\n".getBytes(StandardCharsets.UTF_8));
+    assertEquals(1, client.queryBuilder().sql(sql).singletonLong());
+  }
+
+  @Test
+  public void testMapFiles() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "mapped.log3");
+    final StringBuilder buf = new StringBuilder();
+    for (int n = 0; n < 1000; n++) {
+      buf.append(n).append(" message ").append(n).append('\n');
+    }
+    Files.write(logFile.toPath(), buf.toString().getBytes(StandardCharsets.UTF_8));
+    final String table = "table(dfs.`mapped.log3`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log3',\n" +
+        " mapFiles => true,\n" +
+        " fields => 'n:INT, msg',\n" +
+        " regex => '(\\\\d+) (.*)'))";
+    assertEquals(1000, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table).singletonLong());
+    assertEquals(999 * 1000 / 2,
+        client.queryBuilder().sql("SELECT SUM(n) FROM " + table).singletonLong());
+  }
+
+  /**
+   * Queries with different filters or projections each see every line,
+   * as each keeps its own checkpoint.
+   */
+
+  @Test
+  public void testIncrementalConsumers() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "consumers.log3");
+    final File checkpointDir = new File(dirTestWatcher.getTmpDir(), "consumerCheckpoints");
+    final String table = "table(dfs.`consumers.log3`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log3',\n" +
+        " checkpointDir => '" + checkpointDir.getAbsolutePath() + "',\n" +
+        " fields => 'day, level',\n" +
+        " regex => '(\\\\S+) (\\\\S+)'))";
+    final String all = "SELECT COUNT(*) FROM " + table;
+    final String errors = "SELECT COUNT(*) FROM " + table + " WHERE level = 'ERROR'";
+
+    Files.write(logFile.toPath(), (
+        "2017-12-17 INFO\n" +
+        "2017-12-18 ERROR\n" +
+        "2017-12-19 INFO\n").getBytes(StandardCharsets.UTF_8));
+    assertEquals(1, client.queryBuilder().sql(errors).singletonLong());
+    assertEquals(3, client.queryBuilder().sql(all).singletonLong());
+    assertEquals(0, client.queryBuilder().sql(errors).singletonLong());
+    assertEquals(0, client.queryBuilder().sql(all).singletonLong());
+
+    Files.write(logFile.toPath(), (
+        "2017-12-20 ERROR\n").getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    assertEquals(1, client.queryBuilder().sql(all).singletonLong());
+    assertEquals(1, client.queryBuilder().sql(errors).singletonLong());
+  }
+
+  @Test
+  public void testTimeIndex() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "indexed.log4");
+    final StringBuilder buf = new StringBuilder();
+    for (int day = 1; day <= 20; day++) {
+      buf.append(String.format("2017-12-%02d 10:52:41 message %d\n", day, day));
+    }
+    Files.write(logFile.toPath(), buf.toString().getBytes(StandardCharsets.UTF_8));
+    final String table = "table(dfs.`indexed.log4`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log4',\n" +
+        " fields => 'ts, msg',\n" +
+        " timeColumn => 'ts',\n" +
+        " indexBlockSize => 100,\n" +
+        " regex => '(\\\\S+ \\\\S+) (.*)'))";
+    final String sql = "SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE ts >= '2017-12-08' AND ts < '2017-12-11'";
+
+    // The first scan builds the index, later ones use it.
+
+    assertEquals(3, client.queryBuilder().sql(sql).singletonLong());
+    assertTrue(new File(dirTestWatcher.getRootDir(), ".indexed.log4.rxi").exists());
+    assertEquals(3, client.queryBuilder().sql(sql).singletonLong());
+    assertEquals(0, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE ts >= '2018'").singletonLong());
+
+    // A changed file makes the index stale.
+
+    Files.write(logFile.toPath(), "2018-01-01 10:52:41 new year\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    assertEquals(1, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE ts >= '2018'").singletonLong());
+  }
+
+  @Test
+  public void testPatterns() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "mixed.log6");
+    Files.write(logFile.toPath(), (
+        "10.0.0.1 [10:00] GET 200\n" +
+        "[10:01] GC pause 12ms\n" +
+        "something else\n" +
+        "10.0.0.2 [10:02] GET 404\n").getBytes(StandardCharsets.UTF_8));
+
+    // One pattern per line: name | fields | regex. SQL string
+    // literals may span lines.
+
+    final String table = "table(dfs.`mixed.log6`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log6',\n" +
+        " patterns => 'access | ip, ts, status | (\\S+) \\[(\\S+)\\] GET (\\d+)\n" +
+        "gc | ts, pause | \\[(\\S+)\\] GC pause (\\d+)ms'))";
+    final RowSet results = client.queryBuilder().sql("SELECT * FROM " + table).rowSet();
+
+    final TupleMetadata schema = new SchemaBuilder()
+        .addNullable("pattern_name", MinorType.VARCHAR)
+        .addNullable("ip", MinorType.VARCHAR)
+        .addNullable("ts", MinorType.VARCHAR)
+        .addNullable("status", MinorType.VARCHAR)
+        .addNullable("pause", MinorType.VARCHAR)
+        .buildSchema();
+    final RowSet expected = new RowSetBuilder(client.allocator(), schema)
+        .addRow("access", "10.0.0.1", "10:00", "200", null)
+        .addRow("gc", null, "10:01", null, "12")
+        .addRow("access", "10.0.0.2", "10:02", "404", null)
+        .build();
+    new RowSetComparison(expected)
+      .verifyAndClearAll(results);
+
+    // Projection and filters, including on the pattern name, which
+    // the reader leaves to the Filter operator.
+
+    assertEquals(2, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE pattern_name = 'access'").singletonLong());
+    assertEquals(1, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE ts = '10:01' AND pattern_name = 'gc'").singletonLong());
+    assertEquals(1, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE pause = '12'").singletonLong());
+  }
+
+  @Test
+  public void testDictFields() throws Exception {
+    final File logFile = new File(dirTestWatcher.getRootDir(), "dict.log5");
+    Files.write(logFile.toPath(), (
+        "INFO [main] élan\n" +
+        "WARN [main] elan\n" +
+        "INFO [worker] elan\n" +
+        "INFO [main] éclat\n" +
+        "INFO [main] clat\n").getBytes(StandardCharsets.UTF_8));
+
+    // ASCII lines are matched as bytes, the others decoded. Both
+    // find their values in the same dictionaries.
+
+    final String table = "table(dfs.`dict.log5`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log5',\n" +
+        " fields => 'level, thread, word',\n" +
+        " dictFields => 'level, thread',\n" +
+        " regex => '(\\\\S+) \\\\[(\\\\S+)\\\\] (\\\\S+)'))";
+    final RowSet results = client.queryBuilder().sql("SELECT * FROM " + table).rowSet();
+
+    final TupleMetadata schema = new SchemaBuilder()
+        .addNullable("level", MinorType.VARCHAR)
+        .addNullable("thread", MinorType.VARCHAR)
+        .addNullable("word", MinorType.VARCHAR)
+        .buildSchema();
+    final RowSet expected = new RowSetBuilder(client.allocator(), schema)
+        .addRow("INFO", "main", "élan")
+        .addRow("WARN", "main", "elan")
+        .addRow("INFO", "worker", "elan")
+        .addRow("INFO", "main", "éclat")
+        .addRow("INFO", "main", "clat")
+        .build();
+    new RowSetComparison(expected)
+      .verifyAndClearAll(results);
+
+    // Filters on the dictionary fields are tested once per distinct
+    // value.
+
+    assertEquals(4, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE level = 'INFO'").singletonLong());
+    assertEquals(3, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE level = 'INFO' AND thread = 'main'").singletonLong());
+    assertEquals(1, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE level = 'INFO' AND thread = 'main' AND word = 'élan'").singletonLong());
+    assertEquals(1, client.queryBuilder().sql("SELECT COUNT(*) FROM " + table + "\n" +
+        "WHERE thread IN ('worker', 'pool')").singletonLong());
+  }
+
+  @Test
+  public void testTypedCols() throws RpcException {
+    final String sql = "SELECT * FROM table(cp.`regex/simple.log2`\n" +
+        "(type => 'regex',\n" +
+        " extension => 'log2',\n" +
+        " regex => '(\\\\d\\\\d\\\\d\\\\d)-(\\\\d\\\\d)-(\\\\d\\\\d) .*',\n" +
+        " fields => 'year:INT, month:BIGINT, day'))";
+    final RowSet results = client.queryBuilder().sql(sql).rowSet();
+
+    final TupleMetadata schema = new SchemaBuilder()
+        .addNullable("year", MinorType.INT)
+        .addNullable("month", MinorType.BIGINT)
+        .addNullable("day", MinorType.VARCHAR)
+        .buildSchema();
+    final RowSet expected = new RowSetBuilder(client.allocator(), schema)
+        .addRow(2017, 12L, "17")
+        .addRow(2017, 12L, "18")
+        .addRow(2017, 12L, "19")
+        .build();
+    new RowSetComparison(expected)
+      .verifyAndClearAll(results);
+  }
+
   @Test
   public void testNoCols() throws RpcException {
 
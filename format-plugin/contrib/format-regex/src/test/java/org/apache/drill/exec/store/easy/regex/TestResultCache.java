@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestResultCache extends DrillTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static String key(String path) {
+    return ResultCache.key(path, 100, 1234, 0, 100, "(\\d+) (\\w+)");
+  }
+
+  private static void writeEntry(ResultCache cache, String key, int rows) throws IOException {
+    final ResultCache.Writer writer = cache.create(key, 2);
+    for (int i = 0; i < rows; i++) {
+      final byte[] value = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+      writer.addGroup(value, 0, value.length);
+      writer.addGroup(i % 2 == 0 ? null : value, 0, value.length);
+    }
+    writer.commit();
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final ResultCache cache = new ResultCache(folder.getRoot().getPath(), 0);
+    final String key = key("/logs/a.log");
+    assertNull(cache.open(key));
+
+    // More rows than one block.
+
+    writeEntry(cache, key, 10_000);
+    final ResultCache.Reader reader = cache.open(key);
+    assertNotNull(reader);
+    assertEquals(2, reader.groupCount());
+    int total = 0;
+    while (reader.next()) {
+      for (int r = 0; r < reader.rowCount(); r++) {
+        final String value = Integer.toString(total);
+        assertEquals(value, new String(reader.data(0), reader.start(0, r),
+            reader.end(0, r) - reader.start(0, r), StandardCharsets.UTF_8));
+        assertEquals(total % 2 == 0, reader.start(1, r) == -1);
+        total++;
+      }
+    }
+    reader.close();
+    assertEquals(10_000, total);
+  }
+
+  @Test
+  public void testKey() {
+    assertEquals(key("/logs/a.log"), key("/logs/a.log"));
+    assertNotEquals(key("/logs/a.log"), key("/logs/b.log"));
+    assertNotEquals(key("/logs/a.log"),
+        ResultCache.key("/logs/a.log", 100, 1235, 0, 100, "(\\d+) (\\w+)"));
+  }
+
+  @Test
+  public void testAbort() throws IOException {
+    final ResultCache cache = new ResultCache(folder.getRoot().getPath(), 0);
+    final String key = key("/logs/a.log");
+    final ResultCache.Writer writer = cache.create(key, 1);
+    writer.addGroup(new byte[1], 0, 1);
+    writer.abort();
+    assertNull(cache.open(key));
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testEvict() throws IOException {
+    final ResultCache cache = new ResultCache(folder.getRoot().getPath(), 1);
+    final String oldKey = key("/logs/old.log");
+    final String newKey = key("/logs/new.log");
+    writeEntry(cache, oldKey, 10);
+    writeEntry(cache, newKey, 10);
+    final File oldFile = new File(folder.getRoot(), oldKey + ".rxc");
+    assertTrue(oldFile.setLastModified(System.currentTimeMillis() - 60_000));
+
+    // Over the limit: everything goes, oldest first.
+
+    cache.evict();
+    assertFalse(oldFile.exists());
+    assertEquals(0, folder.getRoot().list().length);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestTailCheckpoint extends DrillTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    final String dir = folder.getRoot().getPath();
+    final String key = TailCheckpoint.key("/logs/app.log", "(.*)", null, "[`**`]");
+    assertNull(TailCheckpoint.load(dir, key));
+    new TailCheckpoint(120, 100, 42, 130, "(dev=803,ino=12)").save(dir, key);
+    final TailCheckpoint checkpoint = TailCheckpoint.load(dir, key);
+    assertEquals(120, checkpoint.offset());
+    assertEquals(100, checkpoint.lastLineStart());
+    assertEquals(42, checkpoint.lastLineHash());
+    assertEquals(130, checkpoint.size());
+    assertEquals("(dev=803,ino=12)", checkpoint.fileKey());
+  }
+
+  @Test
+  public void testValidity() {
+    final TailCheckpoint checkpoint = new TailCheckpoint(120, 100, 42, 130, "a");
+    assertTrue(checkpoint.isValidFor(120, "a"));
+    assertTrue(checkpoint.isValidFor(500, "a"));
+
+    // Truncated, or a different file.
+
+    assertFalse(checkpoint.isValidFor(119, "a"));
+    assertFalse(checkpoint.isValidFor(500, "b"));
+  }
+
+  @Test
+  public void testKeyAndHash() {
+    final String key = TailCheckpoint.key("/logs/app.log", "(a)", null, "[`**`]");
+    assertEquals(key, TailCheckpoint.key("/logs/app.log", "(a)", null, "[`**`]"));
+    assertNotEquals(key, TailCheckpoint.key("/logs/app.log", "(b)", null, "[`**`]"));
+    assertNotEquals(key, TailCheckpoint.key("/logs/app.log", "(a)", "level = 'ERROR'", "[`**`]"));
+    assertNotEquals(key, TailCheckpoint.key("/logs/app.log", "(a)", null, "[]"));
+    final byte[] line = "2017-12-17 one\n".getBytes(StandardCharsets.UTF_8);
+    final byte[] other = "2017-12-17 two\n".getBytes(StandardCharsets.UTF_8);
+    assertEquals(TailCheckpoint.hashLine(line, 0, line.length),
+        TailCheckpoint.hashLine(line.clone(), 0, line.length));
+    assertNotEquals(TailCheckpoint.hashLine(line, 0, line.length),
+        TailCheckpoint.hashLine(other, 0, other.length));
+  }
+}
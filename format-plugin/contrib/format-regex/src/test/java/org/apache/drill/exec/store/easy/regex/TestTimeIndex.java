@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.drill.test.DrillTest;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestTimeIndex extends DrillTest {
+
+  private static final int BLOCK_SIZE = 100;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static void add(TimeIndex.Builder builder, long lineStart, String value) {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    builder.add(lineStart, bytes, 0, bytes.length);
+  }
+
+  private Path logFile(int size) throws IOException {
+    final File file = folder.newFile("app.log");
+    Files.write(file.toPath(), new byte[size]);
+    return new Path(file.getPath());
+  }
+
+  @Test
+  public void testBuildInParts() throws IOException {
+    final FileSystem fs = FileSystem.getLocal(new Configuration());
+    final Path file = logFile(300);
+    final FileStatus status = fs.getFileStatus(file);
+
+    // Two splits: line starts [0, 150] and (150, 300].
+
+    final TimeIndex.Builder first = new TimeIndex.Builder(BLOCK_SIZE);
+    add(first, 0, "2017-12-17 10:00");
+    add(first, 40, "2017-12-17 09:00");
+    add(first, 120, "2017-12-18 10:00");
+    first.save(fs, file, status, "id", 0, 150);
+    TimeIndex index = TimeIndex.load(fs, file, status, "id", BLOCK_SIZE);
+    assertFalse(index.isComplete());
+
+    final TimeIndex.Builder second = new TimeIndex.Builder(BLOCK_SIZE);
+    add(second, 160, "2017-12-19 10:00");
+    add(second, 250, "2017-12-21 10:00");
+    second.save(fs, file, status, "id", 150, 300);
+    index = TimeIndex.load(fs, file, status, "id", BLOCK_SIZE);
+    assertTrue(index.isComplete());
+
+    // Block 1 merges the two splits: 2017-12-18 to 2017-12-19.
+
+    RegexFilter filter = RegexFilter.parse("ts >= '2017-12-19'");
+    assertEquals(1, index.nextBlock(0, filter, "ts"));
+    filter = RegexFilter.parse("ts < '2017-12-17 09:30'");
+    assertEquals(0, index.nextBlock(0, filter, "TS"));
+    assertEquals(-1, index.nextBlock(1, filter, "ts"));
+    filter = RegexFilter.parse("ts LIKE '2017-12-20%'");
+    assertFalse(index.mayMatch(filter, "ts"));
+    filter = RegexFilter.parse("ts IN ('2017-12-01', '2017-12-21 10:00')");
+    assertEquals(2, index.nextBlock(0, filter, "ts"));
+
+    // Predicates on other columns do not prune.
+
+    filter = RegexFilter.parse("level = 'ERROR'");
+    assertEquals(0, index.nextBlock(0, filter, "ts"));
+  }
+
+  @Test
+  public void testStale() throws IOException {
+    final FileSystem fs = FileSystem.getLocal(new Configuration());
+    final Path file = logFile(100);
+    final FileStatus status = fs.getFileStatus(file);
+    final TimeIndex.Builder builder = new TimeIndex.Builder(BLOCK_SIZE);
+    add(builder, 0, "2017-12-17");
+    builder.save(fs, file, status, "id", 0, 100);
+    assertTrue(TimeIndex.load(fs, file, status, "id", BLOCK_SIZE).isComplete());
+    assertNull(TimeIndex.load(fs, file, status, "other", BLOCK_SIZE));
+    assertNull(TimeIndex.load(fs, file, status, "id", 2 * BLOCK_SIZE));
+
+    Files.write(new File(file.toString()).toPath(), new byte[200]);
+    assertNull(TimeIndex.load(fs, file, fs.getFileStatus(file), "id", BLOCK_SIZE));
+  }
+
+  @Test
+  public void testRangeFilter() {
+    final byte[] min = "2017-12-17".getBytes(StandardCharsets.UTF_8);
+    final byte[] max = "2017-12-19".getBytes(StandardCharsets.UTF_8);
+    assertTrue(RegexFilter.parse("ts = '2017-12-18'").mayMatchRange("ts", min, max));
+    assertFalse(RegexFilter.parse("ts = '2017-12-20'").mayMatchRange("ts", min, max));
+    assertTrue(RegexFilter.parse("ts <= '2017-12-17'").mayMatchRange("ts", min, max));
+    assertFalse(RegexFilter.parse("ts < '2017-12-17'").mayMatchRange("ts", min, max));
+    assertTrue(RegexFilter.parse("ts >= '2017-12-19'").mayMatchRange("ts", min, max));
+    assertFalse(RegexFilter.parse("ts > '2017-12-19'").mayMatchRange("ts", min, max));
+    assertTrue(RegexFilter.parse("ts LIKE '2017-12%'").mayMatchRange("ts", min, max));
+    assertTrue(RegexFilter.parse("ts LIKE '2017-12-19%'").mayMatchRange("ts", min, max));
+    assertFalse(RegexFilter.parse("ts LIKE '2017-11%'").mayMatchRange("ts", min, max));
+    assertFalse(RegexFilter.parse("ts >= '2017-12-18' AND ts > '2017-12-19'").mayMatchRange("ts", min, max));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.drill.exec.store.easy.regex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.drill.test.DrillTest;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class TestValueDictionary extends DrillTest {
+
+  @Test
+  public void testLookup() {
+    final ValueDictionary dict = new ValueDictionary();
+    final String line = "2017-12-17 ERROR [main] Défaut";
+    final int error = dict.lookup(line, 11, 16);
+    assertArrayEquals("ERROR".getBytes(StandardCharsets.UTF_8), dict.value(error));
+    assertEquals(error, dict.lookup("x ERROR y", 2, 7));
+    final int defaut = dict.lookup(line, 24, 30);
+    assertArrayEquals("Défaut".getBytes(StandardCharsets.UTF_8), dict.value(defaut));
+    assertEquals(2, dict.lookup(line, 0, 0));
+    assertEquals(3, dict.size());
+  }
+
+  @Test
+  public void testBytesAndChars() {
+
+    // A value finds the same entry, with the same bytes, whether
+    // looked up as bytes or as characters, whichever comes first.
+
+    final ValueDictionary dict = new ValueDictionary();
+    final String[] values = {"INFO", "Défaut", "線程-1", "😀 emoji", ""};
+    for (final String value : values) {
+      final byte[] bytes = ("[" + value + "]").getBytes(StandardCharsets.UTF_8);
+      final int entry = dict.lookup(value, 0, value.length());
+      assertEquals(entry, dict.lookup(bytes, 1, bytes.length - 1));
+      assertSame(dict.value(entry), dict.value(dict.lookup(bytes, 1, bytes.length - 1)));
+    }
+    for (final String value : values) {
+      final byte[] bytes = ("x" + value).getBytes(StandardCharsets.UTF_8);
+      final ValueDictionary other = new ValueDictionary();
+      final int entry = other.lookup(bytes, 1, bytes.length);
+      assertEquals(entry, other.lookup(value, 0, value.length()));
+    }
+    assertEquals(values.length, dict.size());
+  }
+
+  @Test
+  public void testInvalidUtf8() {
+
+    // Bytes that do not decode have no characters to find them by.
+
+    final ValueDictionary dict = new ValueDictionary();
+    final byte[] bad = {'a', (byte) 0xC3};
+    final int entry = dict.lookup(bad, 0, bad.length);
+    assertEquals(entry, dict.lookup(bad, 0, bad.length));
+    assertNotEquals(entry, dict.lookup("a�", 0, 2));
+    assertEquals(2, dict.size());
+  }
+
+  @Test
+  public void testGrowth() {
+    final ValueDictionary dict = new ValueDictionary();
+    for (int i = 0; i < 500; i++) {
+      final String value = "thread-" + i;
+      assertEquals(i, dict.lookup(value, 0, value.length()));
+    }
+    for (int i = 0; i < 500; i++) {
+      final byte[] value = ("thread-" + i).getBytes(StandardCharsets.UTF_8);
+      assertEquals(i, dict.lookup(value, 0, value.length));
+    }
+    assertEquals(500, dict.size());
+  }
+
+  @Test
+  public void testLimits() {
+    final ValueDictionary dict = new ValueDictionary();
+    final String longValue = Strings.repeat("x", ValueDictionary.MAX_VALUE_LENGTH + 1);
+    assertEquals(-1, dict.lookup(longValue, 0, longValue.length()));
+    for (int i = 0; i < ValueDictionary.MAX_ENTRIES; i++) {
+      dict.lookup(Integer.toString(i), 0, Integer.toString(i).length());
+    }
+    assertEquals(-1, dict.lookup("new", 0, 3));
+    assertEquals(-1, dict.lookup(new byte[] {'n', 'e', 'w'}, 0, 3));
+    assertEquals(17, dict.lookup("17", 0, 2));
+    assertEquals(ValueDictionary.MAX_ENTRIES, dict.size());
+  }
+}
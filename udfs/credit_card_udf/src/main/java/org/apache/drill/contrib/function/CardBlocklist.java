@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.drill.common.config.DrillConfig;
+import org.apache.drill.common.exceptions.UserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only Bloom filter of blocked card numbers, memory-mapped from a
+ * file written by {@link CardBlocklistBuilder}. The filter stays off-heap,
+ * in the page cache, and is mapped once per drillbit: {@link #get()}
+ * returns the same instance to every fragment until the file changes.
+ * <p>
+ * Keys are the digits of the card number, with spaces and dashes skipped,
+ * read straight from the bytes of the value as one unsigned 64-bit number
+ * plus the digit count. Probing allocates nothing. The file format and
+ * hashing are in {@link CardBloomFilter}.
+ */
+public class CardBlocklist {
+  static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CardBlocklist.class);
+
+  /**
+   * Boot option holding the path of the filter file, set in
+   * drill-override.conf.
+   */
+  public static final String PATH_OPTION = "drill.contrib.function.card_blocklist.path";
+
+  private static String configuredPath;
+  private static CardBlocklist current;
+
+  private final String path;
+  private final long lastModified;
+  private final long fileLength;
+  private final ByteBuffer bits;
+  private final int hashCount;
+  private final long bitCount;
+
+  private CardBlocklist(String path, long lastModified, long fileLength,
+      ByteBuffer bits, int hashCount, long bitCount) {
+    this.path = path;
+    this.lastModified = lastModified;
+    this.fileLength = fileLength;
+    this.bits = bits;
+    this.hashCount = hashCount;
+    this.bitCount = bitCount;
+  }
+
+  /**
+   * Returns the blocklist at the configured path, mapping it on first use
+   * or when the file has changed since it was mapped.
+   */
+  public static synchronized CardBlocklist get() {
+    if (configuredPath == null) {
+      configuredPath = DrillConfig.create().getString(PATH_OPTION).trim();
+    }
+    if (configuredPath.isEmpty()) {
+      throw UserException.validationError()
+          .message("in_card_blocklist() needs a blocklist file: set %s in drill-override.conf", PATH_OPTION)
+          .build(logger);
+    }
+    return get(configuredPath);
+  }
+
+  static synchronized CardBlocklist get(String path) {
+    final File file = new File(path);
+    if (current == null || !current.path.equals(path) ||
+        current.lastModified != file.lastModified() || current.fileLength != file.length()) {
+      current = load(file);
+      logger.info("Loaded card blocklist {}: {} bits, {} hashes", path, current.bitCount, current.hashCount);
+    }
+    return current;
+  }
+
+  static CardBlocklist load(File file) {
+    try (RandomAccessFile in = new RandomAccessFile(file, "r");
+         FileChannel channel = in.getChannel()) {
+      final long length = channel.size();
+      if (length < CardBloomFilter.HEADER_SIZE || length > Integer.MAX_VALUE) {
+        throw badFile(file, "unexpected size " + length);
+      }
+      final ByteBuffer bits = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      if (bits.getInt(0) != CardBloomFilter.MAGIC || bits.getInt(4) != CardBloomFilter.VERSION) {
+        throw badFile(file, "not a card blocklist, or of another version");
+      }
+      final int hashCount = bits.getInt(8);
+      final long bitCount = bits.getLong(16);
+      if (hashCount < 1 || bitCount < 64 || bitCount % 64 != 0 ||
+          CardBloomFilter.HEADER_SIZE + bitCount / 8 != length) {
+        throw badFile(file, "inconsistent header");
+      }
+      return new CardBlocklist(file.getPath(), file.lastModified(), length, bits, hashCount, bitCount);
+    } catch (IOException e) {
+      throw UserException.dataReadError(e)
+          .message("Failed to read card blocklist %s", file)
+          .build(logger);
+    }
+  }
+
+  private static UserException badFile(File file, String reason) {
+    return UserException.dataReadError()
+        .message("Bad card blocklist %s: %s", file, reason)
+        .build(logger);
+  }
+
+  /**
+   * Checks a card number held as UTF-8 bytes.
+   *
+   * @return true if the number may be in the blocklist, false if it
+   * certainly is not or is not a card number
+   */
+  public boolean mightContain(ByteBuf buf, int start, int end) {
+    long digits = 0;
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      final byte b = buf.getByte(i);
+      if (b >= '0' && b <= '9') {
+        digits = digits * 10 + (b - '0');
+        count++;
+      } else if (b != ' ' && b != '-') {
+        return false;
+      }
+    }
+    if (count < 12 || count > 19) {
+      return false;
+    }
+    return CardBloomFilter.mightContain(bits, hashCount, bitCount, CardBloomFilter.key(digits, count));
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Builds the Bloom filter file read by in_card_blocklist() from a CSV
+ * file of card numbers. Usage:
+ * <pre>
+ * java -cp credit_card_functions-1.0.jar org.apache.drill.contrib.function.CardBlocklistBuilder \
+ *     blocklist.csv blocklist.bloom [column [false-positive-rate]]
+ * </pre>
+ * The column is 0-based and defaults to 0; the false positive rate
+ * defaults to 0.001. Lines whose column is not a card number, such as a
+ * header, are skipped. The CSV is read twice, once to count the numbers
+ * and once to add them, so only the filter is held in memory.
+ * <p>
+ * The filter is written to a temporary file beside the output and then
+ * renamed over it, so drillbits that have the old filter mapped keep
+ * reading it until they notice the new one. The builder needs only this
+ * jar on the class path.
+ */
+public class CardBlocklistBuilder {
+
+  private final int column;
+  private final double falsePositiveRate;
+  private long skipped;
+
+  public CardBlocklistBuilder(int column, double falsePositiveRate) {
+    if (column < 0) {
+      throw new IllegalArgumentException("Column must be 0 or more: " + column);
+    }
+    if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+    }
+    this.column = column;
+    this.falsePositiveRate = falsePositiveRate;
+  }
+
+  /**
+   * Builds the filter.
+   *
+   * @return the number of card numbers added
+   */
+  public long build(File csv, File output) throws IOException {
+    final long count = Math.max(1, scan(csv, null, 0));
+
+    // Standard sizing: m = -n ln(p) / ln(2)^2 bits and k = m / n ln(2)
+    // hashes, with m rounded up to whole longs.
+
+    final double ln2 = Math.log(2);
+    final long bits = (long) Math.ceil(-count * Math.log(falsePositiveRate) / (ln2 * ln2));
+    final long words = Math.max(1, (bits + 63) / 64);
+    if (CardBloomFilter.HEADER_SIZE + words * 8 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(String.format(
+          "Filter for %d numbers at rate %s exceeds 2 GB: use a higher false positive rate",
+          count, falsePositiveRate));
+    }
+    final int hashCount = (int) Math.max(1, Math.round((double) words * 64 / count * ln2));
+
+    final long[] filter = new long[(int) words];
+    skipped = 0;
+    final long added = scan(csv, filter, hashCount);
+
+    // Never truncate the output in place: drillbits may have it mapped.
+
+    final Path target = output.getAbsoluteFile().toPath();
+    final Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+        out.writeInt(CardBloomFilter.MAGIC);
+        out.writeInt(CardBloomFilter.VERSION);
+        out.writeInt(hashCount);
+        out.writeInt(0);
+        out.writeLong(words * 64);
+        for (long word : filter) {
+          out.writeLong(word);
+        }
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return added;
+  }
+
+  /**
+   * @return the number of lines skipped in the last build
+   */
+  public long skipped() {
+    return skipped;
+  }
+
+  /**
+   * Reads the card numbers, adding each to the filter if given.
+   *
+   * @return the number of card numbers read
+   */
+  private long scan(File csv, long[] filter, int hashCount) throws IOException {
+    long count = 0;
+    try (BufferedReader in = new BufferedReader(
+        new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8), 1 << 16)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        final String field = field(line);
+        if (!isCardNumber(field)) {
+          skipped++;
+          continue;
+        }
+        if (filter != null) {
+          CardBloomFilter.add(filter, hashCount, key(field));
+        }
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private String field(String line) {
+    int start = 0;
+    for (int i = 0; i < column; i++) {
+      start = line.indexOf(',', start) + 1;
+      if (start == 0) {
+        return "";
+      }
+    }
+    int end = line.indexOf(',', start);
+    if (end == -1) {
+      end = line.length();
+    }
+    String field = line.substring(start, end).trim();
+    if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+      field = field.substring(1, field.length() - 1);
+    }
+    return field;
+  }
+
+  /**
+   * @return true if the field is a card number as in_card_blocklist()
+   * reads one: 12 to 19 digits, possibly separated by spaces or dashes
+   */
+  static boolean isCardNumber(String field) {
+    int count = 0;
+    for (int i = 0; i < field.length(); i++) {
+      final char c = field.charAt(i);
+      if (c >= '0' && c <= '9') {
+        count++;
+      } else if (c != ' ' && c != '-') {
+        return false;
+      }
+    }
+    return count >= 12 && count <= 19;
+  }
+
+  /**
+   * @return the key of a card number, as in_card_blocklist() computes it
+   */
+  static long key(String field) {
+    long digits = 0;
+    int count = 0;
+    for (int i = 0; i < field.length(); i++) {
+      final char c = field.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits = digits * 10 + (c - '0');
+        count++;
+      }
+    }
+    return CardBloomFilter.key(digits, count);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 4) {
+      System.err.println("Usage: CardBlocklistBuilder <input.csv> <output> [column [false-positive-rate]]");
+      System.exit(1);
+    }
+    final int column = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+    final double rate = args.length > 3 ? Double.parseDouble(args[3]) : 0.001;
+    final CardBlocklistBuilder builder = new CardBlocklistBuilder(column, rate);
+    final long added = builder.build(new File(args[0]), new File(args[1]));
+    System.out.println(String.format("Added %d card numbers to %s, skipped %d lines",
+        added, args[1], builder.skipped()));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The card blocklist file format and hashing, shared by
+ * {@link CardBlocklist}, which probes a filter in a drillbit, and
+ * {@link CardBlocklistBuilder}, which writes one from the command line.
+ * Uses nothing outside the JDK, so the builder runs with only this jar
+ * on the class path.
+ * <p>
+ * The file is a 24-byte header (magic, version, hash count, bit count)
+ * followed by the bits as big-endian longs. Bit positions come from two
+ * 64-bit hashes of the key, combined as h1 + i * h2.
+ */
+final class CardBloomFilter {
+
+  static final int MAGIC = 0x43434246; // "CCBF"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 24;
+
+  private static final long MIX_1 = 0xFF51AFD7ED558CCDL;
+  private static final long MIX_2 = 0xC4CEB9FE1A85EC53L;
+  private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+  private CardBloomFilter() {
+  }
+
+  /**
+   * The key of a card number: its digits as an unsigned number, made
+   * distinct for numbers with leading zeros by the digit count.
+   */
+  static long key(long digits, int count) {
+    return digits ^ count * GOLDEN;
+  }
+
+  /**
+   * Sets the bits of a key in a bit array laid out as in the file.
+   */
+  static void add(long[] words, int hashCount, long key) {
+    final long bitCount = words.length * 64L;
+    final long h1 = mix(key);
+    final long h2 = mix(key + GOLDEN) | 1;
+    long combined = h1;
+    for (int i = 0; i < hashCount; i++) {
+      final long bit = (combined & Long.MAX_VALUE) % bitCount;
+      words[(int) (bit >>> 6)] |= 1L << bit;
+      combined += h2;
+    }
+  }
+
+  /**
+   * Tests the bits of a key in a file mapped into a buffer.
+   */
+  static boolean mightContain(ByteBuffer file, int hashCount, long bitCount, long key) {
+    final long h1 = mix(key);
+    final long h2 = mix(key + GOLDEN) | 1;
+    long combined = h1;
+    for (int i = 0; i < hashCount; i++) {
+      final long bit = (combined & Long.MAX_VALUE) % bitCount;
+      final long word = file.getLong(HEADER_SIZE + (int) (bit >>> 6) * 8);
+      if ((word & (1L << bit)) == 0) {
+        return false;
+      }
+      combined += h2;
+    }
+    return true;
+  }
+
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= MIX_1;
+    value ^= value >>> 33;
+    value *= MIX_2;
+    value ^= value >>> 33;
+    return value;
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Classifies card numbers by brand from their issuer identification number
+ * (IIN), the leading digits. The IIN ranges are expanded into a digit trie
+ * held in flat arrays, so a lookup walks at most six nodes and allocates
+ * nothing. When ranges nest, the longest matching prefix wins, so a
+ * co-branded range inside a wider one takes precedence.
+ * <p>
+ * Each range also lists the card lengths it issues; a number whose length
+ * does not fit is UNKNOWN.
+ */
+public class CardBrandTrie {
+
+  public static final int UNKNOWN = 0;
+  public static final int VISA = 1;
+  public static final int MASTERCARD = 2;
+  public static final int AMEX = 3;
+  public static final int DISCOVER = 4;
+  public static final int DINERS = 5;
+  public static final int JCB = 6;
+  public static final int UNIONPAY = 7;
+  public static final int MAESTRO = 8;
+  public static final int MIR = 9;
+
+  private static final String[] NAMES = {
+      "UNKNOWN", "VISA", "MASTERCARD", "AMEX", "DISCOVER",
+      "DINERS", "JCB", "UNIONPAY", "MAESTRO", "MIR"};
+
+  private static final int MIN_LENGTH = 12;
+  private static final int MAX_LENGTH = 19;
+
+  /**
+   * IIN ranges: first and last prefix (same number of digits), brand,
+   * shortest and longest card length.
+   */
+  static final int[][] RANGES = {
+      {4, 4, VISA, 13, 13},
+      {4, 4, VISA, 16, 16},
+      {4, 4, VISA, 19, 19},
+      {51, 55, MASTERCARD, 16, 16},
+      {2221, 2720, MASTERCARD, 16, 16},
+      {34, 34, AMEX, 15, 15},
+      {37, 37, AMEX, 15, 15},
+      {6011, 6011, DISCOVER, 16, 19},
+      {644, 649, DISCOVER, 16, 19},
+      {65, 65, DISCOVER, 16, 19},
+      {622126, 622925, DISCOVER, 16, 19},
+      {300, 305, DINERS, 14, 19},
+      {3095, 3095, DINERS, 14, 19},
+      {36, 36, DINERS, 14, 19},
+      {38, 39, DINERS, 16, 19},
+      {3528, 3589, JCB, 16, 19},
+      {62, 62, UNIONPAY, 16, 19},
+      {5018, 5018, MAESTRO, 12, 19},
+      {5020, 5020, MAESTRO, 12, 19},
+      {5038, 5038, MAESTRO, 12, 19},
+      {5893, 5893, MAESTRO, 12, 19},
+      {6304, 6304, MAESTRO, 12, 19},
+      {6759, 6759, MAESTRO, 12, 19},
+      {6761, 6763, MAESTRO, 12, 19},
+      {2200, 2204, MIR, 16, 19}};
+
+  // Node n's child for digit d is children[n * 10 + d], or 0 for none.
+  // The root is node 0, which is never a child.
+
+  private int[] children = new int[10 * 64];
+  private int nodeCount = 1;
+
+  // Brand of each node for each card length, as brands[node * (MAX_LENGTH + 1) + length].
+
+  private byte[] brands = new byte[64 * (MAX_LENGTH + 1)];
+
+  private final byte[] names;
+  private final int[] nameOffsets;
+
+  public CardBrandTrie() {
+    for (int[] range : RANGES) {
+      addRange(range[0], range[1], digitCount(range[0]), range[2], range[3], range[4]);
+    }
+    children = Arrays.copyOf(children, nodeCount * 10);
+    brands = Arrays.copyOf(brands, nodeCount * (MAX_LENGTH + 1));
+
+    final StringBuilder all = new StringBuilder();
+    nameOffsets = new int[NAMES.length + 1];
+    for (int i = 0; i < NAMES.length; i++) {
+      nameOffsets[i] = all.length();
+      all.append(NAMES[i]);
+    }
+    nameOffsets[NAMES.length] = all.length();
+    names = all.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Adds the prefixes covering [lo, hi], both with the given number of
+   * digits, using as few trie entries as possible: a run of ten siblings
+   * is replaced by their parent.
+   */
+  private void addRange(int lo, int hi, int digits, int brand, int minLength, int maxLength) {
+    if (lo > hi) {
+      return;
+    }
+    if (digits > 1 && lo % 10 == 0 && hi % 10 == 9) {
+      addRange(lo / 10, hi / 10, digits - 1, brand, minLength, maxLength);
+      return;
+    }
+    if (digits > 1 && lo / 10 != hi / 10) {
+      final int head = Math.min(hi, lo / 10 * 10 + 9);
+      addRange(lo, head, digits, brand, minLength, maxLength);
+      final int tail = Math.max(head + 1, hi / 10 * 10);
+      addRange(head + 1, tail - 1, digits, brand, minLength, maxLength);
+      if (tail > head) {
+        addRange(tail, hi, digits, brand, minLength, maxLength);
+      }
+      return;
+    }
+    for (int prefix = lo; prefix <= hi; prefix++) {
+      final int node = insert(prefix, digits);
+      for (int length = minLength; length <= maxLength; length++) {
+        brands[node * (MAX_LENGTH + 1) + length] = (byte) brand;
+      }
+    }
+  }
+
+  private int insert(int prefix, int digits) {
+    int node = 0;
+    for (int divisor = pow10(digits - 1); divisor > 0; divisor /= 10) {
+      final int slot = node * 10 + prefix / divisor % 10;
+      if (children[slot] == 0) {
+        if (nodeCount * 10 >= children.length) {
+          children = Arrays.copyOf(children, children.length * 2);
+          brands = Arrays.copyOf(brands, brands.length * 2);
+        }
+        children[slot] = nodeCount++;
+      }
+      node = children[slot];
+    }
+    return node;
+  }
+
+  private static int digitCount(int value) {
+    int count = 1;
+    while (value >= 10) {
+      value /= 10;
+      count++;
+    }
+    return count;
+  }
+
+  private static int pow10(int exponent) {
+    int value = 1;
+    for (int i = 0; i < exponent; i++) {
+      value *= 10;
+    }
+    return value;
+  }
+
+  /**
+   * Classifies a card number held as UTF-8 bytes. Spaces and dashes
+   * between the digits are skipped; any other character makes the number
+   * UNKNOWN. The number is not Luhn checked.
+   *
+   * @return the brand, one of the constants of this class
+   */
+  public int classify(ByteBuf buf, int start, int end) {
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      final byte b = buf.getByte(i);
+      if (b >= '0' && b <= '9') {
+        length++;
+      } else if (b != ' ' && b != '-') {
+        return UNKNOWN;
+      }
+    }
+    if (length < MIN_LENGTH || length > MAX_LENGTH) {
+      return UNKNOWN;
+    }
+
+    // Walk the leading digits, keeping the deepest brand for this length.
+
+    int brand = UNKNOWN;
+    int node = 0;
+    for (int i = start; i < end; i++) {
+      final byte b = buf.getByte(i);
+      if (b == ' ' || b == '-') {
+        continue;
+      }
+      node = children[node * 10 + b - '0'];
+      if (node == 0) {
+        break;
+      }
+      final int found = brands[node * (MAX_LENGTH + 1) + length];
+      if (found != UNKNOWN) {
+        brand = found;
+      }
+    }
+    return brand;
+  }
+
+  /**
+   * @return the name of each brand, concatenated, to be copied once into
+   * a buffer
+   */
+  public byte[] names() {
+    return names;
+  }
+
+  /**
+   * @return the offset of a brand's name in {@link #names()}
+   */
+  public int nameStart(int brand) {
+    return nameOffsets[brand];
+  }
+
+  /**
+   * @return the offset just past a brand's name in {@link #names()}
+   */
+  public int nameEnd(int brand) {
+    return nameOffsets[brand + 1];
+  }
+
+  public static String name(int brand) {
+    return NAMES[brand];
+  }
+}
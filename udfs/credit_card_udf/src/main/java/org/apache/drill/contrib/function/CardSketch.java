@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.drill.common.exceptions.UserException;
+
+/**
+ * Static helpers for a fixed-size HyperLogLog sketch of distinct values,
+ * used by the approximate distinct count functions. The sketch is an
+ * array of 2^14 one-byte registers (16 KB), which gives a standard error
+ * of about 0.8%. Values are hashed with XXH64 directly from their bytes.
+ * <p>
+ * A sketch is kept in a buffer in its serialized form: a version byte,
+ * the precision, then the registers. The aggregate functions hold it in
+ * a <tt>VarBinaryHolder</tt> workspace, so the allocator accounts for it,
+ * and return it without conversion. Two sketches are merged by taking
+ * the larger of each pair of registers, so sketches built separately, for
+ * example per partition or per day, combine into the sketch of the union.
+ */
+public final class CardSketch {
+  static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CardSketch.class);
+
+  public static final int PRECISION = 14;
+  public static final int REGISTERS = 1 << PRECISION;
+
+  private static final byte VERSION = 1;
+  private static final int HEADER_SIZE = 2;
+  public static final int SERIALIZED_SIZE = HEADER_SIZE + REGISTERS;
+
+  private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME64_3 = 0x165667B19E3779F9L;
+  private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+  private CardSketch() {
+  }
+
+  /**
+   * Writes an empty sketch.
+   *
+   * @param sketch buffer with room for {@link #SERIALIZED_SIZE} bytes at offset
+   * @param offset where to write
+   */
+  public static void clear(ByteBuf sketch, int offset) {
+    sketch.setByte(offset, VERSION);
+    sketch.setByte(offset + 1, PRECISION);
+    sketch.setZero(offset + HEADER_SIZE, REGISTERS);
+  }
+
+  /**
+   * Adds a value to the sketch.
+   *
+   * @param sketch buffer holding the sketch
+   * @param offset first byte of the sketch
+   * @param buf buffer holding the value's bytes
+   * @param start first byte of the value
+   * @param end one past the last byte of the value
+   */
+  public static void add(ByteBuf sketch, int offset, ByteBuf buf, int start, int end) {
+    final long hash = hash64(buf, start, end);
+    final int index = offset + HEADER_SIZE + (int) (hash >>> (64 - PRECISION));
+
+    // Position of the first set bit in the remaining bits; the marker bit
+    // bounds it when they are all zero.
+
+    final byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+    if (sketch.getByte(index) < rank) {
+      sketch.setByte(index, rank);
+    }
+  }
+
+  /**
+   * @param sketch buffer holding the sketch
+   * @param offset first byte of the sketch
+   * @return the estimated number of distinct values added to the sketch
+   */
+  public static long estimate(ByteBuf sketch, int offset) {
+    double sum = 0;
+    int zeros = 0;
+    for (int i = offset + HEADER_SIZE; i < offset + SERIALIZED_SIZE; i++) {
+      final int rank = sketch.getByte(i);
+      if (rank == 0) {
+        zeros++;
+      }
+      sum += Double.longBitsToDouble((1023L - rank) << 52);
+    }
+    final double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+    double estimate = alpha * REGISTERS * REGISTERS / sum;
+
+    // Linear counting is more accurate while many registers are empty.
+    // With a 64-bit hash no correction is needed at the high end.
+
+    if (estimate <= 2.5 * REGISTERS && zeros != 0) {
+      estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * Estimates the count of a sketch given as a value, checking that it
+   * is one.
+   *
+   * @param buf buffer holding the sketch
+   * @param start first byte of the sketch
+   * @param end one past the last byte of the sketch
+   */
+  public static long estimate(ByteBuf buf, int start, int end) {
+    checkSerialized(buf, start, end);
+    return estimate(buf, start);
+  }
+
+  /**
+   * Merges a sketch given as a value into a sketch.
+   *
+   * @param sketch buffer holding the sketch to merge into
+   * @param offset first byte of the sketch to merge into
+   * @param buf buffer holding the sketch to merge
+   * @param start first byte of the sketch to merge
+   * @param end one past the last byte of the sketch to merge
+   */
+  public static void merge(ByteBuf sketch, int offset, ByteBuf buf, int start, int end) {
+    checkSerialized(buf, start, end);
+    for (int i = HEADER_SIZE; i < SERIALIZED_SIZE; i++) {
+      final byte rank = buf.getByte(start + i);
+      if (sketch.getByte(offset + i) < rank) {
+        sketch.setByte(offset + i, rank);
+      }
+    }
+  }
+
+  private static void checkSerialized(ByteBuf buf, int start, int end) {
+    if (end - start != SERIALIZED_SIZE ||
+        buf.getByte(start) != VERSION ||
+        buf.getByte(start + 1) != PRECISION) {
+      throw UserException.functionError()
+          .message("Value is not a card sketch: expected %d bytes of version %d, precision %d",
+              SERIALIZED_SIZE, VERSION, PRECISION)
+          .build(logger);
+    }
+  }
+
+  /**
+   * XXH64 of a range of bytes, with seed 0.
+   */
+  static long hash64(ByteBuf buf, int start, int end) {
+    final int length = end - start;
+    int i = start;
+    long hash;
+    if (length >= 32) {
+      long v1 = PRIME64_1 + PRIME64_2;
+      long v2 = PRIME64_2;
+      long v3 = 0;
+      long v4 = -PRIME64_1;
+      for (; i <= end - 32; i += 32) {
+        v1 = round(v1, getLongLE(buf, i));
+        v2 = round(v2, getLongLE(buf, i + 8));
+        v3 = round(v3, getLongLE(buf, i + 16));
+        v4 = round(v4, getLongLE(buf, i + 24));
+      }
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+      hash = mergeRound(hash, v1);
+      hash = mergeRound(hash, v2);
+      hash = mergeRound(hash, v3);
+      hash = mergeRound(hash, v4);
+    } else {
+      hash = PRIME64_5;
+    }
+    hash += length;
+    for (; i <= end - 8; i += 8) {
+      hash ^= round(0, getLongLE(buf, i));
+      hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+    }
+    if (i <= end - 4) {
+      hash ^= (Integer.reverseBytes(buf.getInt(i)) & 0xFFFFFFFFL) * PRIME64_1;
+      hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+      i += 4;
+    }
+    for (; i < end; i++) {
+      hash ^= (buf.getByte(i) & 0xFF) * PRIME64_5;
+      hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+    }
+    hash ^= hash >>> 33;
+    hash *= PRIME64_2;
+    hash ^= hash >>> 29;
+    hash *= PRIME64_3;
+    hash ^= hash >>> 32;
+    return hash;
+  }
+
+  private static long getLongLE(ByteBuf buf, int index) {
+    return Long.reverseBytes(buf.getLong(index));
+  }
+
+  private static long round(long acc, long input) {
+    acc += input * PRIME64_2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * PRIME64_1;
+  }
+
+  private static long mergeRound(long acc, long val) {
+    acc ^= round(0, val);
+    return acc * PRIME64_1 + PRIME64_4;
+  }
+}
@@ -19,11 +19,17 @@
 package org.apache.drill.contrib.function;
 
 import io.netty.buffer.DrillBuf;
+import org.apache.drill.exec.expr.DrillAggFunc;
 import org.apache.drill.exec.expr.DrillSimpleFunc;
 import org.apache.drill.exec.expr.annotations.FunctionTemplate;
 import org.apache.drill.exec.expr.annotations.Output;
 import org.apache.drill.exec.expr.annotations.Param;
+import org.apache.drill.exec.expr.annotations.Workspace;
+import org.apache.drill.exec.expr.holders.BigIntHolder;
 import org.apache.drill.exec.expr.holders.BitHolder;
+import org.apache.drill.exec.expr.holders.NullableVarBinaryHolder;
+import org.apache.drill.exec.expr.holders.NullableVarCharHolder;
+import org.apache.drill.exec.expr.holders.VarBinaryHolder;
 import org.apache.drill.exec.expr.holders.VarCharHolder;
 
 import javax.inject.Inject;
@@ -50,17 +56,270 @@ public class CreditCardFunctions {
     }
 
     /**
-     * The eval() function is where you actually perform the calculation.
-     * The eval() function does not return anything.  Instead the return value is returned in the output holder
-     * that was declared above.
-     * All strings that you get from Drill must be captured using the method demonstrated below
+     * Works on the bytes of the value in place, so that no String or validator is created per row.
+     * The rules are those of the default commons-validator CreditCardValidator.
      */
     public void eval() {
-      String creditCardNumber = org.apache.drill.exec.expr.fn.impl.StringFunctionHelpers.toStringFromUTF8(rawCardNumber.start, rawCardNumber.end, rawCardNumber.buffer);
+      if (org.apache.drill.contrib.function.CreditCardHelpers.isValid(rawCardNumber.buffer, rawCardNumber.start, rawCardNumber.end)) {
+        out.value = 1;
+      } else {
+        out.value = 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the brand of a card number, such as VISA, MASTERCARD or AMEX, from its leading digits and length,
+   * or UNKNOWN. Spaces and dashes in the number are ignored. The number is not validated; combine with
+   * is_valid_credit_card() for that.
+   */
+  @FunctionTemplate(name = "credit_card_brand", scope = FunctionTemplate.FunctionScope.SIMPLE, nulls = FunctionTemplate.NullHandling.NULL_IF_NULL)
+  public static class CreditCardBrandFunction implements DrillSimpleFunc {
+
+    @Param
+    VarCharHolder rawCardNumber;
+
+    @Output
+    VarCharHolder out;
+
+    @Inject
+    DrillBuf buffer;
+
+    @Workspace
+    org.apache.drill.contrib.function.CardBrandTrie trie;
+
+    /**
+     * Builds the trie and copies all the brand names into the buffer once, so that eval() only points the
+     * output at one of them.
+     */
+    public void setup() {
+      trie = new org.apache.drill.contrib.function.CardBrandTrie();
+      byte[] names = trie.names();
+      buffer = buffer.reallocIfNeeded(names.length);
+      buffer.setBytes(0, names);
+    }
+
+    public void eval() {
+      int brand = trie.classify(rawCardNumber.buffer, rawCardNumber.start, rawCardNumber.end);
+      out.buffer = buffer;
+      out.start = trie.nameStart(brand);
+      out.end = trie.nameEnd(brand);
+    }
+  }
+
+  /**
+   * Masks the card numbers found in free text, keeping the last four digits of each: 13 to 19 digits, possibly
+   * grouped by spaces or dashes, that pass the Luhn check. The rest of the text is returned unchanged.
+   */
+  @FunctionTemplate(name = "redact_credit_cards", scope = FunctionTemplate.FunctionScope.SIMPLE, nulls = FunctionTemplate.NullHandling.NULL_IF_NULL)
+  public static class RedactCreditCardsFunction implements DrillSimpleFunc {
+
+    @Param
+    VarCharHolder text;
+
+    @Output
+    VarCharHolder out;
+
+    @Inject
+    DrillBuf buffer;
+
+    public void setup() {
+    }
+
+    /**
+     * Masking does not change the length, so the text is copied into the buffer once and masked in place.
+     */
+    public void eval() {
+      int length = text.end - text.start;
+      buffer = buffer.reallocIfNeeded(length);
+      buffer.setBytes(0, text.buffer, text.start, length);
+      org.apache.drill.contrib.function.CreditCardHelpers.redact(buffer, 0, length);
+      out.buffer = buffer;
+      out.start = 0;
+      out.end = length;
+    }
+  }
+
+  /**
+   * Approximate count of distinct card numbers, from a HyperLogLog sketch of the raw bytes of each value. Each group
+   * uses a fixed 16 KB, however many values it has, and the error is typically under 1%. Values are not normalized,
+   * so the same number written with and without spaces counts twice. Nulls are ignored.
+   */
+  @FunctionTemplate(name = "approx_count_distinct_card", scope = FunctionTemplate.FunctionScope.POINT_AGGREGATE)
+  public static class ApproxCountDistinctCardFunction implements DrillAggFunc {
+
+    @Param
+    NullableVarCharHolder in;
+
+    @Workspace
+    VarBinaryHolder sketch;
+
+    @Output
+    BigIntHolder out;
 
-      org.apache.commons.validator.routines.CreditCardValidator ccv = new org.apache.commons.validator.routines.CreditCardValidator();
+    @Inject
+    DrillBuf buffer;
+
+    public void setup() {
+      buffer = buffer.reallocIfNeeded(org.apache.drill.contrib.function.CardSketch.SERIALIZED_SIZE);
+      org.apache.drill.contrib.function.CardSketch.clear(buffer, 0);
+      sketch = new VarBinaryHolder();
+      sketch.buffer = buffer;
+      sketch.start = 0;
+      sketch.end = org.apache.drill.contrib.function.CardSketch.SERIALIZED_SIZE;
+    }
+
+    public void add() {
+      if (in.isSet == 1) {
+        org.apache.drill.contrib.function.CardSketch.add(sketch.buffer, sketch.start, in.buffer, in.start, in.end);
+      }
+    }
+
+    public void output() {
+      out.value = org.apache.drill.contrib.function.CardSketch.estimate(sketch.buffer, sketch.start);
+    }
+
+    public void reset() {
+      org.apache.drill.contrib.function.CardSketch.clear(sketch.buffer, sketch.start);
+    }
+  }
+
+  /**
+   * Returns the serialized sketch behind approx_count_distinct_card(), to be stored or combined with others by
+   * card_sketch_merge(), for example to count distinct cards over many days from one sketch per day.
+   */
+  @FunctionTemplate(name = "card_sketch", scope = FunctionTemplate.FunctionScope.POINT_AGGREGATE)
+  public static class CardSketchFunction implements DrillAggFunc {
+
+    @Param
+    NullableVarCharHolder in;
 
-      if (ccv.isValid(creditCardNumber)) {
+    @Workspace
+    VarBinaryHolder sketch;
+
+    @Output
+    VarBinaryHolder out;
+
+    @Inject
+    DrillBuf buffer;
+
+    public void setup() {
+      buffer = buffer.reallocIfNeeded(org.apache.drill.contrib.function.CardSketch.SERIALIZED_SIZE);
+      org.apache.drill.contrib.function.CardSketch.clear(buffer, 0);
+      sketch = new VarBinaryHolder();
+      sketch.buffer = buffer;
+      sketch.start = 0;
+      sketch.end = org.apache.drill.contrib.function.CardSketch.SERIALIZED_SIZE;
+    }
+
+    public void add() {
+      if (in.isSet == 1) {
+        org.apache.drill.contrib.function.CardSketch.add(sketch.buffer, sketch.start, in.buffer, in.start, in.end);
+      }
+    }
+
+    public void output() {
+      out.buffer = sketch.buffer;
+      out.start = sketch.start;
+      out.end = sketch.end;
+    }
+
+    public void reset() {
+      org.apache.drill.contrib.function.CardSketch.clear(sketch.buffer, sketch.start);
+    }
+  }
+
+  /**
+   * Merges sketches from card_sketch() into the sketch of the union of their values. Merging takes the larger of
+   * each pair of registers, so costs the same however many values the sketches saw. Nulls are ignored.
+   */
+  @FunctionTemplate(name = "card_sketch_merge", scope = FunctionTemplate.FunctionScope.POINT_AGGREGATE)
+  public static class CardSketchMergeFunction implements DrillAggFunc {
+
+    @Param
+    NullableVarBinaryHolder in;
+
+    @Workspace
+    VarBinaryHolder sketch;
+
+    @Output
+    VarBinaryHolder out;
+
+    @Inject
+    DrillBuf buffer;
+
+    public void setup() {
+      buffer = buffer.reallocIfNeeded(org.apache.drill.contrib.function.CardSketch.SERIALIZED_SIZE);
+      org.apache.drill.contrib.function.CardSketch.clear(buffer, 0);
+      sketch = new VarBinaryHolder();
+      sketch.buffer = buffer;
+      sketch.start = 0;
+      sketch.end = org.apache.drill.contrib.function.CardSketch.SERIALIZED_SIZE;
+    }
+
+    public void add() {
+      if (in.isSet == 1) {
+        org.apache.drill.contrib.function.CardSketch.merge(sketch.buffer, sketch.start, in.buffer, in.start, in.end);
+      }
+    }
+
+    public void output() {
+      out.buffer = sketch.buffer;
+      out.start = sketch.start;
+      out.end = sketch.end;
+    }
+
+    public void reset() {
+      org.apache.drill.contrib.function.CardSketch.clear(sketch.buffer, sketch.start);
+    }
+  }
+
+  /**
+   * Returns the approximate distinct count held in a sketch from card_sketch() or card_sketch_merge().
+   */
+  @FunctionTemplate(name = "card_sketch_estimate", scope = FunctionTemplate.FunctionScope.SIMPLE, nulls = FunctionTemplate.NullHandling.NULL_IF_NULL)
+  public static class CardSketchEstimateFunction implements DrillSimpleFunc {
+
+    @Param
+    VarBinaryHolder in;
+
+    @Output
+    BigIntHolder out;
+
+    public void setup() {
+    }
+
+    public void eval() {
+      out.value = org.apache.drill.contrib.function.CardSketch.estimate(in.buffer, in.start, in.end);
+    }
+  }
+
+  /**
+   * Returns true if a card number may be in the blocklist, a Bloom filter built by CardBlocklistBuilder, at the path
+   * in the drill.contrib.function.card_blocklist.path boot option. A false result is certain; a true result is wrong
+   * at the false positive rate the filter was built for. Spaces and dashes in the number are ignored.
+   */
+  @FunctionTemplate(name = "in_card_blocklist", scope = FunctionTemplate.FunctionScope.SIMPLE, nulls = FunctionTemplate.NullHandling.NULL_IF_NULL)
+  public static class InCardBlocklistFunction implements DrillSimpleFunc {
+
+    @Param
+    VarCharHolder rawCardNumber;
+
+    @Output
+    BitHolder out;
+
+    @Workspace
+    org.apache.drill.contrib.function.CardBlocklist blocklist;
+
+    /**
+     * The filter is memory-mapped once per drillbit and shared by all fragments.
+     */
+    public void setup() {
+      blocklist = org.apache.drill.contrib.function.CardBlocklist.get();
+    }
+
+    public void eval() {
+      if (blocklist.mightContain(rawCardNumber.buffer, rawCardNumber.start, rawCardNumber.end)) {
         out.value = 1;
       } else {
         out.value = 0;
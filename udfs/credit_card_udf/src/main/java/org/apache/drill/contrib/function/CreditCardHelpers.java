@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Static helpers for the credit card functions. Drill copies the body of
+ * eval() into generated code, so shared logic lives here and is called by
+ * its fully qualified name. The helpers work directly on the UTF-8 bytes
+ * of a VarChar and allocate nothing.
+ */
+public final class CreditCardHelpers {
+
+  private CreditCardHelpers() {
+  }
+
+  /**
+   * Checks a card number the way the default commons-validator
+   * <tt>CreditCardValidator</tt> does: after trimming, the number must be
+   * all digits, match the prefix and length of an AMEX, VISA, MASTERCARD
+   * or DISCOVER card, and pass the Luhn check.
+   * <p>
+   * Leading and trailing bytes up to and including space are trimmed, as
+   * <tt>String.trim()</tt> does. Separators inside the number are not
+   * skipped, since the validator rejects them.
+   *
+   * @param buf buffer holding the UTF-8 bytes
+   * @param start first byte of the value
+   * @param end one past the last byte of the value
+   * @return true if the number is a valid card number
+   */
+  public static boolean isValid(ByteBuf buf, int start, int end) {
+    while (start < end && (buf.getByte(start) & 0xFF) <= ' ') {
+      start++;
+    }
+    while (end > start && (buf.getByte(end - 1) & 0xFF) <= ' ') {
+      end--;
+    }
+    final int length = end - start;
+    if (length < 13 || length > 16) {
+      return false;
+    }
+
+    // Luhn check, from the check digit leftwards, doubling every second digit.
+
+    int sum = 0;
+    boolean doubled = false;
+    for (int i = end - 1; i >= start; i--) {
+      int digit = buf.getByte(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return false;
+      }
+      if (doubled) {
+        digit <<= 1;
+        if (digit > 9) {
+          digit -= 9;
+        }
+      }
+      sum += digit;
+      doubled = !doubled;
+    }
+    if (sum % 10 != 0) {
+      return false;
+    }
+    return isIssuerLength(prefix(buf, start, 4), length);
+  }
+
+  /**
+   * Masks the card numbers in a piece of UTF-8 text, in place, leaving
+   * the last four digits of each. A card number is 13 to 19 digits that
+   * pass the Luhn check, possibly split into groups by single spaces or
+   * dashes, which are kept.
+   * <p>
+   * The text is scanned once for runs of digits and separators. A run
+   * longer than a card is tried from the start of each group, each try
+   * reading at most 19 digits, so the work stays linear in the length of
+   * the text. Bytes of multi-byte characters are never ASCII digits, so
+   * the text need not be decoded.
+   *
+   * @param buf buffer holding the text, which is modified
+   * @param start first byte of the text
+   * @param end one past the last byte of the text
+   */
+  public static void redact(ByteBuf buf, int start, int end) {
+    int i = start;
+    while (i < end) {
+      if (!isDigit(buf.getByte(i))) {
+        i++;
+        continue;
+      }
+      final int runEnd = runEnd(buf, i, end);
+      redactRun(buf, i, runEnd);
+      i = runEnd;
+    }
+  }
+
+  /**
+   * @return the end of the run of digits that begins at start, in which
+   * single spaces or dashes may separate digits
+   */
+  private static int runEnd(ByteBuf buf, int start, int end) {
+    int i = start;
+    while (i < end) {
+      final byte b = buf.getByte(i);
+      if (isDigit(b)) {
+        i++;
+      } else if ((b == ' ' || b == '-') && i + 1 < end && isDigit(buf.getByte(i + 1))) {
+        i += 2;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  private static void redactRun(ByteBuf buf, int start, int end) {
+    int group = start;
+    while (group < end) {
+      final int cardEnd = cardEnd(buf, group, end);
+      int next;
+      if (cardEnd == -1) {
+        next = group;
+        while (next < end && isDigit(buf.getByte(next))) {
+          next++;
+        }
+      } else {
+        mask(buf, group, cardEnd);
+        next = cardEnd;
+      }
+
+      // Step over the separator to the next group.
+
+      group = next + 1;
+    }
+  }
+
+  /**
+   * Finds the longest card number that starts at a group and ends at the
+   * end of a group.
+   *
+   * @return the end of the card number, or -1 if there is none
+   */
+  private static int cardEnd(ByteBuf buf, int start, int end) {
+
+    // Luhn doubles every second digit counting from the right, which is
+    // not known yet, so keep the sum for both choices: doubling the digits
+    // at even and at odd positions from the left.
+
+    int sumEven = 0;
+    int sumOdd = 0;
+    int count = 0;
+    int found = -1;
+    for (int i = start; i < end && count < 19; i++) {
+      final byte b = buf.getByte(i);
+      if (!isDigit(b)) {
+        continue;
+      }
+      final int digit = b - '0';
+      final int doubled = digit < 5 ? digit * 2 : digit * 2 - 9;
+      if ((count & 1) == 0) {
+        sumEven += doubled;
+        sumOdd += digit;
+      } else {
+        sumEven += digit;
+        sumOdd += doubled;
+      }
+      count++;
+      if (count >= 13 && (i + 1 == end || !isDigit(buf.getByte(i + 1)))) {
+
+        // The last digit, at position count - 1, is not doubled.
+
+        final int sum = (count & 1) == 0 ? sumEven : sumOdd;
+        if (sum % 10 == 0) {
+          found = i + 1;
+        }
+      }
+    }
+    return found;
+  }
+
+  private static void mask(ByteBuf buf, int start, int end) {
+    int digits = 0;
+    for (int i = start; i < end; i++) {
+      if (isDigit(buf.getByte(i))) {
+        digits++;
+      }
+    }
+    int toMask = digits - 4;
+    for (int i = start; i < end && toMask > 0; i++) {
+      if (isDigit(buf.getByte(i))) {
+        buf.setByte(i, 'X');
+        toMask--;
+      }
+    }
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  /**
+   * Reads the first digits of a number as an integer.
+   *
+   * @param buf buffer holding the digits, which must be ASCII digits
+   * @param start first digit
+   * @param count number of digits to read
+   * @return the value of the leading digits
+   */
+  static int prefix(ByteBuf buf, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      value = value * 10 + (buf.getByte(i) - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Issuer rules of the default commons-validator card types, given the
+   * first four digits and the length of the number.
+   */
+  private static boolean isIssuerLength(int prefix4, int length) {
+    final int prefix1 = prefix4 / 1000;
+    final int prefix2 = prefix4 / 100;
+    final int prefix3 = prefix4 / 10;
+    switch (length) {
+      case 13:
+        return prefix1 == 4;
+      case 15:
+        return prefix2 == 34 || prefix2 == 37;
+      case 16:
+        return prefix1 == 4
+            || (prefix2 >= 51 && prefix2 <= 55)
+            || (prefix4 >= 2221 && prefix4 <= 2720)
+            || prefix4 == 6011
+            || (prefix3 >= 644 && prefix3 <= 649)
+            || prefix2 == 65;
+      default:
+        return false;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.drill.common.exceptions.UserException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCardBlocklist {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static String card(long n) {
+    return String.format("5%015d", n * 7919);
+  }
+
+  private static boolean mightContain(CardBlocklist blocklist, String value) {
+    final byte[] bytes = ("xyz" + value + "xyz").getBytes(StandardCharsets.UTF_8);
+    final ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+    return blocklist.mightContain(buf, 3, bytes.length - 3);
+  }
+
+  private File writeCsv(int count) throws IOException {
+    final File csv = folder.newFile();
+    try (PrintWriter out = new PrintWriter(csv, "UTF-8")) {
+      out.println("added,card_number,reason");
+      for (int n = 0; n < count; n++) {
+        out.println(String.format("2019-06-01,\"%s\",fraud", card(n)));
+      }
+    }
+    return csv;
+  }
+
+  @Test
+  public void testBlocklist() throws IOException {
+    final File csv = writeCsv(100_000);
+    final File filter = folder.newFile();
+    final CardBlocklistBuilder builder = new CardBlocklistBuilder(1, 0.01);
+    assertEquals(100_000, builder.build(csv, filter));
+    assertEquals(1, builder.skipped());
+
+    final CardBlocklist blocklist = CardBlocklist.load(filter);
+
+    // No false negatives.
+
+    for (int n = 0; n < 100_000; n++) {
+      assertTrue(mightContain(blocklist, card(n)));
+    }
+
+    // False positives near the rate the filter was built for.
+
+    int falsePositives = 0;
+    for (int n = 100_000; n < 200_000; n++) {
+      if (mightContain(blocklist, card(n))) {
+        falsePositives++;
+      }
+    }
+    assertTrue("false positives: " + falsePositives, falsePositives < 2_000);
+
+    // Separators are ignored; anything else is not a card number.
+
+    final String blocked = card(42);
+    final String spaced = blocked.substring(0, 4) + " " + blocked.substring(4, 8) + "-" + blocked.substring(8);
+    assertTrue(mightContain(blocklist, spaced));
+    assertFalse(mightContain(blocklist, blocked + "x"));
+    assertFalse(mightContain(blocklist, ""));
+    assertFalse(mightContain(blocklist, "5"));
+  }
+
+  @Test
+  public void testReload() throws IOException {
+    final File filter = folder.newFile();
+    new CardBlocklistBuilder(1, 0.01).build(writeCsv(10), filter);
+    final CardBlocklist first = CardBlocklist.get(filter.getPath());
+    assertSame(first, CardBlocklist.get(filter.getPath()));
+
+    new CardBlocklistBuilder(1, 0.01).build(writeCsv(1_000), filter);
+    final CardBlocklist second = CardBlocklist.get(filter.getPath());
+    assertNotSame(first, second);
+    assertTrue(mightContain(second, card(999)));
+
+    // The new file replaced the old by rename, so the old mapping is
+    // intact, and no temporary file is left behind.
+
+    for (int n = 0; n < 10; n++) {
+      assertTrue(mightContain(first, card(n)));
+    }
+    assertEquals(1, folder.getRoot().listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(filter.getName());
+      }
+    }).length);
+  }
+
+  @Test
+  public void testBadFile() throws IOException {
+    final File file = folder.newFile();
+    try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+      out.println("not a bloom filter, but long enough to have a header");
+    }
+    try {
+      CardBlocklist.load(file);
+      fail();
+    } catch (UserException e) {
+      assertTrue(e.getMessage().contains("Bad card blocklist"));
+    }
+    try {
+      CardBlocklist.load(new File(folder.getRoot(), "missing"));
+      fail();
+    } catch (UserException e) {
+      assertTrue(e.getMessage().contains("Failed to read card blocklist"));
+    }
+  }
+}
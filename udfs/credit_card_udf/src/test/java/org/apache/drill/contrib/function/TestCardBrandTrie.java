@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class TestCardBrandTrie {
+
+  private final CardBrandTrie trie = new CardBrandTrie();
+
+  private String brand(String value) {
+    final byte[] bytes = ("xyz" + value + "xyz").getBytes(StandardCharsets.UTF_8);
+    final ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+    final int brand = trie.classify(buf, 3, bytes.length - 3);
+    final String name = new String(trie.names(), trie.nameStart(brand),
+        trie.nameEnd(brand) - trie.nameStart(brand), StandardCharsets.US_ASCII);
+    assertEquals(CardBrandTrie.name(brand), name);
+    return name;
+  }
+
+  @Test
+  public void testBrands() {
+    assertEquals("VISA", brand("4111111111111111"));
+    assertEquals("VISA", brand("4222222222222"));
+    assertEquals("VISA", brand("4111 1111 1111 1111"));
+    assertEquals("MASTERCARD", brand("5555-5555-5555-4444"));
+    assertEquals("MASTERCARD", brand("2221000000000009"));
+    assertEquals("MASTERCARD", brand("2720990000000000"));
+    assertEquals("AMEX", brand("378282246310005"));
+    assertEquals("DISCOVER", brand("6011111111111117"));
+    assertEquals("DISCOVER", brand("6221260000000000"));
+    assertEquals("UNIONPAY", brand("6221250000000000"));
+    assertEquals("UNIONPAY", brand("6200000000000005"));
+    assertEquals("DINERS", brand("30569309025904"));
+    assertEquals("JCB", brand("3530111333300000"));
+    assertEquals("MAESTRO", brand("6759649826438453"));
+    assertEquals("MIR", brand("2200000000000000"));
+
+    assertEquals("UNKNOWN", brand(""));
+    assertEquals("UNKNOWN", brand("4111"));
+    assertEquals("UNKNOWN", brand("41111111111111"));
+    assertEquals("UNKNOWN", brand("2721000000000000"));
+    assertEquals("UNKNOWN", brand("378282246310005x"));
+    assertEquals("UNKNOWN", brand("9111111111111111"));
+    assertEquals("UNKNOWN", brand("37828224631000"));
+  }
+
+  /**
+   * Compares with a linear scan of the ranges, longest prefix first.
+   */
+  @Test
+  public void testMatchesRanges() {
+    final Random random = new Random(42);
+    final StringBuilder buf = new StringBuilder();
+    for (int n = 0; n < 100_000; n++) {
+      buf.setLength(0);
+      final int[] range = CardBrandTrie.RANGES[random.nextInt(CardBrandTrie.RANGES.length)];
+      final int spread = range[1] - range[0] + 3;
+      buf.append(Math.max(0, range[0] - 1 + random.nextInt(spread)));
+      final int length = 12 + random.nextInt(8);
+      while (buf.length() < length) {
+        buf.append((char) ('0' + random.nextInt(10)));
+      }
+      buf.setLength(length);
+      final String number = buf.toString();
+      assertEquals(number, CardBrandTrie.name(scan(number)), brand(number));
+    }
+  }
+
+  private static int scan(String number) {
+    int brand = CardBrandTrie.UNKNOWN;
+    int longest = 0;
+    for (int[] range : CardBrandTrie.RANGES) {
+      final int digits = String.valueOf(range[0]).length();
+      final int prefix = Integer.parseInt(number.substring(0, digits));
+      if (prefix >= range[0] && prefix <= range[1] &&
+          number.length() >= range[3] && number.length() <= range[4] &&
+          digits > longest) {
+        brand = range[2];
+        longest = digits;
+      }
+    }
+    return brand;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.drill.common.exceptions.UserException;
+import org.junit.Test;
+
+public class TestCardSketch {
+
+  private static ByteBuf bytes(String value) {
+    return Unpooled.wrappedBuffer(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static long hash(String value) {
+    final ByteBuf buf = bytes("xyz" + value + "xyz");
+    return CardSketch.hash64(buf, 3, buf.capacity() - 3);
+  }
+
+  private static ByteBuf newSketch() {
+    final ByteBuf sketch = Unpooled.buffer(CardSketch.SERIALIZED_SIZE);
+    CardSketch.clear(sketch, 0);
+    return sketch;
+  }
+
+  private static void add(ByteBuf sketch, String value) {
+    final ByteBuf buf = bytes(value);
+    CardSketch.add(sketch, 0, buf, 0, buf.capacity());
+  }
+
+  private static long estimate(ByteBuf sketch) {
+    return CardSketch.estimate(sketch, 0, CardSketch.SERIALIZED_SIZE);
+  }
+
+  private static String card(long n) {
+    return String.format("4%015d", n);
+  }
+
+  private static void assertNear(long expected, long actual) {
+    assertTrue(String.format("expected about %d, was %d", expected, actual),
+        Math.abs(actual - expected) <= Math.max(2, expected * 0.03));
+  }
+
+  /**
+   * Reference values from the XXH64 reference implementation, covering
+   * each stage: 32-byte stripes and 8, 4 and 1-byte tails.
+   */
+  @Test
+  public void testHash() {
+    assertEquals(0xEF46DB3751D8E999L, hash(""));
+    assertEquals(0xD24EC4F1A98C6E5BL, hash("a"));
+    assertEquals(0x44BC2CF5AD770999L, hash("abc"));
+    assertEquals(0x4F03B067B6BD863EL, hash("4111111111111111"));
+    assertEquals(0x2516C29E8390185CL, hash("4111 1111 1111 1111 and some more text after"));
+
+    final byte[] range = new byte[100];
+    for (int i = 0; i < range.length; i++) {
+      range[i] = (byte) i;
+    }
+    assertEquals(0x6AC1E58032166597L, CardSketch.hash64(Unpooled.wrappedBuffer(range), 0, range.length));
+  }
+
+  @Test
+  public void testEstimate() {
+    final ByteBuf sketch = newSketch();
+    assertEquals(0, estimate(sketch));
+    long added = 0;
+    for (long target : new long[] {1, 10, 1_000, 20_000, 100_000, 1_000_000}) {
+      for (; added < target; added++) {
+        add(sketch, card(added));
+      }
+      assertNear(target, estimate(sketch));
+    }
+
+    // Repeats do not count.
+
+    for (long n = 0; n < 100_000; n++) {
+      add(sketch, card(n));
+    }
+    assertNear(1_000_000, estimate(sketch));
+
+    // Clearing empties the sketch.
+
+    CardSketch.clear(sketch, 0);
+    assertEquals(0, estimate(sketch));
+  }
+
+  @Test
+  public void testMerge() {
+    final ByteBuf first = newSketch();
+    final ByteBuf second = newSketch();
+    for (long n = 0; n < 60_000; n++) {
+      add(first, card(n));
+    }
+    for (long n = 40_000; n < 100_000; n++) {
+      add(second, card(n));
+    }
+
+    // Merge into a sketch at an offset, as in a vector.
+
+    final ByteBuf merged = Unpooled.buffer(CardSketch.SERIALIZED_SIZE + 10);
+    CardSketch.clear(merged, 10);
+    CardSketch.merge(merged, 10, first, 0, CardSketch.SERIALIZED_SIZE);
+    assertEquals(first.slice(0, CardSketch.SERIALIZED_SIZE), merged.slice(10, CardSketch.SERIALIZED_SIZE));
+    CardSketch.merge(merged, 10, second, 0, CardSketch.SERIALIZED_SIZE);
+    assertNear(100_000, CardSketch.estimate(merged, 10, 10 + CardSketch.SERIALIZED_SIZE));
+
+    // Merging is idempotent.
+
+    CardSketch.merge(merged, 10, second, 0, CardSketch.SERIALIZED_SIZE);
+    assertNear(100_000, CardSketch.estimate(merged, 10, 10 + CardSketch.SERIALIZED_SIZE));
+  }
+
+  @Test
+  public void testBadSketch() {
+    final ByteBuf sketch = newSketch();
+    final ByteBuf buf = newSketch();
+    try {
+      CardSketch.merge(sketch, 0, buf, 0, 100);
+      fail();
+    } catch (UserException e) {
+      assertTrue(e.getMessage().contains("not a card sketch"));
+    }
+    buf.setByte(1, 12);
+    try {
+      CardSketch.merge(sketch, 0, buf, 0, CardSketch.SERIALIZED_SIZE);
+      fail();
+    } catch (UserException e) {
+      assertTrue(e.getMessage().contains("not a card sketch"));
+    }
+    try {
+      CardSketch.estimate(buf, 0, CardSketch.SERIALIZED_SIZE);
+      fail();
+    } catch (UserException e) {
+      assertTrue(e.getMessage().contains("not a card sketch"));
+    }
+  }
+}
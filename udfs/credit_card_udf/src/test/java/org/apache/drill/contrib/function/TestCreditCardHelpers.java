@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.drill.contrib.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.commons.validator.routines.CreditCardValidator;
+import org.junit.Test;
+
+public class TestCreditCardHelpers {
+
+  private static final String[] PREFIXES = {
+      "", "0", "1", "2", "3", "4", "5", "6", "7", "9",
+      "22", "2220", "2221", "2299", "23", "26", "27", "2720", "2721", "28",
+      "30", "34", "35", "36", "37", "38", "50", "51", "55", "56",
+      "60", "6011", "6012", "62", "643", "644", "649", "65", "66"};
+
+  private static final String[] PADDING = {"", "", "", " ", "  ", "\t", "\n", "\u00a0", "-"};
+
+  private static boolean isValid(String value) {
+    // Place the value at an offset, as in a vector.
+
+    final byte[] bytes = ("xyz" + value + "xyz").getBytes(StandardCharsets.UTF_8);
+    final ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+    return CreditCardHelpers.isValid(buf, 3, bytes.length - 3);
+  }
+
+  @Test
+  public void testKnownNumbers() {
+    assertTrue(isValid("4111111111111111"));
+    assertTrue(isValid("4222222222222"));
+    assertTrue(isValid("5555555555554444"));
+    assertTrue(isValid("2223000048400011"));
+    assertTrue(isValid("378282246310005"));
+    assertTrue(isValid("6011111111111117"));
+    assertTrue(isValid(" 4111111111111111\t"));
+
+    assertFalse(isValid(""));
+    assertFalse(isValid("   "));
+    assertFalse(isValid("4111111111111112"));
+    assertFalse(isValid("4111 1111 1111 1111"));
+    assertFalse(isValid("4111-1111-1111-1111"));
+    assertFalse(isValid("30569309025904"));
+    assertFalse(isValid("3530111333300000"));
+  }
+
+  /**
+   * Compares with commons-validator over random numbers near the issuer
+   * rules: varied prefixes, lengths and padding, with a valid check digit
+   * half the time.
+   */
+  @Test
+  public void testMatchesCommonsValidator() {
+    final CreditCardValidator validator = new CreditCardValidator();
+    final Random random = new Random(42);
+    final StringBuilder buf = new StringBuilder();
+    int valid = 0;
+    for (int n = 0; n < 200_000; n++) {
+      buf.setLength(0);
+      buf.append(PREFIXES[random.nextInt(PREFIXES.length)]);
+      final int length = random.nextBoolean() ? 13 + random.nextInt(4) : 11 + random.nextInt(8);
+      while (buf.length() < length - 1) {
+        buf.append((char) ('0' + random.nextInt(10)));
+      }
+      buf.append(random.nextBoolean() ? checkDigit(buf) : (char) ('0' + random.nextInt(10)));
+      if (random.nextInt(20) == 0) {
+        buf.setCharAt(random.nextInt(buf.length()), "x -\u0660".charAt(random.nextInt(4)));
+      }
+      buf.insert(0, PADDING[random.nextInt(PADDING.length)]);
+      buf.append(PADDING[random.nextInt(PADDING.length)]);
+
+      final String value = buf.toString();
+      final boolean expected = validator.isValid(value);
+      assertEquals(value, expected, isValid(value));
+      if (expected) {
+        valid++;
+      }
+    }
+
+    // Make sure the comparison covered both outcomes.
+
+    assertTrue(valid > 2_000);
+  }
+
+  private static String redact(String text) {
+    final byte[] bytes = ("12" + text + "34").getBytes(StandardCharsets.UTF_8);
+    final ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+    CreditCardHelpers.redact(buf, 2, bytes.length - 2);
+    final String redacted = buf.toString(StandardCharsets.UTF_8);
+    assertEquals("12", redacted.substring(0, 2));
+    assertEquals("34", redacted.substring(redacted.length() - 2));
+    return redacted.substring(2, redacted.length() - 2);
+  }
+
+  @Test
+  public void testRedact() {
+    assertEquals("", redact(""));
+    assertEquals("no numbers here", redact("no numbers here"));
+    assertEquals("XXXXXXXXXXXX1111", redact("4111111111111111"));
+    assertEquals("card XXXX XXXX XXXX 1111, thanks", redact("card 4111 1111 1111 1111, thanks"));
+    assertEquals("XXXX-XXXXXX-X0005", redact("3782-822463-10005"));
+    assertEquals("a XXXXXXXXXXXX1111 XXXXXXXXXXX0005 b", redact("a 4111111111111111 378282246310005 b"));
+    assertEquals("XXXX XXXX XXXX 1111 22", redact("4111 1111 1111 1111 22"));
+    assertEquals("\u00e9t\u00e9 XXXXXXXXXXXX1111 \u20ac", redact("\u00e9t\u00e9 4111111111111111 \u20ac"));
+
+    // Not cards: failing the Luhn check, too short, too long, or split
+    // by more than a single separator.
+
+    assertEquals("4111111111111112", redact("4111111111111112"));
+    assertEquals("call 555-123-4567", redact("call 555-123-4567"));
+    assertEquals("41111111111111111111", redact("41111111111111111111"));
+    assertEquals("4111 1111  1111 1111", redact("4111 1111  1111 1111"));
+  }
+
+  /**
+   * Cards at random places in random text are all masked, and nothing
+   * else changes.
+   */
+  @Test
+  public void testRedactRandomText() {
+    final Random random = new Random(42);
+    final String[] words = {"order", "#", "id:", "the", "12", "2019-06-01", "\u00fcber", "-", " "};
+    final StringBuilder text = new StringBuilder();
+    final StringBuilder expected = new StringBuilder();
+    for (int n = 0; n < 20_000; n++) {
+      if (random.nextInt(4) == 0) {
+        final StringBuilder card = new StringBuilder("4");
+        final int length = 13 + random.nextInt(7);
+        while (card.length() < length - 1) {
+          card.append((char) ('0' + random.nextInt(10)));
+        }
+        card.append(checkDigit(card));
+        final String digits = card.toString();
+        final char separator = " -".charAt(random.nextInt(2));
+        final boolean grouped = random.nextBoolean();
+        for (int i = 0; i < digits.length(); i++) {
+          if (grouped && i > 0 && i % 4 == 0) {
+            text.append(separator);
+            expected.append(separator);
+          }
+          text.append(digits.charAt(i));
+          expected.append(i < digits.length() - 4 ? 'X' : digits.charAt(i));
+        }
+      } else {
+        final String word = words[random.nextInt(words.length)];
+        text.append(word);
+        expected.append(word);
+      }
+
+      // Keep neighbouring numbers out of the card's run of digits.
+
+      text.append(", ");
+      expected.append(", ");
+    }
+    assertEquals(expected.toString(), redact(text.toString()));
+  }
+
+  /**
+   * A long value of short digit groups is the most work per byte: it
+   * must still take linear time. Runs of ones never pass the Luhn check
+   * at card lengths.
+   */
+  @Test(timeout = 10_000)
+  public void testRedactLargeValue() {
+    final StringBuilder text = new StringBuilder();
+    while (text.length() < 8 * 1024 * 1024) {
+      text.append("1 1-1 ");
+    }
+    final String value = text.toString();
+    assertEquals(value, redact(value));
+  }
+
+  private static char checkDigit(CharSequence payload) {
+    int sum = 0;
+    boolean doubled = true;
+    for (int i = payload.length() - 1; i >= 0; i--) {
+      int digit = payload.charAt(i) - '0';
+      if (doubled) {
+        digit *= 2;
+        if (digit > 9) {
+          digit -= 9;
+        }
+      }
+      sum += digit;
+      doubled = !doubled;
+    }
+    return (char) ('0' + (10 - sum % 10) % 10);
+  }
+}